@@ -9,16 +9,80 @@ repositories {
     mavenCentral()
 }
 
+//JMH benchmarks live in src/jmh/java and run via the jmh task below.
+val jmhSourceSet: SourceSet = sourceSets.create("jmh") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmhSourceSet.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
 dependencies {
     implementation("com.google.guava:guava:33.4.8-jre")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 java {
     sourceCompatibility = JavaVersion.VERSION_24
 }
 
+//The lexer's optional vectorized scanning (VectorScan) uses the incubating
+//Vector API, which only the main sources need to compile against.
+tasks.compileJava {
+    options.compilerArgs.add("--add-modules=jdk.incubator.vector")
+}
+
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("fuzz")
+    }
+}
+
+//Runs the lexer tests again with vectorized scanning, since test uses the
+//scalar loops of CharSource.OfBytes (the mode is fixed per JVM).
+val vectorTest = tasks.register<Test>("vectorTest") {
+    group = "verification"
+    description = "Runs the lexer tests with the Vector API enabled."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        excludeTags("fuzz")
+    }
+    filter {
+        includeTestsMatching("plc.project.lexer.*")
+    }
+    jvmArgs("--add-modules=jdk.incubator.vector")
+    systemProperty("plc.lexer.vector", "true")
+}
+
+tasks.check {
+    dependsOn(vectorTest)
+}
+
+//Runs the randomized tests tagged fuzz, which are excluded from the test task.
+//The number of programs per test can be set, e.g. `./gradlew fuzz -Pfuzz.count=100000`.
+tasks.register<Test>("fuzz") {
+    group = "verification"
+    description = "Runs the randomized parser and evaluator tests."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("fuzz")
+    }
+    providers.gradleProperty("fuzz.count").orNull?.let { systemProperty("plc.fuzz.count", it) }
+}
+
+//Runs all benchmarks with the gc profiler for allocation rates. A subset can
+//be selected with a regex, e.g. `./gradlew jmh -Pjmh=LexerBenchmark`.
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = jmhSourceSet.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    jvmArgs("--add-modules=jdk.incubator.vector")
+    args("-prof", "gc")
+    providers.gradleProperty("jmh").orNull?.let { args(it) }
 }
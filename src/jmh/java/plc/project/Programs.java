@@ -0,0 +1,79 @@
+package plc.project;
+
+/**
+ * Generates deterministic synthetic programs for the benchmarks. Programs are
+ * valid for every stage of the pipeline (i.e. they lex, parse, analyze,
+ * evaluate, and generate without errors) and use all statement kinds, so
+ * each stage does representative work.
+ *
+ * <p>Each function loops over a small range and calls the previous function,
+ * so evaluation time grows linearly with the size of the program.
+ */
+public final class Programs {
+
+    public enum Size {
+        SMALL(10),
+        MEDIUM(250),
+        HUGE(5_000);
+
+        private final int functions;
+
+        Size(int functions) {
+            this.functions = functions;
+        }
+
+    }
+
+    private Programs() {}
+
+    public static String generate(Size size) {
+        var builder = new StringBuilder();
+        builder.append("// Generated program with ").append(size.functions).append(" functions.\n");
+        builder.append("LET result: Integer = 0;\n");
+        for (int i = 0; i < size.functions; i++) {
+            function(builder, i);
+        }
+        for (int i = 0; i < size.functions; i++) {
+            builder.append("result = result + f").append(i).append("(3);\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Generates a program of expression statements dense in binary operators
+     * across all precedence levels, with as many statements as the size has
+     * functions. These are only meant to be parsed, as variables are unbound.
+     */
+    public static String expressions(Size size) {
+        var builder = new StringBuilder();
+        for (int i = 0; i < size.functions * 10; i++) {
+            builder.append("e").append(i).append(" = (a + b * ").append(i)
+                .append(" - c / 2 < d.size() AND x.y(1, 2) == f(g, h + 1)) OR ")
+                .append("-1 * (i - j) >= k / l + m * n * o AND flag != \"s\" OR 1.5 <= p;\n");
+        }
+        return builder.toString();
+    }
+
+    private static void function(StringBuilder builder, int i) {
+        builder.append("\n// Accumulates a checksum over range(0, n).\n");
+        builder.append("DEF f").append(i).append("(n: Integer): Integer DO\n");
+        builder.append("    LET total: Integer = ").append(i).append(";\n");
+        builder.append("    LET label: String = \"f").append(i).append("\";\n");
+        builder.append("    LET scale: Decimal = 1.5;\n");
+        builder.append("    FOR j IN range(0, n) DO\n");
+        builder.append("        IF j / 2 * 2 == j AND n > 0 DO\n");
+        builder.append("            total = total + j * ").append(i % 7 + 1).append(";\n");
+        builder.append("        ELSE\n");
+        builder.append("            total = total - (j + 1);\n");
+        builder.append("        END\n");
+        builder.append("    END\n");
+        if (i > 0) {
+            builder.append("    IF n > 1 DO\n");
+            builder.append("        total = total + f").append(i - 1).append("(n - 1);\n");
+            builder.append("    END\n");
+        }
+        builder.append("    RETURN total;\n");
+        builder.append("END\n");
+    }
+
+}
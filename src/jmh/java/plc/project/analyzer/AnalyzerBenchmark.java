@@ -0,0 +1,49 @@
+package plc.project.analyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes a pre-parsed program in a fresh environment scope.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() throws LexException, ParseException {
+        var tokens = new Lexer(Programs.generate(size)).lexBuffer();
+        ast = (Ast.Source) new Parser(tokens).parse("source");
+    }
+
+    @Benchmark
+    public Ir.Source analyze() throws AnalyzeException {
+        return new Analyzer(new Scope(Environment.scope())).visit(ast);
+    }
+
+}
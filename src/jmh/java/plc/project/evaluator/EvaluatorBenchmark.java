@@ -0,0 +1,80 @@
+package plc.project.evaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a pre-parsed program in a fresh environment scope, which includes
+ * defining every function and then calling each one. This compares the
+ * engines: the evaluator with scopes, with frames from a {@link Resolver},
+ * the program compiled once by the {@link ClosureCompiler} or to bytecode for
+ * the {@link VirtualMachine}, and the evaluator with hot functions compiled to
+ * JVM bytecode by a {@link Jit} (shared between invocations, so it warms up).
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    private Ast.Source ast;
+    private ClosureCompiler.Program program;
+    private Chunk chunk;
+    private Jit jit;
+
+    @Setup
+    public void setup() throws LexException, ParseException {
+        var tokens = new Lexer(Programs.generate(size)).lexBuffer();
+        ast = (Ast.Source) new Parser(tokens).parse("source");
+        program = new ClosureCompiler().compile(ast);
+        chunk = new BytecodeCompiler().compile(ast);
+        jit = new Jit();
+    }
+
+    @Benchmark
+    public RuntimeValue evaluate() throws EvaluateException {
+        return new Evaluator(new Scope(Environment.scope())).visit(ast);
+    }
+
+    @Benchmark
+    public RuntimeValue evaluateResolved() throws EvaluateException {
+        return new Evaluator(new Scope(Environment.scope()), new Resolver()).visit(ast);
+    }
+
+    @Benchmark
+    public RuntimeValue evaluateCompiled() throws EvaluateException {
+        return program.evaluate(new Scope(Environment.scope()));
+    }
+
+    @Benchmark
+    public RuntimeValue evaluateBytecode() throws EvaluateException {
+        return new VirtualMachine(new Scope(Environment.scope())).run(chunk);
+    }
+
+    @Benchmark
+    public RuntimeValue evaluateJit() throws EvaluateException {
+        return new Evaluator(new Scope(Environment.scope()), null, jit).visit(ast);
+    }
+
+}
@@ -0,0 +1,55 @@
+package plc.project.generator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+import plc.project.analyzer.AnalyzeException;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Ir;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates Java source from a pre-analyzed program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    private Ir.Source ir;
+
+    @Setup
+    public void setup() throws LexException, ParseException, AnalyzeException {
+        var tokens = new Lexer(Programs.generate(size)).lexBuffer();
+        var ast = (Ast.Source) new Parser(tokens).parse("source");
+        var scope = new plc.project.analyzer.Scope(plc.project.analyzer.Environment.scope());
+        ir = new Analyzer(scope).visit(ast);
+    }
+
+    @Benchmark
+    public StringBuilder generate() {
+        return new Generator().visit(ir);
+    }
+
+}
@@ -0,0 +1,72 @@
+package plc.project.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link IncrementalLexer} by file size, where the source is the
+ * small program repeated to (at least) the given number of lines. Each
+ * operation makes an edit and its undo, either at a single offset (typing)
+ * or at two offsets a quarter and three quarters into the file (moving the
+ * gaps across half of it each time), with lexBuffer as the full re-lex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalLexerBenchmark {
+
+    @Param({"1000", "100000"})
+    public int lines;
+
+    private String input;
+    private TokenBuffer edited;
+    private int middle;
+    private int first;
+    private int second;
+
+    @Setup
+    public void setup() throws LexException {
+        var program = Programs.generate(Programs.Size.SMALL);
+        var count = program.lines().count();
+        input = program.repeat((int) ((lines + count - 1) / count));
+        edited = new Lexer(input).lexBuffer();
+        middle = input.indexOf("total", input.length() / 2);
+        first = input.indexOf("total", input.length() / 4);
+        second = input.indexOf("total", input.length() * 3 / 4);
+    }
+
+    @Benchmark
+    public IncrementalLexer.Result relex() throws LexException {
+        IncrementalLexer.relex(edited, middle, 5, "count");
+        return IncrementalLexer.relex(edited, middle, 5, "total");
+    }
+
+    @Benchmark
+    public IncrementalLexer.Result relexFarApart() throws LexException {
+        IncrementalLexer.relex(edited, first, 5, "count");
+        IncrementalLexer.relex(edited, second, 5, "count");
+        IncrementalLexer.relex(edited, first, 5, "total");
+        return IncrementalLexer.relex(edited, second, 5, "total");
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer() throws LexException {
+        return new Lexer(input).lexBuffer();
+    }
+
+}
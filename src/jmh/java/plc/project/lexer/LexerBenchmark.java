@@ -0,0 +1,111 @@
+package plc.project.lexer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lexer's input sources and outputs on the same program, along
+ * with re-lexing a single-character edit and its undo in place via
+ * {@link IncrementalLexer} (see also {@link IncrementalLexerBenchmark}). The
+ * {@link RegexLexer} is the baseline, and each full lex also reports its
+ * throughput in MB/s as the {@code megabytes} counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    private String input;
+    private double megabytes;
+    private ByteBuffer bytes;
+    private TokenBuffer edited;
+    private int edit;
+
+    /**
+     * The megabytes (of UTF-8) lexed, which JMH divides by the time to give
+     * MB/s alongside the ops/s of each benchmark.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public double megabytes;
+
+    }
+
+    @Setup
+    public void setup() throws LexException {
+        input = Programs.generate(size);
+        bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        megabytes = bytes.remaining() / 1e6;
+        edited = new Lexer(input).lexBuffer();
+        edit = input.indexOf("label", input.length() / 2);
+    }
+
+    @Benchmark
+    public List<Token> lexRegex(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new RegexLexer(input).lex();
+    }
+
+    @Benchmark
+    public List<Token> lex(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new Lexer(input).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new Lexer(input).lexBuffer();
+    }
+
+    @Benchmark
+    public List<Token> lexReader(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new Lexer(new StringReader(input)).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBytes(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new Lexer(bytes.duplicate()).lexBuffer();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dplc.lexer.vector=true")
+    public TokenBuffer lexBytesVectorized(Counters counters) throws LexException {
+        counters.megabytes += megabytes;
+        return new Lexer(bytes.duplicate()).lexBuffer();
+    }
+
+    @Benchmark
+    public IncrementalLexer.Result relex() throws LexException {
+        IncrementalLexer.relex(edited, edit, 1, "m");
+        return IncrementalLexer.relex(edited, edit, 1, "l");
+    }
+
+}
@@ -0,0 +1,57 @@
+package plc.project.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ParallelLexer} scaling by pool size, where a single thread
+ * shows the overhead relative to {@link LexerBenchmark#lexBuffer()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelLexerBenchmark {
+
+    @Param({"MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private String input;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        input = Programs.generate(size);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public TokenBuffer lex() throws LexException {
+        return ParallelLexer.lex(input, pool);
+    }
+
+}
@@ -0,0 +1,73 @@
+package plc.project.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses pathologically nested input (as found in generated code), which
+ * overflowed the call stack of the former recursive descent parser long
+ * before reaching these depths. The groups and calls stress the operator
+ * stack of expressions, while the objects and blocks stress the stack of
+ * frames, including objects suspending an expression to parse statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NestingBenchmark {
+
+    public enum Shape {
+        GROUP("expr", "(", "x", ")"),
+        CALL("expr", "f(", "x", ")"),
+        OBJECT("expr", "OBJECT DO LET y = ", "x", "; END"),
+        BLOCK("stmt", "IF c DO ", "x;", " END");
+
+        private final String rule;
+        private final String prefix;
+        private final String inner;
+        private final String suffix;
+
+        Shape(String rule, String prefix, String inner, String suffix) {
+            this.rule = rule;
+            this.prefix = prefix;
+            this.inner = inner;
+            this.suffix = suffix;
+        }
+
+    }
+
+    @Param({"GROUP", "CALL", "OBJECT", "BLOCK"})
+    public Shape shape;
+
+    @Param({"100000"})
+    public int depth;
+
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setup() throws LexException {
+        tokens = new Lexer(shape.prefix.repeat(depth) + shape.inner + shape.suffix.repeat(depth)).lexBuffer();
+    }
+
+    @Benchmark
+    public Ast parse() throws ParseException {
+        return new Parser(tokens).parse(shape.rule);
+    }
+
+}
@@ -0,0 +1,60 @@
+package plc.project.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ParallelParser} scaling by pool size, where a single thread
+ * shows the overhead relative to {@link ParserBenchmark#parseBuffer()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelParserBenchmark {
+
+    @Param({"MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private TokenBuffer tokens;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() throws LexException {
+        tokens = new Lexer(Programs.generate(size)).lexBuffer();
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Ast parse() throws ParseException {
+        return ParallelParser.parse(tokens, pool);
+    }
+
+}
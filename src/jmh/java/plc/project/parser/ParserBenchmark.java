@@ -0,0 +1,136 @@
+package plc.project.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import plc.project.Programs;
+import plc.project.lexer.IncrementalLexer;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses pre-lexed tokens, either from a {@code List<Token>} (which is
+ * converted to a {@link TokenBuffer} first) or directly from a buffer, as
+ * well as expression-dense input (see {@link Programs#expressions}). The
+ * lexAndParse benchmarks compare lexing everything before parsing against
+ * the fused {@link Parser#Parser(Lexer)}, and the cache benchmarks compare
+ * these cold parses against loading the AST from {@link AstCodec} bytes,
+ * either in memory or from a warm {@link AstCache} directory. The reparse
+ * benchmark renames a variable in the middle of the program and back,
+ * re-lexing a separate buffer in place with {@link IncrementalLexer} and
+ * reparsing with {@link IncrementalParser}, i.e. two edits per operation, and
+ * parseInterned
+ * shares repeated subtrees via {@link AstInterner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Programs.Size size;
+
+    private String input;
+    private List<Token> list;
+    private TokenBuffer buffer;
+    private TokenBuffer expressions;
+    private byte[] encoded;
+    private Path directory;
+    private AstCache cache;
+    private TokenBuffer edited;
+    private IncrementalParser incremental;
+    private int offset;
+
+    @Setup
+    public void setup() throws IOException, LexException, ParseException {
+        input = Programs.generate(size);
+        list = new Lexer(input).lex();
+        buffer = new Lexer(input).lexBuffer();
+        expressions = new Lexer(Programs.expressions(size)).lexBuffer();
+        encoded = AstCodec.encode((Ast.Source) new Parser(buffer).parse("source"));
+        directory = Files.createTempDirectory("ast-cache");
+        cache = new AstCache(directory);
+        cache.parse(input);
+        edited = new Lexer(input).lexBuffer();
+        incremental = new IncrementalParser();
+        incremental.parse(edited);
+        offset = input.indexOf("LET total", input.length() / 2) + 4;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var entries = Files.list(directory)) {
+            for (var entry : (Iterable<Path>) entries::iterator) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Ast parseList() throws ParseException {
+        return new Parser(list).parse("source");
+    }
+
+    @Benchmark
+    public Ast parseBuffer() throws ParseException {
+        return new Parser(buffer).parse("source");
+    }
+
+    @Benchmark
+    public Ast parseExpressions() throws ParseException {
+        return new Parser(expressions).parse("source");
+    }
+
+    @Benchmark
+    public Ast parseInterned() throws ParseException {
+        return new Parser(buffer, new AstInterner()).parse("source");
+    }
+
+    @Benchmark
+    public Ast lexAndParse() throws LexException, ParseException {
+        return new Parser(new Lexer(input).lexBuffer()).parse("source");
+    }
+
+    @Benchmark
+    public Ast lexAndParseFused() throws ParseException {
+        return new Parser(new Lexer(input)).parse("source");
+    }
+
+    @Benchmark
+    public Ast reparse() throws LexException, ParseException {
+        incremental.reparse(IncrementalLexer.relex(edited, offset, 5, "count"));
+        return incremental.reparse(IncrementalLexer.relex(edited, offset, 5, "total"));
+    }
+
+    @Benchmark
+    public Ast cacheDecode() {
+        return AstCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public Ast cacheLoad() throws LexException, ParseException {
+        return cache.parse(input);
+    }
+
+}
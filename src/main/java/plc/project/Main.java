@@ -11,6 +11,7 @@ import plc.project.evaluator.Scope;
 import plc.project.generator.Generator;
 import plc.project.lexer.LexException;
 import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
 import plc.project.parser.ParseException;
 import plc.project.parser.Parser;
 
@@ -57,11 +58,25 @@ public final class Main {
     }
 
     private static void parser(String input) throws LexException, ParseException {
-        var tokens = new Lexer(input).lex();
-        var ast = new Parser(tokens).parse("source"); //edit for manual testing
+        var ast = parse(input, "source"); //edit for manual testing
         System.out.println(prettify(ast.toString()));
     }
 
+    /**
+     * Lexes and parses the input in a single pass (see
+     * {@link Parser#Parser(Lexer)}), reporting lex errors as before.
+     */
+    private static Ast parse(String input, String rule) throws LexException, ParseException {
+        try {
+            return new Parser(new Lexer(input)).parse(rule);
+        } catch (ParseException e) {
+            if (e.getCause() instanceof LexException lex) {
+                throw lex;
+            }
+            throw e;
+        }
+    }
+
     private static final Evaluator EVALUATOR;
 
     static {
@@ -73,8 +88,7 @@ public final class Main {
     }
 
     private static void evaluator(String input) throws LexException, ParseException, EvaluateException {
-        var tokens = new Lexer(input).lex();
-        var ast = new Parser(tokens).parse("source"); //edit for manual testing
+        var ast = parse(input, "source"); //edit for manual testing
         var value = EVALUATOR.visit(ast);
         System.out.println(prettify(value.toString()));
     }
@@ -88,8 +102,7 @@ public final class Main {
     }
 
     private static void analyzer(String input) throws LexException, ParseException, AnalyzeException, EvaluateException {
-        var tokens = new Lexer(input).lex();
-        var ast = new Parser(tokens).parse("source"); //edit for manual testing
+        var ast = parse(input, "source"); //edit for manual testing
         var ir = ANALYZER.visit(ast);
         System.out.println(prettify(ir.toString()));
         var value = EVALUATOR.visit(ast);
@@ -97,8 +110,7 @@ public final class Main {
     }
 
     private static void generator(String input) throws LexException, ParseException, AnalyzeException {
-        var tokens = new Lexer(input).lex();
-        var ast = new Parser(tokens).parse("stmt"); //edit for manual testing
+        var ast = parse(input, "stmt"); //edit for manual testing
         var ir = ANALYZER.visit(ast);
         var code = new Generator().visit(ir);
         System.out.println(code);
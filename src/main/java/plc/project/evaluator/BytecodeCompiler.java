@@ -0,0 +1,371 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compiles an AST into a {@link Chunk} of stack bytecode for the
+ * {@link VirtualMachine}, which evaluates the same as the {@link Evaluator}
+ * (including the order of evaluation and the asts of exceptions). Variables
+ * are resolved to frame slots by a {@link Resolver} as for the
+ * {@link ClosureCompiler}, and each DEF compiles to its own chunk.
+ *
+ * <p>Chunks keep no state between runs, so a chunk may be compiled once and
+ * run many times.
+ */
+public final class BytecodeCompiler {
+
+    private final Resolver resolver = new Resolver();
+
+    /**
+     * Compiles the AST, which is typically a source but may be any node.
+     */
+    public Chunk compile(Ast ast) {
+        var emitter = new Emitter(ast instanceof Ast.Source ? "<source>" : "<" + ast.getClass().getSimpleName() + ">", false);
+        switch (ast) {
+            case Ast.Source source -> {
+                resolver.resolve(source);
+                emitter.source = source;
+                block(emitter, source.statements(), null);
+            }
+            case Ast.Stmt stmt -> statement(emitter, stmt, null);
+            case Ast.Expr expr -> expression(emitter, expr, null);
+        }
+        emitter.emit(Opcode.HALT);
+        return emitter.chunk();
+    }
+
+    /**
+     * The chunk being compiled, which tracks the depth of the operand stack
+     * to compute {@link Chunk#maxStack}. Instructions that never continue
+     * (RETURN, FAIL) are tracked as leaving their value, so every statement
+     * leaves one value even if it is unreachable.
+     */
+    private static final class Emitter {
+
+        private final String name;
+        private final boolean function;
+        //the source of the chunk, for a RETURN outside of a function
+        private Ast.@Nullable Source source;
+        private int[] code = new int[32];
+        private int length = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private int depth = 0;
+        private int maxStack = 0;
+
+        private Emitter(String name, boolean function) {
+            this.name = name;
+            this.function = function;
+        }
+
+        private void emit(int opcode, int... operands) {
+            if (length + 1 + operands.length > code.length) {
+                code = Arrays.copyOf(code, 2 * code.length + operands.length);
+            }
+            code[length++] = opcode;
+            for (var operand : operands) {
+                code[length++] = operand;
+            }
+            adjust(switch (opcode) {
+                case Opcode.NIL, Opcode.CONST, Opcode.LOAD_SLOT, Opcode.LOAD_VAR, Opcode.CLOSURE,
+                     Opcode.NEXT, Opcode.GET_FUNCTION, Opcode.GET_METHOD, Opcode.OBJECT -> 1;
+                case Opcode.POP, Opcode.JUMP_IF_FALSE, Opcode.STORE_FRESH, Opcode.DEFINE_FRESH,
+                     Opcode.ADD, Opcode.SUB, Opcode.MUL, Opcode.DIV, Opcode.EQ, Opcode.NE,
+                     Opcode.LT, Opcode.LE, Opcode.GT, Opcode.GE, Opcode.AND, Opcode.OR, Opcode.SET_PROPERTY -> -1;
+                case Opcode.CALL -> -operands[0];
+                case Opcode.CALL_METHOD -> -operands[0] - 1;
+                default -> 0;
+            });
+        }
+
+        /**
+         * Emits a jump (whose first operand is the target), returning the
+         * position of the target to be patched.
+         */
+        private int jump(int opcode, int... operands) {
+            emit(opcode, operands);
+            return length - operands.length;
+        }
+
+        private void patch(int target) {
+            code[target] = length;
+        }
+
+        private int constant(Object constant) {
+            constants.add(constant);
+            return constants.size() - 1;
+        }
+
+        private void adjust(int delta) {
+            depth += delta;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private Chunk chunk() {
+            return new Chunk(name, Arrays.copyOf(code, length), constants.toArray(), maxStack);
+        }
+
+    }
+
+    /**
+     * Compiles statements leaving the value of the last statement (or NIL),
+     * as for a source or the branch of an IF.
+     */
+    private void block(Emitter emitter, List<Ast.Stmt> statements, Resolver.@Nullable Region region) {
+        if (statements.isEmpty()) {
+            emitter.emit(Opcode.NIL);
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            statement(emitter, statements.get(i), region);
+            if (i != statements.size() - 1) {
+                emitter.emit(Opcode.POP);
+            }
+        }
+    }
+
+    /**
+     * Compiles statements leaving no value, as for the body of a FOR.
+     */
+    private void statements(Emitter emitter, List<Ast.Stmt> statements, Resolver.@Nullable Region region) {
+        for (var stmt : statements) {
+            statement(emitter, stmt, region);
+            emitter.emit(Opcode.POP);
+        }
+    }
+
+    private void statement(Emitter emitter, Ast.Stmt ast, Resolver.@Nullable Region region) {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> {
+                optional(emitter, stmt.value(), region);
+                if (region != null) {
+                    emitter.emit(Opcode.LET_SLOT, ((Resolver.Definition) region.get(stmt)).slot(), emitter.constant(stmt));
+                } else {
+                    emitter.emit(Opcode.LET_NAME, emitter.constant(stmt));
+                }
+            }
+            case Ast.Stmt.Def stmt -> def(emitter, stmt, region);
+            case Ast.Stmt.If stmt -> conditional(emitter, stmt, region);
+            case Ast.Stmt.For stmt -> loop(emitter, stmt, region);
+            case Ast.Stmt.Return stmt -> {
+                optional(emitter, stmt.value(), region);
+                if (emitter.function) {
+                    emitter.emit(Opcode.RETURN);
+                } else if (emitter.source != null) {
+                    emitter.emit(Opcode.FAIL, emitter.constant(new Chunk.Failure("Outside of function", emitter.source)));
+                } else {
+                    emitter.emit(Opcode.HALT);
+                }
+            }
+            case Ast.Stmt.Expression stmt -> expression(emitter, stmt.expression(), region);
+            case Ast.Stmt.Assignment stmt -> assignment(emitter, stmt, region);
+        }
+    }
+
+    /**
+     * Compiles a DEF, whose body is compiled to its own chunk with frames
+     * if it is within (or starts) a region and scopes otherwise.
+     */
+    private void def(Emitter emitter, Ast.Stmt.Def ast, Resolver.@Nullable Region outer) {
+        var region = outer != null ? outer : resolver.region(ast);
+        var set = new HashSet<String>();
+        var duplicate = ast.parameters().stream().filter(p -> !set.add(p)).findFirst().orElse(null);
+        var body = new Emitter(ast.name(), true);
+        statements(body, ast.body(), region);
+        body.emit(Opcode.NIL);
+        body.emit(Opcode.RETURN);
+        var resolved = region != null ? (Resolver.Function) region.get(ast) : null;
+        var function = new Chunk.Function(ast, body.chunk(),
+            resolved != null ? resolved.slot() : -1,
+            resolved != null ? resolved.size() : -1,
+            duplicate
+        );
+        emitter.emit(Opcode.CLOSURE, emitter.constant(function));
+    }
+
+    private void conditional(Emitter emitter, Ast.Stmt.If ast, Resolver.@Nullable Region outer) {
+        expression(emitter, ast.condition(), outer);
+        var region = outer != null ? outer : resolver.region(ast);
+        var resolved = region != null ? (Resolver.Branch) region.get(ast) : null;
+        var otherwise = emitter.jump(Opcode.JUMP_IF_FALSE, 0, emitter.constant(ast));
+        branch(emitter, ast.thenBody(), region, resolved != null ? resolved.thenSize() : -1);
+        var end = emitter.jump(Opcode.JUMP, 0);
+        emitter.patch(otherwise);
+        emitter.adjust(-1);
+        branch(emitter, ast.elseBody(), region, resolved != null ? resolved.elseSize() : -1);
+        emitter.patch(end);
+    }
+
+    /**
+     * Compiles a branch of an IF with a frame of the given size (0 for none)
+     * if it is within a region, and a scope otherwise (size -1).
+     */
+    private void branch(Emitter emitter, List<Ast.Stmt> statements, Resolver.@Nullable Region region, int size) {
+        if (size == -1) {
+            emitter.emit(Opcode.PUSH_SCOPE);
+            block(emitter, statements, region);
+            emitter.emit(Opcode.POP_SCOPE);
+        } else if (size == 0) {
+            block(emitter, statements, region);
+        } else {
+            emitter.emit(Opcode.PUSH_FRAME, size);
+            block(emitter, statements, region);
+            emitter.emit(Opcode.POP_FRAME);
+        }
+    }
+
+    private void loop(Emitter emitter, Ast.Stmt.For ast, Resolver.@Nullable Region outer) {
+        expression(emitter, ast.expression(), outer);
+        var region = outer != null ? outer : resolver.region(ast);
+        emitter.emit(Opcode.ITER, emitter.constant(ast));
+        var start = emitter.length;
+        var exit = emitter.jump(Opcode.NEXT, 0);
+        if (region != null) {
+            emitter.emit(Opcode.PUSH_FRAME, ((Resolver.Loop) region.get(ast)).size());
+            emitter.emit(Opcode.STORE_FRESH, 0);
+            statements(emitter, ast.body(), region);
+            emitter.emit(Opcode.POP_FRAME);
+        } else {
+            emitter.emit(Opcode.PUSH_SCOPE);
+            emitter.emit(Opcode.DEFINE_FRESH, emitter.constant(ast));
+            emitter.emit(Opcode.PUSH_SCOPE);
+            statements(emitter, ast.body(), region);
+            emitter.emit(Opcode.POP_SCOPE);
+            emitter.emit(Opcode.POP_SCOPE);
+        }
+        emitter.emit(Opcode.JUMP, start);
+        emitter.patch(exit);
+        //the iterator is popped when exiting
+        emitter.adjust(-1);
+        emitter.emit(Opcode.NIL);
+    }
+
+    private void assignment(Emitter emitter, Ast.Stmt.Assignment ast, Resolver.@Nullable Region region) {
+        switch (ast.expression()) {
+            case Ast.Expr.Variable variable -> {
+                var constant = emitter.constant(new Chunk.Variable(variable, reference(variable, region)));
+                emitter.emit(Opcode.CHECK_VAR, constant);
+                expression(emitter, ast.value(), region);
+                emitter.emit(Opcode.ASSIGN_VAR, constant);
+            }
+            case Ast.Expr.Property property -> {
+                expression(emitter, property.receiver(), region);
+                var constant = emitter.constant(property);
+                emitter.emit(Opcode.CHECK_PROPERTY, constant);
+                expression(emitter, ast.value(), region);
+                emitter.emit(Opcode.SET_PROPERTY, constant);
+            }
+            default -> {
+                emitter.emit(Opcode.FAIL, emitter.constant(new Chunk.Failure("Invalid assignment", ast.expression())));
+                emitter.emit(Opcode.NIL);
+            }
+        }
+    }
+
+    private void optional(Emitter emitter, Optional<Ast.Expr> expr, Resolver.@Nullable Region region) {
+        if (expr.isPresent()) {
+            expression(emitter, expr.get(), region);
+        } else {
+            emitter.emit(Opcode.NIL);
+        }
+    }
+
+    private void expression(Emitter emitter, Ast.Expr ast, Resolver.@Nullable Region region) {
+        switch (ast) {
+            case Ast.Expr.Literal expr -> emitter.emit(Opcode.CONST, emitter.constant(new RuntimeValue.Primitive(expr.value())));
+            case Ast.Expr.Group expr -> expression(emitter, expr.expression(), region);
+            case Ast.Expr.Binary expr -> binary(emitter, expr, region);
+            case Ast.Expr.Variable expr -> {
+                var reference = reference(expr, region);
+                var constant = emitter.constant(new Chunk.Variable(expr, reference));
+                if (reference != null && reference.slots().length == 1 && reference.depths()[0] == 0) {
+                    emitter.emit(Opcode.LOAD_SLOT, reference.slots()[0], constant);
+                } else {
+                    emitter.emit(Opcode.LOAD_VAR, constant);
+                }
+            }
+            case Ast.Expr.Property expr -> {
+                expression(emitter, expr.receiver(), region);
+                emitter.emit(Opcode.GET_PROPERTY, emitter.constant(expr));
+            }
+            case Ast.Expr.Function expr -> {
+                emitter.emit(Opcode.GET_FUNCTION, emitter.constant(new Chunk.Call(expr, reference(expr, region))));
+                for (var argument : expr.arguments()) {
+                    expression(emitter, argument, region);
+                }
+                emitter.emit(Opcode.CALL, expr.arguments().size());
+            }
+            case Ast.Expr.Method expr -> {
+                expression(emitter, expr.receiver(), region);
+                emitter.emit(Opcode.GET_METHOD, emitter.constant(expr));
+                for (var argument : expr.arguments()) {
+                    expression(emitter, argument, region);
+                }
+                emitter.emit(Opcode.CALL_METHOD, expr.arguments().size());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                //objects are never within a region (see Resolver), so fields
+                //and methods are defined in the object's scope
+                emitter.emit(Opcode.OBJECT, emitter.constant(expr));
+                statements(emitter, List.copyOf(expr.fields()), null);
+                statements(emitter, List.copyOf(expr.methods()), null);
+                emitter.emit(Opcode.END_OBJECT);
+            }
+        }
+    }
+
+    private void binary(Emitter emitter, Ast.Expr.Binary ast, Resolver.@Nullable Region region) {
+        expression(emitter, ast.left(), region);
+        var constant = emitter.constant(ast);
+        switch (ast.operator()) {
+            case "+" -> {
+                expression(emitter, ast.right(), region);
+                emitter.emit(Opcode.ADD, constant);
+            }
+            case "-", "*", "/" -> {
+                //the left operand must be a number before evaluating the right
+                emitter.emit(Opcode.CHECK_NUMBER, constant);
+                expression(emitter, ast.right(), region);
+                emitter.emit(switch (ast.operator()) {
+                    case "-" -> Opcode.SUB;
+                    case "*" -> Opcode.MUL;
+                    default -> Opcode.DIV;
+                }, constant);
+            }
+            case "==", "!=" -> {
+                expression(emitter, ast.right(), region);
+                emitter.emit(ast.operator().equals("==") ? Opcode.EQ : Opcode.NE);
+            }
+            case "<", "<=", ">", ">=" -> {
+                expression(emitter, ast.right(), region);
+                emitter.emit(switch (ast.operator()) {
+                    case "<" -> Opcode.LT;
+                    case "<=" -> Opcode.LE;
+                    case ">" -> Opcode.GT;
+                    default -> Opcode.GE;
+                }, constant);
+            }
+            case "AND", "OR" -> {
+                var end = emitter.jump(ast.operator().equals("AND") ? Opcode.AND : Opcode.OR, 0, constant);
+                expression(emitter, ast.right(), region);
+                emitter.emit(Opcode.BOOLEAN, constant);
+                emitter.patch(end);
+            }
+            default -> {
+                emitter.emit(Opcode.POP);
+                emitter.emit(Opcode.FAIL, emitter.constant(new Chunk.Failure("Invalid operator: " + ast.operator(), ast)));
+                emitter.emit(Opcode.NIL);
+            }
+        }
+    }
+
+    private static Resolver.@Nullable Reference reference(Ast.Expr ast, Resolver.@Nullable Region region) {
+        return region != null ? (Resolver.Reference) region.get(ast) : null;
+    }
+
+}
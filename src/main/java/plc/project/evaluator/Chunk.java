@@ -0,0 +1,83 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+/**
+ * Bytecode compiled by the {@link BytecodeCompiler} for a source (or any
+ * other node) or the body of a function, which is run by the
+ * {@link VirtualMachine}. See {@link Opcode} for the instruction set.
+ */
+public final class Chunk {
+
+    final String name;
+    final int[] code;
+    final Object[] constants;
+    final int maxStack;
+
+    Chunk(String name, int[] code, Object[] constants, int maxStack) {
+        this.name = name;
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * A variable (or for {@link Call}, the name of a function), which is
+     * looked up in the frame slots of the reference (if resolved) and then
+     * the scope.
+     */
+    record Variable(Ast.Expr.Variable ast, Resolver.@Nullable Reference reference) {}
+
+    record Call(Ast.Expr.Function ast, Resolver.@Nullable Reference reference) {}
+
+    /**
+     * A function, which defines itself in the given slot of the current frame
+     * (or the scope if -1) and whose calls have frames of the given size (or
+     * scopes if -1). The duplicate parameter, if any, is an error when the
+     * DEF is evaluated.
+     */
+    record Function(Ast.Stmt.Def ast, Chunk chunk, int slot, int size, @Nullable String duplicate) {}
+
+    /**
+     * An exception thrown by {@link Opcode#FAIL}.
+     */
+    record Failure(String message, Ast ast) {}
+
+    /**
+     * Returns a listing of the instructions of the chunk, followed by the
+     * chunks of its functions.
+     */
+    public String disassemble() {
+        var builder = new StringBuilder();
+        disassemble(builder);
+        return builder.toString();
+    }
+
+    private void disassemble(StringBuilder builder) {
+        builder.append("== ").append(name).append(" ==\n");
+        for (int pc = 0; pc < code.length; pc += 1 + Opcode.OPERANDS[code[pc]]) {
+            builder.append(String.format("%04d %s", pc, Opcode.NAMES[code[pc]]));
+            for (int i = 1; i <= Opcode.OPERANDS[code[pc]]; i++) {
+                builder.append(' ').append(code[pc + i]);
+            }
+            if (code[pc] == Opcode.CONST) {
+                builder.append(" ; ").append(((RuntimeValue) constants[code[pc + 1]]).print());
+            } else if (code[pc] == Opcode.CLOSURE) {
+                builder.append(" ; ").append(((Function) constants[code[pc + 1]]).chunk().name);
+            }
+            builder.append('\n');
+        }
+        for (var constant : constants) {
+            if (constant instanceof Function function) {
+                function.chunk().disassemble(builder);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk[name=" + name + ", code=" + code.length + ", constants=" + constants.length + ", maxStack=" + maxStack + "]";
+    }
+
+}
@@ -0,0 +1,744 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Compiles an AST into a tree of closures (<em>closure compilation</em>),
+ * which evaluates the same as the {@link Evaluator} (including the order of
+ * evaluation and the asts of exceptions) but decides everything that only
+ * depends on the AST once when compiling instead of on every evaluation:
+ * the type of each node, the operator of each binary, whether an optional
+ * value is present, and the frame slots of variables resolved by a
+ * {@link Resolver} (see there for the semantics of frames).
+ *
+ * <p>Each node compiles to a {@link Node} with its children already bound,
+ * so evaluating a node is a direct call to the closures of its children.
+ * Compiled programs keep no state between evaluations, so a program may be
+ * compiled once and evaluated many times.
+ */
+public final class ClosureCompiler {
+
+    private static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+
+    private final Resolver resolver = new Resolver();
+
+    /**
+     * Compiles the AST, which is typically a source but may be any node.
+     */
+    public Program compile(Ast ast) {
+        if (ast instanceof Ast.Source source) {
+            resolver.resolve(source);
+        }
+        return new Program(switch (ast) {
+            case Ast.Source source -> source(source);
+            case Ast.Stmt stmt -> statement(stmt, null);
+            case Ast.Expr expr -> expression(expr, null);
+        });
+    }
+
+    /**
+     * A compiled AST.
+     */
+    public static final class Program {
+
+        private final Node node;
+
+        private Program(Node node) {
+            this.node = node;
+        }
+
+        /**
+         * Evaluates the program in the given scope, like
+         * {@code new Evaluator(scope).visit(ast)}.
+         */
+        public RuntimeValue evaluate(Scope scope) throws EvaluateException {
+            return node.evaluate(new Context(scope));
+        }
+
+    }
+
+    /**
+     * A compiled node.
+     */
+    @FunctionalInterface
+    private interface Node {
+
+        RuntimeValue evaluate(Context context) throws EvaluateException;
+
+    }
+
+    /**
+     * The state of an evaluation, which is the state of {@link Evaluator}.
+     */
+    private static final class Context {
+
+        private Scope scope;
+        private @Nullable Frame frame;
+        private @Nullable RuntimeValue returning;
+
+        private Context(Scope scope) {
+            this.scope = scope;
+        }
+
+    }
+
+    private Node source(Ast.Source ast) {
+        var statements = statements(ast.statements(), null);
+        return context -> {
+            RuntimeValue value = NIL;
+            context.returning = null;
+            for (var stmt : statements) {
+                value = stmt.evaluate(context);
+                if (context.returning != null) {
+                    context.returning = null;
+                    throw new EvaluateException("Outside of function", Optional.of(ast));
+                }
+            }
+            return value;
+        };
+    }
+
+    private Node[] statements(List<Ast.Stmt> statements, Resolver.@Nullable Region region) {
+        var nodes = new Node[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = statement(statements.get(i), region);
+        }
+        return nodes;
+    }
+
+    private Node statement(Ast.Stmt ast, Resolver.@Nullable Region region) {
+        return switch (ast) {
+            case Ast.Stmt.Let stmt -> let(stmt, region);
+            case Ast.Stmt.Def stmt -> def(stmt, region != null ? region : resolver.region(stmt));
+            case Ast.Stmt.If stmt -> conditional(stmt, region);
+            case Ast.Stmt.For stmt -> loop(stmt, region);
+            case Ast.Stmt.Return stmt -> {
+                var value = optional(stmt.value(), region);
+                yield context -> {
+                    var returned = value.evaluate(context);
+                    context.returning = returned;
+                    return returned;
+                };
+            }
+            case Ast.Stmt.Expression stmt -> expression(stmt.expression(), region);
+            case Ast.Stmt.Assignment stmt -> assignment(stmt, region);
+        };
+    }
+
+    private Node let(Ast.Stmt.Let ast, Resolver.@Nullable Region region) {
+        var value = optional(ast.value(), region);
+        if (region != null) {
+            var slot = ((Resolver.Definition) region.get(ast)).slot();
+            return context -> {
+                var defined = value.evaluate(context);
+                if (context.frame.slots[slot] != null) {
+                    throw new EvaluateException("Variable already defined in current scope.", Optional.of(ast));
+                }
+                context.frame.slots[slot] = defined;
+                return defined;
+            };
+        }
+        return context -> {
+            var defined = value.evaluate(context);
+            try {
+                context.scope.define(ast.name(), defined);
+            } catch (IllegalStateException ex) {
+                throw new EvaluateException("Variable already defined in current scope.", Optional.of(ast));
+            }
+            return defined;
+        };
+    }
+
+    /**
+     * Compiles a DEF, which is evaluated with scopes unless it is within (or
+     * starts) the given region.
+     */
+    private Node def(Ast.Stmt.Def ast, Resolver.@Nullable Region region) {
+        var set = new HashSet<String>();
+        var duplicate = ast.parameters().stream().filter(p -> !set.add(p)).findFirst();
+        var parameters = ast.parameters().toArray(String[]::new);
+        var body = statements(ast.body(), region);
+        if (region != null) {
+            var resolved = (Resolver.Function) region.get(ast);
+            var slot = resolved.slot();
+            var size = resolved.size();
+            return context -> {
+                if (duplicate.isPresent()) {
+                    throw new EvaluateException("Invalid duplicate " + duplicate.get(), Optional.of(ast));
+                }
+                final Scope ogScope = context.scope;
+                final @Nullable Frame ogFrame = context.frame;
+                var func = new RuntimeValue.Function(ast.name(), args -> {
+                    if (args.size() != parameters.length) {
+                        throw new EvaluateException("Invalid arg", Optional.of(ast));
+                    }
+                    var savedScope = context.scope;
+                    var savedFrame = context.frame;
+                    try {
+                        context.scope = ogScope;
+                        context.frame = new Frame(size, ogFrame);
+                        for (int i = 0; i < parameters.length; i++) {
+                            context.frame.slots[i] = args.get(i);
+                        }
+                        return body(body, context);
+                    } finally {
+                        context.scope = savedScope;
+                        context.frame = savedFrame;
+                    }
+                });
+                if (slot == -1) {
+                    define(context, ast, func);
+                } else if (context.frame.slots[slot] == null) {
+                    context.frame.slots[slot] = func;
+                } else {
+                    throw new EvaluateException("Invalid function", Optional.of(ast));
+                }
+                return func;
+            };
+        }
+        return context -> {
+            if (duplicate.isPresent()) {
+                throw new EvaluateException("Invalid duplicate " + duplicate.get(), Optional.of(ast));
+            }
+            final Scope ogScope = context.scope;
+            var func = new RuntimeValue.Function(ast.name(), args -> {
+                if (args.size() != parameters.length) {
+                    throw new EvaluateException("Invalid arg", Optional.of(ast));
+                }
+                var savedScope = context.scope;
+                var savedFrame = context.frame;
+                try {
+                    context.frame = null;
+                    var ps = new Scope(ogScope);
+                    for (int i = 0; i < parameters.length; i++) {
+                        ps.define(parameters[i], args.get(i));
+                    }
+                    context.scope = new Scope(ps);
+                    return body(body, context);
+                } finally {
+                    context.scope = savedScope;
+                    context.frame = savedFrame;
+                }
+            });
+            define(context, ast, func);
+            return func;
+        };
+    }
+
+    private static void define(Context context, Ast.Stmt.Def ast, RuntimeValue.Function func) throws EvaluateException {
+        try {
+            context.scope.define(ast.name(), func);
+        } catch (IllegalStateException ignore) {
+            throw new EvaluateException("Invalid function", Optional.of(ast));
+        }
+    }
+
+    /**
+     * Evaluates the body of a function, returning the value of a RETURN.
+     */
+    private static RuntimeValue body(Node[] body, Context context) throws EvaluateException {
+        for (var stmt : body) {
+            stmt.evaluate(context);
+            var value = context.returning;
+            if (value != null) {
+                context.returning = null;
+                return value;
+            }
+        }
+        return NIL;
+    }
+
+    private Node conditional(Ast.Stmt.If ast, Resolver.@Nullable Region outer) {
+        var condition = expression(ast.condition(), outer);
+        var region = outer != null ? outer : resolver.region(ast);
+        var thenBody = statements(ast.thenBody(), region);
+        var elseBody = statements(ast.elseBody(), region);
+        if (region != null) {
+            var resolved = (Resolver.Branch) region.get(ast);
+            var thenSize = resolved.thenSize();
+            var elseSize = resolved.elseSize();
+            return context -> {
+                var cond = condition(context, condition, ast);
+                var size = cond ? thenSize : elseSize;
+                if (size == 0) {
+                    return block(cond ? thenBody : elseBody, context);
+                }
+                var savedFrame = context.frame;
+                try {
+                    context.frame = new Frame(size, savedFrame);
+                    return block(cond ? thenBody : elseBody, context);
+                } finally {
+                    context.frame = savedFrame;
+                }
+            };
+        }
+        return context -> {
+            var cond = condition(context, condition, ast);
+            Scope og = context.scope;
+            try {
+                context.scope = new Scope(og);
+                return block(cond ? thenBody : elseBody, context);
+            } finally {
+                context.scope = og;
+            }
+        };
+    }
+
+    private static boolean condition(Context context, Node condition, Ast.Stmt.If ast) throws EvaluateException {
+        if (condition.evaluate(context) instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof Boolean cond) {
+            return cond;
+        }
+        throw new EvaluateException("IF condition must be Boolean.", Optional.of(ast.condition()));
+    }
+
+    /**
+     * Evaluates the statements of an IF, returning the value of the last
+     * statement evaluated.
+     */
+    private static RuntimeValue block(Node[] statements, Context context) throws EvaluateException {
+        RuntimeValue last = NIL;
+        for (var stmt : statements) {
+            last = stmt.evaluate(context);
+            if (context.returning != null) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    private Node loop(Ast.Stmt.For ast, Resolver.@Nullable Region outer) {
+        var expression = expression(ast.expression(), outer);
+        var region = outer != null ? outer : resolver.region(ast);
+        var body = statements(ast.body(), region);
+        if (region != null) {
+            var size = ((Resolver.Loop) region.get(ast)).size();
+            return context -> {
+                var list = list(context, expression, ast);
+                var savedFrame = context.frame;
+                try {
+                    for (Object obj : list) {
+                        context.frame = new Frame(size, savedFrame);
+                        context.frame.slots[0] = (RuntimeValue) obj;
+                        for (var stmt : body) {
+                            var value = stmt.evaluate(context);
+                            if (context.returning != null) {
+                                return value;
+                            }
+                        }
+                    }
+                } finally {
+                    context.frame = savedFrame;
+                }
+                return NIL;
+            };
+        }
+        return context -> {
+            var list = list(context, expression, ast);
+            for (Object obj : list) {
+                Scope ogScope = context.scope;
+                try {
+                    var scopeIter = new Scope(ogScope);
+                    scopeIter.define(ast.name(), (RuntimeValue) obj);
+                    context.scope = new Scope(scopeIter);
+                    for (var stmt : body) {
+                        var value = stmt.evaluate(context);
+                        if (context.returning != null) {
+                            return value;
+                        }
+                    }
+                } finally {
+                    context.scope = ogScope;
+                }
+            }
+            return NIL;
+        };
+    }
+
+    private static List<?> list(Context context, Node expression, Ast.Stmt.For ast) throws EvaluateException {
+        if (expression.evaluate(context) instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof List<?> list) {
+            return list;
+        }
+        throw new EvaluateException("Invalid FOR", Optional.of(ast));
+    }
+
+    private Node assignment(Ast.Stmt.Assignment ast, Resolver.@Nullable Region region) {
+        var value = expression(ast.value(), region);
+        switch (ast.expression()) {
+            case Ast.Expr.Variable variable -> {
+                var name = variable.name();
+                var reference = reference(variable, region);
+                return context -> {
+                    if (lookup(reference, context) == null && context.scope.resolve(name, false).isEmpty()) {
+                        throw new EvaluateException("Undefined variable.", Optional.of(variable));
+                    }
+                    var assigned = value.evaluate(context);
+                    if (!assign(reference, context, assigned)) {
+                        try {
+                            context.scope.assign(name, assigned);
+                        } catch (IllegalStateException ignore) {
+                            throw new EvaluateException("Invalid variable", Optional.of(variable));
+                        }
+                    }
+                    return assigned;
+                };
+            }
+            case Ast.Expr.Property property -> {
+                var receiver = expression(property.receiver(), region);
+                var name = property.name();
+                return context -> {
+                    if (!(receiver.evaluate(context) instanceof RuntimeValue.ObjectValue object)) {
+                        throw new EvaluateException("Receiver must be an object.", Optional.of(property.receiver()));
+                    }
+                    if (owner(object, name) == null) {
+                        throw new EvaluateException("Invalid property", Optional.of(property));
+                    }
+                    var assigned = value.evaluate(context);
+                    if (object.scope().resolve(name, true).isPresent()) {
+                        object.scope().assign(name, assigned);
+                    } else {
+                        object.scope().define(name, assigned);
+                    }
+                    return assigned;
+                };
+            }
+            default -> {
+                return context -> {
+                    throw new EvaluateException("Invalid assignment", Optional.of(ast.expression()));
+                };
+            }
+        }
+    }
+
+    private Node optional(Optional<Ast.Expr> expr, Resolver.@Nullable Region region) {
+        return expr.isPresent() ? expression(expr.get(), region) : context -> NIL;
+    }
+
+    private Node expression(Ast.Expr ast, Resolver.@Nullable Region region) {
+        return switch (ast) {
+            case Ast.Expr.Literal expr -> {
+                var value = new RuntimeValue.Primitive(expr.value());
+                yield context -> value;
+            }
+            case Ast.Expr.Group expr -> expression(expr.expression(), region);
+            case Ast.Expr.Binary expr -> binary(expr, region);
+            case Ast.Expr.Variable expr -> variable(expr, region);
+            case Ast.Expr.Property expr -> {
+                var receiver = expression(expr.receiver(), region);
+                yield context -> {
+                    if (!(receiver.evaluate(context) instanceof RuntimeValue.ObjectValue object)) {
+                        throw new EvaluateException("Invalid receiver", Optional.of(expr.receiver()));
+                    }
+                    var owner = owner(object, expr.name());
+                    if (owner == null) {
+                        throw new EvaluateException("Invalid property", Optional.of(expr));
+                    }
+                    return owner.scope().resolve(expr.name(), true).get();
+                };
+            }
+            case Ast.Expr.Function expr -> function(expr, region);
+            case Ast.Expr.Method expr -> method(expr, region);
+            case Ast.Expr.ObjectExpr expr -> object(expr, region);
+        };
+    }
+
+    private Node variable(Ast.Expr.Variable ast, Resolver.@Nullable Region region) {
+        var name = ast.name();
+        var reference = reference(ast, region);
+        if (reference != null && reference.slots().length == 1 && reference.depths()[0] == 0) {
+            var slot = reference.slots()[0];
+            return context -> {
+                var value = context.frame.slots[slot];
+                return value != null ? value : resolve(context, ast);
+            };
+        } else if (reference != null && reference.slots().length != 0) {
+            return context -> {
+                var value = lookup(reference, context);
+                return value != null ? value : resolve(context, ast);
+            };
+        }
+        return context -> resolve(context, ast);
+    }
+
+    private static RuntimeValue resolve(Context context, Ast.Expr.Variable ast) throws EvaluateException {
+        return context.scope.resolve(ast.name(), false)
+            .orElseThrow(() -> new EvaluateException("Undefined: " + ast.name(), Optional.of(ast)));
+    }
+
+    private Node function(Ast.Expr.Function ast, Resolver.@Nullable Region region) {
+        var reference = reference(ast, region);
+        var arguments = expressions(ast.arguments(), region);
+        return context -> {
+            var resolved = lookup(reference, context);
+            var functionValue = resolved != null ? resolved : context.scope.resolve(ast.name(), false)
+                .orElseThrow(() -> new EvaluateException("Function '" + ast.name() + "' not defined.", Optional.of(ast)));
+            if (!(functionValue instanceof RuntimeValue.Function function)) {
+                throw new EvaluateException("'" + ast.name() + "' has error.", Optional.of(ast));
+            }
+            var evalArgs = new ArrayList<RuntimeValue>(arguments.length);
+            for (var argument : arguments) {
+                evalArgs.add(argument.evaluate(context));
+            }
+            return function.definition().invoke(evalArgs);
+        };
+    }
+
+    private Node method(Ast.Expr.Method ast, Resolver.@Nullable Region region) {
+        var receiver = expression(ast.receiver(), region);
+        var arguments = expressions(ast.arguments(), region);
+        return context -> {
+            if (!(receiver.evaluate(context) instanceof RuntimeValue.ObjectValue object)) {
+                throw new EvaluateException("Invalid receiver", Optional.of(ast.receiver()));
+            }
+            var owner = owner(object, ast.name());
+            if (owner == null || !(owner.scope().resolve(ast.name(), true).get() instanceof RuntimeValue.Function func)) {
+                throw new EvaluateException("Invalid method", Optional.of(ast));
+            }
+            var args = new ArrayList<RuntimeValue>(arguments.length + 1);
+            if (owner.name().isPresent() && ("Object".equals(owner.name().get()) || "Prototype".equals(owner.name().get()))) {
+                args.add(object);
+            }
+            for (var argument : arguments) {
+                args.add(argument.evaluate(context));
+            }
+            return func.definition().invoke(args);
+        };
+    }
+
+    private Node object(Ast.Expr.ObjectExpr ast, Resolver.@Nullable Region region) {
+        //objects are never within a region (see Resolver), so fields and
+        //methods are defined in the object's scope
+        var fields = statements(List.copyOf(ast.fields()), null);
+        var methods = statements(List.copyOf(ast.methods()), null);
+        return context -> {
+            var o = new RuntimeValue.ObjectValue(ast.name(), new Scope(context.scope));
+            Scope ogscope = context.scope;
+            try {
+                context.scope = o.scope();
+                context.scope.define("this", o);
+                for (var field : fields) {
+                    field.evaluate(context);
+                }
+                for (var method : methods) {
+                    method.evaluate(context);
+                }
+                return o;
+            } finally {
+                context.scope = ogscope;
+            }
+        };
+    }
+
+    private Node[] expressions(List<Ast.Expr> expressions, Resolver.@Nullable Region region) {
+        var nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expression(expressions.get(i), region);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the object defining the property, which is the object itself
+     * or an object in its prototype chain, or null if it is undefined.
+     */
+    private static RuntimeValue.@Nullable ObjectValue owner(RuntimeValue.ObjectValue object, String name) {
+        var curr = object;
+        while (curr.scope().resolve(name, true).isEmpty()) {
+            if (curr.scope().resolve("prototype", true).orElse(null) instanceof RuntimeValue.ObjectValue prototype) {
+                curr = prototype;
+            } else {
+                return null;
+            }
+        }
+        return curr;
+    }
+
+    private static Resolver.@Nullable Reference reference(Ast.Expr ast, Resolver.@Nullable Region region) {
+        return region != null ? (Resolver.Reference) region.get(ast) : null;
+    }
+
+    /**
+     * Returns the value of a variable resolved to a slot, or null if it is
+     * undefined in the frames (and hence must be looked up in the scope).
+     */
+    private static @Nullable RuntimeValue lookup(Resolver.@Nullable Reference reference, Context context) {
+        if (reference == null) {
+            return null;
+        }
+        for (int i = 0; i < reference.slots().length; i++) {
+            var value = context.frame.up(reference.depths()[i]).slots[reference.slots()[i]];
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Assigns a variable resolved to a slot, returning false if it is
+     * undefined in the frames.
+     */
+    private static boolean assign(Resolver.@Nullable Reference reference, Context context, RuntimeValue value) {
+        if (reference == null) {
+            return false;
+        }
+        for (int i = 0; i < reference.slots().length; i++) {
+            var frame = context.frame.up(reference.depths()[i]);
+            if (frame.slots[reference.slots()[i]] != null) {
+                frame.slots[reference.slots()[i]] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles a binary expression with the operator chosen here, so the
+     * closure only contains the checks and arithmetic for that operator.
+     */
+    private Node binary(Ast.Expr.Binary ast, Resolver.@Nullable Region region) {
+        var left = expression(ast.left(), region);
+        var right = expression(ast.right(), region);
+        return switch (ast.operator()) {
+            case "+" -> context -> {
+                var l = left.evaluate(context);
+                var r = right.evaluate(context);
+                var lv = value(l);
+                var rv = value(r);
+                if (lv instanceof String || rv instanceof String) {
+                    return new RuntimeValue.Primitive(l.print() + r.print());
+                } else if (lv instanceof BigInteger li && rv instanceof BigInteger ri) {
+                    return new RuntimeValue.Primitive(li.add(ri));
+                } else if (lv instanceof BigDecimal ld && rv instanceof BigDecimal rd) {
+                    return new RuntimeValue.Primitive(ld.add(rd));
+                }
+                throw new EvaluateException("Invalid '+'", Optional.of(ast.left()));
+            };
+            case "-" -> arithmetic(ast, left, right, "Invalid left", BigInteger::subtract, BigDecimal::subtract);
+            case "*" -> arithmetic(ast, left, right, "Invalid left", BigInteger::multiply, BigDecimal::multiply);
+            case "/" -> arithmetic(ast, left, right, "Invalid",
+                (li, ri) -> {
+                    if (ri.signum() == 0) {
+                        throw new EvaluateException("zero division error", Optional.of(ast.right()));
+                    }
+                    return li.divide(ri);
+                },
+                (ld, rd) -> {
+                    if (rd.signum() == 0) {
+                        throw new EvaluateException("zero division error", Optional.of(ast.right()));
+                    }
+                    return ld.divide(rd, RoundingMode.HALF_EVEN);
+                }
+            );
+            case "==" -> context -> {
+                var l = value(left.evaluate(context));
+                var r = value(right.evaluate(context));
+                return new RuntimeValue.Primitive(Objects.equals(l, r));
+            };
+            case "!=" -> context -> {
+                var l = value(left.evaluate(context));
+                var r = value(right.evaluate(context));
+                return new RuntimeValue.Primitive(!Objects.equals(l, r));
+            };
+            case "<" -> comparison(ast, left, right, comp -> comp < 0);
+            case "<=" -> comparison(ast, left, right, comp -> comp <= 0);
+            case ">" -> comparison(ast, left, right, comp -> comp > 0);
+            case ">=" -> comparison(ast, left, right, comp -> comp >= 0);
+            case "AND" -> logical(ast, left, right, false);
+            case "OR" -> logical(ast, left, right, true);
+            default -> context -> {
+                left.evaluate(context);
+                throw new EvaluateException("Invalid operator: " + ast.operator(), Optional.of(ast));
+            };
+        };
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+
+        T apply(T left, T right) throws EvaluateException;
+
+    }
+
+    /**
+     * Compiles -, *, and /, which require the left operand to be a number
+     * before evaluating the right operand, which must be the same type.
+     */
+    private static Node arithmetic(Ast.Expr.Binary ast, Node left, Node right, String invalid, Operation<BigInteger> integer, Operation<BigDecimal> decimal) {
+        return context -> {
+            var l = value(left.evaluate(context));
+            if (l instanceof BigInteger li) {
+                if (value(right.evaluate(context)) instanceof BigInteger ri) {
+                    return new RuntimeValue.Primitive(integer.apply(li, ri));
+                }
+            } else if (l instanceof BigDecimal ld) {
+                if (value(right.evaluate(context)) instanceof BigDecimal rd) {
+                    return new RuntimeValue.Primitive(decimal.apply(ld, rd));
+                }
+            } else {
+                throw new EvaluateException(invalid, Optional.of(ast.left()));
+            }
+            throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+        };
+    }
+
+    @FunctionalInterface
+    private interface Comparison {
+
+        boolean test(int comp);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node comparison(Ast.Expr.Binary ast, Node left, Node right, Comparison comparison) {
+        return context -> {
+            var l = left.evaluate(context);
+            var r = right.evaluate(context);
+            if (!(l instanceof RuntimeValue.Primitive lp) || !(lp.value() instanceof Comparable<?> lc)) {
+                throw new EvaluateException("Invalid left", Optional.of(ast.left()));
+            }
+            var rw = value(r);
+            if (rw == null || !lc.getClass().isInstance(rw)) {
+                throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+            }
+            return new RuntimeValue.Primitive(comparison.test(((Comparable<Object>) lc).compareTo(rw)));
+        };
+    }
+
+    /**
+     * Compiles AND/OR, which short circuit when the left operand is the
+     * given value.
+     */
+    private static Node logical(Ast.Expr.Binary ast, Node left, Node right, boolean shortCircuit) {
+        return context -> {
+            if (!(value(left.evaluate(context)) instanceof Boolean l)) {
+                throw new EvaluateException("Invalid left", Optional.of(ast.left()));
+            }
+            if (l == shortCircuit) {
+                return new RuntimeValue.Primitive(shortCircuit);
+            }
+            if (!(value(right.evaluate(context)) instanceof Boolean r)) {
+                throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+            }
+            return new RuntimeValue.Primitive(r);
+        };
+    }
+
+    /**
+     * Returns the value of a primitive, or the value itself otherwise, which
+     * is how values are compared for equality.
+     */
+    private static @Nullable Object value(RuntimeValue value) {
+        return value instanceof RuntimeValue.Primitive primitive ? primitive.value() : value;
+    }
+
+}
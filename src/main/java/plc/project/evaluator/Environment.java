@@ -85,6 +85,13 @@ public final class Environment {
             e = bi;
         }
         var l = new java.util.ArrayList<RuntimeValue>();
+        if (s.bitLength() < 64 && e.bitLength() < 64) {
+            // count with a long, rather than adding BigIntegers
+            for (long i = s.longValue(); i < e.longValue(); i++) {
+                l.add(new RuntimeValue.Primitive(BigInteger.valueOf(i)));
+            }
+            return new RuntimeValue.Primitive(l);
+        }
         for (var i = s; i.compareTo(e) < 0; i = i.add(BigInteger.ONE)) {
             // create list for range
             l.add(new RuntimeValue.Primitive(i));
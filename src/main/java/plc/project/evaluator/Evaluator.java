@@ -1,5 +1,6 @@
 package plc.project.evaluator;
 
+import org.jspecify.annotations.Nullable;
 import plc.project.parser.Ast;
 
 import java.util.Optional;
@@ -10,8 +11,55 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     private Scope scope;
 
+    /**
+     * The value of a RETURN that was evaluated, which is set until the call
+     * of the enclosing function returns it. Every list of statements stops
+     * evaluating once this is set, so a RETURN unwinds to its function
+     * without an exception (i.e. without a message and stack trace).
+     */
+    private @Nullable RuntimeValue returning;
+
+    /**
+     * The resolver of the regions evaluated with frames, and the current
+     * region and frame (if any). See {@link Resolver} for details.
+     */
+    private final @Nullable Resolver resolver;
+    private Resolver.@Nullable Region region;
+    private @Nullable Frame frame;
+
+    /**
+     * The compiler of hot functions, if any. See {@link Jit} for details.
+     */
+    private final @Nullable Jit jit;
+
     public Evaluator(Scope scope) {
         this.scope = scope;
+        this.resolver = null;
+        this.jit = null;
+    }
+
+    /**
+     * Creates an evaluator that resolves each source it evaluates with the
+     * given resolver, evaluating the variables of functions and blocks with
+     * array-backed frames instead of scopes. Scopes are still used for
+     * globals (so {@link #getScope()} behaves the same) and objects.
+     */
+    public Evaluator(Scope scope, Resolver resolver) {
+        this.scope = scope;
+        this.resolver = resolver;
+        this.jit = null;
+    }
+
+    /**
+     * Creates an evaluator that calls functions compiled by the given
+     * {@link Jit} once they are hot, optionally with a resolver as above.
+     * The jit may be shared between evaluators (on the same thread), such as
+     * the evaluators of a REPL.
+     */
+    public Evaluator(Scope scope, @Nullable Resolver resolver, Jit jit) {
+        this.scope = scope;
+        this.resolver = resolver;
+        this.jit = jit;
     }
 
     public Scope getScope() {
@@ -22,21 +70,18 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
     public RuntimeValue visit(Ast.Source ast) throws EvaluateException {
         // done
         RuntimeValue value = new RuntimeValue.Primitive(null);
-
-        try {
-            for (var stmt : ast.statements()) {
-                value = visit(stmt);
-            }
-            return value;
-
+        returning = null;
+        if (resolver != null) {
+            resolver.resolve(ast);
         }
-        catch (EvaluateException error) {
-
-            if (error.getAst().orElse(null) instanceof Ast.Stmt.Return) {
+        for (var stmt : ast.statements()) {
+            value = visit(stmt);
+            if (returning != null) {
+                returning = null;
                 throw new EvaluateException("Outside of function", Optional.of(ast));
             }
-            throw error;
         }
+        return value;
     }
 
     @Override
@@ -48,6 +93,14 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         } else {
             value = new RuntimeValue.Primitive(null);
         }
+        if (region != null) {
+            var slot = ((Resolver.Definition) region.get(ast)).slot();
+            if (frame.slots[slot] != null) {
+                throw new EvaluateException("Variable already defined in current scope.", Optional.of(ast));
+            }
+            frame.slots[slot] = value;
+            return value;
+        }
         try {
             scope.define(ast.name(), value);
         } catch (IllegalStateException ex) {
@@ -66,6 +119,24 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             }
         }
 
+        var region = region(ast);
+        if (region != null) {
+            var resolved = (Resolver.Function) region.get(ast);
+            var func = function(ast, region, resolved.size());
+            if (resolved.slot() == -1) {
+                try {
+                    scope.define(ast.name(), func);
+                } catch (IllegalStateException ignore) {
+                    throw new EvaluateException("Invalid function", Optional.of(ast));
+                }
+            } else if (frame.slots[resolved.slot()] == null) {
+                frame.slots[resolved.slot()] = func;
+            } else {
+                throw new EvaluateException("Invalid function", Optional.of(ast));
+            }
+            return func;
+        }
+
         final Scope ogScope = this.scope;
 
 
@@ -74,13 +145,21 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             if (args.size() != ast.parameters().size()) {
                 throw new EvaluateException("Invalid arg", Optional.of(ast));
             }
+            var compiled = jit != null ? jit.compiled(ast) : null;
+            if (compiled != null) {
+                return compiled.invoke(ogScope, args);
+            }
 
             // save scope
 
             Scope savedScope = this.scope;
+            var savedRegion = this.region;
+            var savedFrame = this.frame;
 
-            // implement try catch block
             try {
+                this.region = null;
+                this.frame = null;
+                this.returning = null;
                 var ps = new Scope(ogScope);
 
                 for (int i = 0; i < ast.parameters().size(); i++) {
@@ -89,26 +168,21 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
                 this.scope = new Scope(ps);
 
-                try {
-                    for (var i : ast.body()) {
-
-                        visit(i);
-                    }
-                    return new RuntimeValue.Primitive(null);
-                }
-
-                catch (EvaluateException err) {
-                    if (err.getAst().orElse(null) instanceof Ast.Stmt.Return) {
-
-                        return this.scope.resolve("__return__", true)
-                                .orElse(new RuntimeValue.Primitive(null));
+                for (var i : ast.body()) {
+                    visit(i);
+                    var value = returning;
+                    if (value != null) {
+                        return value;
                     }
-                    throw err;
                 }
+                return new RuntimeValue.Primitive(null);
             }
             finally {
 
+                this.returning = null;
                 this.scope = savedScope;
+                this.region = savedRegion;
+                this.frame = savedFrame;
             }
         });
 
@@ -121,6 +195,51 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         return func;
     }
 
+    /**
+     * Returns the function of a DEF within a region, whose calls evaluate the
+     * body with a new frame in the current frame (i.e. as a closure).
+     */
+    private RuntimeValue.Function function(Ast.Stmt.Def ast, Resolver.Region region, int size) {
+        final Scope ogScope = this.scope;
+        final @Nullable Frame ogFrame = this.frame;
+        return new RuntimeValue.Function(ast.name(), args -> {
+            if (args.size() != ast.parameters().size()) {
+                throw new EvaluateException("Invalid arg", Optional.of(ast));
+            }
+            //compiled functions look up names in the scope, so functions
+            //within other functions (i.e. frames) are always interpreted
+            var compiled = jit != null && ogFrame == null ? jit.compiled(ast) : null;
+            if (compiled != null) {
+                return compiled.invoke(ogScope, args);
+            }
+            Scope savedScope = this.scope;
+            var savedRegion = this.region;
+            var savedFrame = this.frame;
+            try {
+                this.scope = ogScope;
+                this.region = region;
+                this.frame = new Frame(size, ogFrame);
+                this.returning = null;
+                for (int i = 0; i < args.size(); i++) {
+                    frame.slots[i] = args.get(i);
+                }
+                for (var i : ast.body()) {
+                    visit(i);
+                    var value = returning;
+                    if (value != null) {
+                        return value;
+                    }
+                }
+                return new RuntimeValue.Primitive(null);
+            } finally {
+                this.returning = null;
+                this.scope = savedScope;
+                this.region = savedRegion;
+                this.frame = savedFrame;
+            }
+        });
+    }
+
     @Override
     public RuntimeValue visit(Ast.Stmt.If ast) throws EvaluateException {
         // core
@@ -132,6 +251,31 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         }
         var cond = maybeCond.get();
         RuntimeValue last = new RuntimeValue.Primitive(null);
+
+        var region = region(ast);
+        if (region != null) {
+            var resolved = (Resolver.Branch) region.get(ast);
+            var size = cond ? resolved.thenSize() : resolved.elseSize();
+            var savedRegion = this.region;
+            var savedFrame = this.frame;
+            try {
+                this.region = region;
+                if (size != 0) {
+                    frame = new Frame(size, frame);
+                }
+                for (var j : cond ? ast.thenBody() : ast.elseBody()) {
+                    last = visit(j);
+                    if (returning != null) {
+                        break;
+                    }
+                }
+                return last;
+            } finally {
+                this.region = savedRegion;
+                this.frame = savedFrame;
+            }
+        }
+
         Scope og = scope;
 
         try {
@@ -140,6 +284,9 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
             for (var j : b) {
                 last = visit(j);
+                if (returning != null) {
+                    break;
+                }
             }
             return last;
         } finally {
@@ -154,6 +301,30 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         var l = requireType(isIterable, java.util.List.class)
                 .orElseThrow(() -> new EvaluateException("Invalid FOR", Optional.of(ast)));
 
+        var region = region(ast);
+        if (region != null) {
+            var size = ((Resolver.Loop) region.get(ast)).size();
+            var savedRegion = this.region;
+            var savedFrame = this.frame;
+            try {
+                this.region = region;
+                for (Object obj : l) {
+                    frame = new Frame(size, savedFrame);
+                    frame.slots[0] = (RuntimeValue) obj;
+                    for (var stmt : ast.body()) {
+                        var value = visit(stmt);
+                        if (returning != null) {
+                            return value;
+                        }
+                    }
+                }
+            } finally {
+                this.region = savedRegion;
+                this.frame = savedFrame;
+            }
+            return new RuntimeValue.Primitive(null);
+        }
+
         for (Object obj : l) {
             var i = (RuntimeValue) obj;
 
@@ -170,7 +341,10 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                 try {
                     scope = new Scope(scope);
                     for (var stmt : ast.body()) {
-                        visit(stmt);
+                        var value = visit(stmt);
+                        if (returning != null) {
+                            return value;
+                        }
                     }
                 }
                 finally {
@@ -192,14 +366,8 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         } else {
             val = new RuntimeValue.Primitive(null);
         }
-
-
-        if (scope.resolve("__return__", true).isPresent()) {
-            scope.assign("__return__", val);
-        } else {
-            scope.define("__return__", val);
-        }
-        throw new EvaluateException("RETURN", Optional.of(ast));
+        returning = val;
+        return val;
     }
 
     @Override
@@ -216,7 +384,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         String pname = null;
 
         if (lefths instanceof Ast.Expr.Variable v) {
-            if (scope.resolve(v.name(), false).isEmpty()) {
+            if (lookup(v) == null && scope.resolve(v.name(), false).isEmpty()) {
                 throw new EvaluateException("Undefined variable.", Optional.of(lefths));
             }
         }
@@ -250,7 +418,10 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             throw new EvaluateException("Invalid assignment", Optional.of(lefths));
         }
         var value = visit(ast.value());
-        if (lefths instanceof Ast.Expr.Variable var) {
+        if (lefths instanceof Ast.Expr.Variable var && assign(var, value)) {
+            return value;
+        }
+        else if (lefths instanceof Ast.Expr.Variable var) {
             try {
                 scope.assign(var.name(), value);
             }
@@ -455,6 +626,10 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
     @Override
     public RuntimeValue visit(Ast.Expr.Variable ast) throws EvaluateException {
         // easy/core/done
+        var value = lookup(ast);
+        if (value != null) {
+            return value;
+        }
         return scope.resolve(ast.name(), false)
                 .orElseThrow(() -> new EvaluateException("Undefined: " + ast.name(), Optional.of(ast)));
     }
@@ -487,7 +662,8 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
     @Override
     public RuntimeValue visit(Ast.Expr.Function ast) throws EvaluateException {
         // core
-        var functionValue = scope.resolve(ast.name(), false)
+        var resolved = lookup(ast);
+        var functionValue = resolved != null ? resolved : scope.resolve(ast.name(), false)
                 .orElseThrow(() -> new EvaluateException("Function '" + ast.name() + "' not defined.", Optional.of(ast)));
 
         var function = requireType(functionValue, RuntimeValue.Function.class)
@@ -573,6 +749,55 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         }
     }
 
+    /**
+     * Returns the region the given DEF, IF, or FOR is evaluated in, which is
+     * either the current region or a region starting at it (if any).
+     */
+    private Resolver.@Nullable Region region(Ast.Stmt ast) {
+        if (region != null) {
+            return region;
+        }
+        return resolver != null ? resolver.region(ast) : null;
+    }
+
+    /**
+     * Returns the value of a variable (or function name) resolved to a slot
+     * in the current region, or null if it is undefined in the region's
+     * frames (and hence must be looked up in the scope).
+     */
+    private @Nullable RuntimeValue lookup(Ast.Expr ast) {
+        if (region == null) {
+            return null;
+        }
+        var resolved = (Resolver.Reference) region.get(ast);
+        for (int i = 0; i < resolved.slots().length; i++) {
+            var value = frame.up(resolved.depths()[i]).slots[resolved.slots()[i]];
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Assigns a variable resolved to a slot in the current region, returning
+     * false if it is undefined in the region's frames.
+     */
+    private boolean assign(Ast.Expr.Variable ast, RuntimeValue value) {
+        if (region == null) {
+            return false;
+        }
+        var resolved = (Resolver.Reference) region.get(ast);
+        for (int i = 0; i < resolved.slots().length; i++) {
+            var target = frame.up(resolved.depths()[i]);
+            if (target.slots[resolved.slots()[i]] != null) {
+                target.slots[resolved.slots()[i]] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Helper function for extracting RuntimeValues of specific types. If type
      * is a subclass of {@link RuntimeValue} the check applies to the value
@@ -0,0 +1,31 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The variables of a call, loop iteration, or IF branch within a region
+ * resolved by {@link Resolver}, with null slots for variables that are not
+ * yet defined.
+ */
+final class Frame {
+
+    final @Nullable RuntimeValue[] slots;
+    final @Nullable Frame parent;
+
+    Frame(int size, @Nullable Frame parent) {
+        this.slots = new RuntimeValue[size];
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the frame the given number of frames up, i.e. this frame for 0.
+     */
+    Frame up(int depth) {
+        var frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.parent;
+        }
+        return frame;
+    }
+
+}
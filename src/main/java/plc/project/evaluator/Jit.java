@@ -0,0 +1,762 @@
+package plc.project.evaluator;
+
+import com.google.common.base.Preconditions;
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A just-in-time compiler of hot functions to JVM bytecode, which the
+ * {@link Evaluator} uses to call a DEF once it has been called a threshold
+ * number of times. Each function is compiled with the ClassFile API into a
+ * hidden class, so the JVM's own compilers optimize it like any other code.
+ *
+ * <p>Compiled functions keep their variables in JVM locals, which hold null
+ * until the LET/parameter is defined (as the slots of a {@link Frame}), and
+ * look up every other name in the scope the function was defined in. This
+ * behaves the same as evaluating the body with scopes (including the order
+ * of evaluation and the asts of exceptions), with the operations themselves
+ * implemented by static methods of this class. The asts and literals used by
+ * the code are constants of the hidden class (its class data).
+ *
+ * <p>Functions containing a nested DEF or an OBJECT are not compiled (since
+ * their closures capture the scopes of the body), and neither are functions
+ * defined within another function evaluated with frames. These, and any
+ * function that fails to compile, are interpreted as before.
+ *
+ * <p>Like the evaluator, this class is not thread-safe.
+ */
+public final class Jit {
+
+    public static final int DEFAULT_THRESHOLD = 100;
+
+    static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+    static final RuntimeValue TRUE = new RuntimeValue.Primitive(true);
+    static final RuntimeValue FALSE = new RuntimeValue.Primitive(false);
+
+    private static final ClassDesc CD_JIT = desc(Jit.class);
+    private static final ClassDesc CD_RUNTIME_VALUE = desc(RuntimeValue.class);
+    private static final ClassDesc CD_ITERATOR = desc(Iterator.class);
+    private static final MethodTypeDesc MTD_INVOKE = type(RuntimeValue.class, Scope.class, List.class);
+    private static final ClassHierarchyResolver RESOLVER = ClassHierarchyResolver.defaultResolver()
+        .orElse(ClassHierarchyResolver.ofClassLoading(MethodHandles.lookup()));
+
+    private final int threshold;
+    private final Map<Ast.Stmt.Def, Entry> entries = new IdentityHashMap<>();
+
+    public Jit() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a compiler that compiles functions once they have been called
+     * the given number of times (so 0 compiles every function when called).
+     */
+    public Jit(int threshold) {
+        Preconditions.checkArgument(threshold >= 0, "The threshold must be non-negative.");
+        this.threshold = threshold;
+    }
+
+    /**
+     * The body of a compiled function, which is implemented by a hidden
+     * class. The arguments have already been checked against the parameters.
+     */
+    interface Compiled {
+
+        RuntimeValue invoke(Scope scope, List<RuntimeValue> arguments) throws EvaluateException;
+
+    }
+
+    /**
+     * The number of calls of a DEF, and the result of compiling it once hot.
+     */
+    private static final class Entry {
+
+        private int calls = 0;
+        private @Nullable Compiled compiled;
+        private boolean failed = false;
+
+    }
+
+    /**
+     * Counts a call of the DEF, returning its compiled body if it is (now)
+     * hot and could be compiled, or null if it must be interpreted.
+     */
+    @Nullable Compiled compiled(Ast.Stmt.Def ast) {
+        var entry = entries.computeIfAbsent(ast, def -> new Entry());
+        if (entry.compiled == null && !entry.failed && ++entry.calls > threshold) {
+            entry.compiled = compile(ast);
+            entry.failed = entry.compiled == null;
+        }
+        return entry.compiled;
+    }
+
+    /**
+     * Returns true if the DEF has been compiled.
+     */
+    boolean isCompiled(Ast.Stmt.Def ast) {
+        var entry = entries.get(ast);
+        return entry != null && entry.compiled != null;
+    }
+
+    /**
+     * Returns the DEFs which have been called, compiled or not.
+     */
+    Set<Ast.Stmt.Def> called() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Returns true if the body of the DEF only uses supported constructs,
+     * and so should compile once hot.
+     */
+    static boolean isSupported(Ast.Stmt.Def ast) {
+        return supported(ast.body());
+    }
+
+    private static @Nullable Compiled compile(Ast.Stmt.Def ast) {
+        if (!supported(ast.body())) {
+            return null;
+        }
+        var generator = new Generator(ast);
+        try {
+            var bytes = ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(RESOLVER)).build(
+                ClassDesc.of(Jit.class.getName() + "$" + ast.name()),
+                builder -> builder
+                    .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+                    .withSuperclass(ConstantDescs.CD_Object)
+                    .withInterfaceSymbols(desc(Compiled.class))
+                    .withMethodBody(ConstantDescs.INIT_NAME, ConstantDescs.MTD_void, ClassFile.ACC_PUBLIC, code -> code
+                        .aload(0)
+                        .invokespecial(ConstantDescs.CD_Object, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void)
+                        .return_())
+                    .withMethodBody("invoke", MTD_INVOKE, ClassFile.ACC_PUBLIC, generator::function)
+            );
+            var lookup = MethodHandles.lookup().defineHiddenClassWithClassData(bytes, List.copyOf(generator.constants), true);
+            return (Compiled) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (IllegalArgumentException | ReflectiveOperationException | LinkageError e) {
+            //the function is interpreted instead, as for unsupported constructs
+            return null;
+        }
+    }
+
+    private static boolean supported(List<Ast.Stmt> statements) {
+        return statements.stream().allMatch(Jit::supported);
+    }
+
+    private static boolean supported(Ast.Stmt ast) {
+        return switch (ast) {
+            case Ast.Stmt.Let stmt -> stmt.value().map(Jit::supported).orElse(true);
+            case Ast.Stmt.Def ignored -> false;
+            case Ast.Stmt.If stmt -> supported(stmt.condition()) && supported(stmt.thenBody()) && supported(stmt.elseBody());
+            case Ast.Stmt.For stmt -> supported(stmt.expression()) && supported(stmt.body());
+            case Ast.Stmt.Return stmt -> stmt.value().map(Jit::supported).orElse(true);
+            case Ast.Stmt.Expression stmt -> supported(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> supported(stmt.expression()) && supported(stmt.value());
+        };
+    }
+
+    private static boolean supported(Ast.Expr ast) {
+        return switch (ast) {
+            case Ast.Expr.Literal ignored -> true;
+            case Ast.Expr.Group expr -> supported(expr.expression());
+            case Ast.Expr.Binary expr -> supported(expr.left()) && supported(expr.right());
+            case Ast.Expr.Variable ignored -> true;
+            case Ast.Expr.Property expr -> supported(expr.receiver());
+            case Ast.Expr.Function expr -> expr.arguments().stream().allMatch(Jit::supported);
+            case Ast.Expr.Method expr -> supported(expr.receiver()) && expr.arguments().stream().allMatch(Jit::supported);
+            case Ast.Expr.ObjectExpr ignored -> false;
+        };
+    }
+
+    /**
+     * Generates the invoke method of a compiled function. The method has the
+     * scope in local 1, the arguments in local 2, and the variables of the
+     * function in the locals after that, which are declared by blocks the
+     * same as scopes (see {@link Resolver}).
+     */
+    private static final class Generator {
+
+        private final Ast.Stmt.Def ast;
+        private final List<Object> constants = new ArrayList<>();
+        private CodeBuilder code;
+        private @Nullable Block block;
+        private int locals;
+
+        private Generator(Ast.Stmt.Def ast) {
+            this.ast = ast;
+        }
+
+        private record Block(@Nullable Block parent, Map<String, Integer> names) {}
+
+        private void function(CodeBuilder code) {
+            //the builder may generate the code more than once
+            this.code = code;
+            constants.clear();
+            block = new Block(null, new HashMap<>());
+            locals = 3;
+            for (int i = 0; i < ast.parameters().size(); i++) {
+                code.aload(2)
+                    .loadConstant(i)
+                    .invokeinterface(desc(List.class), "get", type(Object.class, int.class))
+                    .checkcast(CD_RUNTIME_VALUE)
+                    .astore(declare(ast.parameters().get(i)));
+            }
+            block(ast.body());
+            code.getstatic(CD_JIT, "NIL", CD_RUNTIME_VALUE).areturn();
+        }
+
+        /**
+         * Generates statements in a new block, whose variables are undefined
+         * (null) until their LET is evaluated.
+         */
+        private void block(List<Ast.Stmt> statements) {
+            var parent = block;
+            block = new Block(parent, new HashMap<>());
+            for (var stmt : statements) {
+                if (stmt instanceof Ast.Stmt.Let let && !block.names().containsKey(let.name())) {
+                    code.aconst_null().astore(declare(let.name()));
+                }
+            }
+            for (var stmt : statements) {
+                statement(stmt);
+            }
+            block = parent;
+        }
+
+        private int declare(String name) {
+            return block.names().computeIfAbsent(name, n -> locals++);
+        }
+
+        /**
+         * Returns the locals declaring the name in the enclosing blocks,
+         * innermost first.
+         */
+        private List<Integer> candidates(String name) {
+            var candidates = new ArrayList<Integer>();
+            for (var current = block; current != null; current = current.parent()) {
+                var local = current.names().get(name);
+                if (local != null) {
+                    candidates.add(local);
+                }
+            }
+            return candidates;
+        }
+
+        private void statement(Ast.Stmt ast) {
+            switch (ast) {
+                case Ast.Stmt.Let stmt -> {
+                    optional(stmt.value());
+                    var local = block.names().get(stmt.name());
+                    var defined = code.newLabel();
+                    code.aload(local).ifnull(defined);
+                    error("Variable already defined in current scope.", stmt);
+                    code.labelBinding(defined).astore(local);
+                }
+                case Ast.Stmt.Def ignored -> throw new AssertionError(ignored);
+                case Ast.Stmt.If stmt -> {
+                    var otherwise = code.newLabel();
+                    var end = code.newLabel();
+                    expression(stmt.condition());
+                    constant(stmt);
+                    invoke("condition", boolean.class, RuntimeValue.class, Ast.Stmt.If.class);
+                    code.ifeq(otherwise);
+                    block(stmt.thenBody());
+                    code.goto_(end).labelBinding(otherwise);
+                    block(stmt.elseBody());
+                    code.labelBinding(end);
+                }
+                case Ast.Stmt.For stmt -> {
+                    var loop = code.newLabel();
+                    var end = code.newLabel();
+                    var iterator = locals++;
+                    expression(stmt.expression());
+                    constant(stmt);
+                    invoke("iterator", Iterator.class, RuntimeValue.class, Ast.Stmt.For.class);
+                    code.astore(iterator)
+                        .labelBinding(loop)
+                        .aload(iterator)
+                        .invokeinterface(CD_ITERATOR, "hasNext", type(boolean.class))
+                        .ifeq(end);
+                    var parent = block;
+                    block = new Block(parent, new HashMap<>());
+                    code.aload(iterator)
+                        .invokeinterface(CD_ITERATOR, "next", type(Object.class))
+                        .checkcast(CD_RUNTIME_VALUE)
+                        .astore(declare(stmt.name()));
+                    block(stmt.body());
+                    block = parent;
+                    code.goto_(loop).labelBinding(end);
+                }
+                case Ast.Stmt.Return stmt -> {
+                    optional(stmt.value());
+                    code.areturn();
+                }
+                case Ast.Stmt.Expression stmt -> {
+                    expression(stmt.expression());
+                    code.pop();
+                }
+                case Ast.Stmt.Assignment stmt -> assignment(stmt);
+            }
+        }
+
+        private void assignment(Ast.Stmt.Assignment ast) {
+            switch (ast.expression()) {
+                case Ast.Expr.Variable variable -> {
+                    var candidates = candidates(variable.name());
+                    var defined = code.newLabel();
+                    for (var local : candidates) {
+                        code.aload(local).ifnonnull(defined);
+                    }
+                    code.aload(1);
+                    constant(variable);
+                    invoke("defined", void.class, Scope.class, Ast.Expr.Variable.class);
+                    code.labelBinding(defined);
+                    expression(ast.value());
+                    var end = code.newLabel();
+                    for (var local : candidates) {
+                        var next = code.newLabel();
+                        code.aload(local).ifnull(next).astore(local).goto_(end).labelBinding(next);
+                    }
+                    code.aload(1);
+                    constant(variable);
+                    invoke("assign", void.class, RuntimeValue.class, Scope.class, Ast.Expr.Variable.class);
+                    code.labelBinding(end);
+                }
+                case Ast.Expr.Property property -> {
+                    expression(property.receiver());
+                    constant(property);
+                    invoke("receiver", RuntimeValue.class, RuntimeValue.class, Ast.Expr.Property.class);
+                    expression(ast.value());
+                    constant(property);
+                    invoke("assign", void.class, RuntimeValue.class, RuntimeValue.class, Ast.Expr.Property.class);
+                }
+                default -> error("Invalid assignment", ast.expression());
+            }
+        }
+
+        private void optional(Optional<Ast.Expr> expr) {
+            if (expr.isPresent()) {
+                expression(expr.get());
+            } else {
+                code.getstatic(CD_JIT, "NIL", CD_RUNTIME_VALUE);
+            }
+        }
+
+        private void expression(Ast.Expr ast) {
+            switch (ast) {
+                case Ast.Expr.Literal expr -> constant(new RuntimeValue.Primitive(expr.value()), RuntimeValue.class);
+                case Ast.Expr.Group expr -> expression(expr.expression());
+                case Ast.Expr.Binary expr -> binary(expr);
+                case Ast.Expr.Variable expr -> {
+                    var found = code.newLabel();
+                    for (var local : candidates(expr.name())) {
+                        code.aload(local).dup().ifnonnull(found).pop();
+                    }
+                    code.aload(1);
+                    constant(expr);
+                    invoke("resolve", RuntimeValue.class, Scope.class, Ast.Expr.Variable.class);
+                    code.labelBinding(found);
+                }
+                case Ast.Expr.Property expr -> {
+                    expression(expr.receiver());
+                    constant(expr);
+                    invoke("property", RuntimeValue.class, RuntimeValue.class, Ast.Expr.Property.class);
+                }
+                case Ast.Expr.Function expr -> {
+                    var found = code.newLabel();
+                    for (var local : candidates(expr.name())) {
+                        code.aload(local).dup().ifnonnull(found).pop();
+                    }
+                    code.aload(1);
+                    constant(expr);
+                    invoke("function", RuntimeValue.class, Scope.class, Ast.Expr.Function.class);
+                    code.labelBinding(found);
+                    constant(expr);
+                    invoke("function", RuntimeValue.Function.class, RuntimeValue.class, Ast.Expr.Function.class);
+                    arguments(expr.arguments());
+                    invoke("call", RuntimeValue.class, RuntimeValue.Function.class, RuntimeValue[].class);
+                }
+                case Ast.Expr.Method expr -> {
+                    expression(expr.receiver());
+                    constant(expr);
+                    invoke("method", Bound.class, RuntimeValue.class, Ast.Expr.Method.class);
+                    arguments(expr.arguments());
+                    invoke("call", RuntimeValue.class, Bound.class, RuntimeValue[].class);
+                }
+                case Ast.Expr.ObjectExpr ignored -> throw new AssertionError(ignored);
+            }
+        }
+
+        private void arguments(List<Ast.Expr> arguments) {
+            code.loadConstant(arguments.size()).anewarray(CD_RUNTIME_VALUE);
+            for (int i = 0; i < arguments.size(); i++) {
+                code.dup().loadConstant(i);
+                expression(arguments.get(i));
+                code.aastore();
+            }
+        }
+
+        private void binary(Ast.Expr.Binary ast) {
+            expression(ast.left());
+            switch (ast.operator()) {
+                case "+" -> {
+                    expression(ast.right());
+                    constant(ast);
+                    invoke("add", RuntimeValue.class, RuntimeValue.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                }
+                case "-", "*", "/" -> {
+                    //the left operand must be a number before evaluating the right
+                    constant(ast);
+                    invoke("number", RuntimeValue.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                    expression(ast.right());
+                    constant(ast);
+                    invoke(switch (ast.operator()) {
+                        case "-" -> "subtract";
+                        case "*" -> "multiply";
+                        default -> "divide";
+                    }, RuntimeValue.class, RuntimeValue.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                }
+                case "==", "!=" -> {
+                    expression(ast.right());
+                    invoke(ast.operator().equals("==") ? "equal" : "notEqual", RuntimeValue.class, RuntimeValue.class, RuntimeValue.class);
+                }
+                case "<", "<=", ">", ">=" -> {
+                    var otherwise = code.newLabel();
+                    var end = code.newLabel();
+                    expression(ast.right());
+                    constant(ast);
+                    invoke("compare", int.class, RuntimeValue.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                    switch (ast.operator()) {
+                        case "<" -> code.ifge(otherwise);
+                        case "<=" -> code.ifgt(otherwise);
+                        case ">" -> code.ifle(otherwise);
+                        default -> code.iflt(otherwise);
+                    }
+                    code.getstatic(CD_JIT, "TRUE", CD_RUNTIME_VALUE)
+                        .goto_(end)
+                        .labelBinding(otherwise)
+                        .getstatic(CD_JIT, "FALSE", CD_RUNTIME_VALUE)
+                        .labelBinding(end);
+                }
+                case "AND", "OR" -> {
+                    var shortCircuit = code.newLabel();
+                    var end = code.newLabel();
+                    constant(ast);
+                    invoke("left", boolean.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                    if (ast.operator().equals("AND")) {
+                        code.ifeq(shortCircuit);
+                    } else {
+                        code.ifne(shortCircuit);
+                    }
+                    expression(ast.right());
+                    constant(ast);
+                    invoke("right", RuntimeValue.class, RuntimeValue.class, Ast.Expr.Binary.class);
+                    code.goto_(end)
+                        .labelBinding(shortCircuit)
+                        .getstatic(CD_JIT, ast.operator().equals("AND") ? "FALSE" : "TRUE", CD_RUNTIME_VALUE)
+                        .labelBinding(end);
+                }
+                default -> {
+                    code.pop();
+                    error("Invalid operator: " + ast.operator(), ast);
+                }
+            }
+        }
+
+        /**
+         * Generates throwing an exception, which ends the (reachable) code.
+         */
+        private void error(String message, Ast ast) {
+            code.loadConstant(message);
+            constant(ast);
+            invoke("error", EvaluateException.class, String.class, Ast.class);
+            code.athrow();
+        }
+
+        private void constant(Ast ast) {
+            constant(ast, ast.getClass());
+        }
+
+        /**
+         * Loads a value from the class data of the hidden class, which is a
+         * dynamic constant of the given type.
+         */
+        private void constant(Object value, Class<?> type) {
+            constants.add(value);
+            code.loadConstant(DynamicConstantDesc.ofNamed(ConstantDescs.BSM_CLASS_DATA_AT, ConstantDescs.DEFAULT_NAME, desc(type), constants.size() - 1));
+        }
+
+        private void invoke(String name, Class<?> returnType, Class<?>... parameters) {
+            code.invokestatic(CD_JIT, name, type(returnType, parameters));
+        }
+
+    }
+
+    private static ClassDesc desc(Class<?> type) {
+        return type.describeConstable().orElseThrow();
+    }
+
+    private static MethodTypeDesc type(Class<?> returnType, Class<?>... parameters) {
+        return MethodTypeDesc.of(desc(returnType), Arrays.stream(parameters).map(Jit::desc).toArray(ClassDesc[]::new));
+    }
+
+    //The operations called by compiled functions, which are the same as the
+    //evaluator's (including the asts of exceptions).
+
+    static EvaluateException error(String message, Ast ast) {
+        return new EvaluateException(message, Optional.of(ast));
+    }
+
+    static RuntimeValue resolve(Scope scope, Ast.Expr.Variable ast) throws EvaluateException {
+        return scope.resolve(ast.name(), false)
+            .orElseThrow(() -> new EvaluateException("Undefined: " + ast.name(), Optional.of(ast)));
+    }
+
+    static void defined(Scope scope, Ast.Expr.Variable ast) throws EvaluateException {
+        if (scope.resolve(ast.name(), false).isEmpty()) {
+            throw new EvaluateException("Undefined variable.", Optional.of(ast));
+        }
+    }
+
+    static void assign(RuntimeValue value, Scope scope, Ast.Expr.Variable ast) throws EvaluateException {
+        try {
+            scope.assign(ast.name(), value);
+        } catch (IllegalStateException ignore) {
+            throw new EvaluateException("Invalid variable", Optional.of(ast));
+        }
+    }
+
+    static boolean condition(RuntimeValue value, Ast.Stmt.If ast) throws EvaluateException {
+        if (value instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof Boolean condition) {
+            return condition;
+        }
+        throw new EvaluateException("IF condition must be Boolean.", Optional.of(ast.condition()));
+    }
+
+    static Iterator<?> iterator(RuntimeValue value, Ast.Stmt.For ast) throws EvaluateException {
+        if (value instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof List<?> list) {
+            return list.iterator();
+        }
+        throw new EvaluateException("Invalid FOR", Optional.of(ast));
+    }
+
+    static RuntimeValue add(RuntimeValue l, RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        var lv = value(l);
+        var rv = value(r);
+        if (lv instanceof String || rv instanceof String) {
+            return new RuntimeValue.Primitive(l.print() + r.print());
+        } else if (lv instanceof BigInteger li && rv instanceof BigInteger ri) {
+            return new RuntimeValue.Primitive(li.add(ri));
+        } else if (lv instanceof BigDecimal ld && rv instanceof BigDecimal rd) {
+            return new RuntimeValue.Primitive(ld.add(rd));
+        }
+        throw new EvaluateException("Invalid '+'", Optional.of(ast.left()));
+    }
+
+    /**
+     * Checks the left operand of -, *, or / is a number, returning it.
+     */
+    static RuntimeValue number(RuntimeValue l, Ast.Expr.Binary ast) throws EvaluateException {
+        var lv = value(l);
+        if (!(lv instanceof BigInteger) && !(lv instanceof BigDecimal)) {
+            throw new EvaluateException(ast.operator().equals("/") ? "Invalid" : "Invalid left", Optional.of(ast.left()));
+        }
+        return l;
+    }
+
+    static RuntimeValue subtract(RuntimeValue l, RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        if (value(l) instanceof BigInteger li && value(r) instanceof BigInteger ri) {
+            return new RuntimeValue.Primitive(li.subtract(ri));
+        } else if (value(l) instanceof BigDecimal ld && value(r) instanceof BigDecimal rd) {
+            return new RuntimeValue.Primitive(ld.subtract(rd));
+        }
+        throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+    }
+
+    static RuntimeValue multiply(RuntimeValue l, RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        if (value(l) instanceof BigInteger li && value(r) instanceof BigInteger ri) {
+            return new RuntimeValue.Primitive(li.multiply(ri));
+        } else if (value(l) instanceof BigDecimal ld && value(r) instanceof BigDecimal rd) {
+            return new RuntimeValue.Primitive(ld.multiply(rd));
+        }
+        throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+    }
+
+    static RuntimeValue divide(RuntimeValue l, RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        if (value(l) instanceof BigInteger li && value(r) instanceof BigInteger ri) {
+            if (ri.signum() == 0) {
+                throw new EvaluateException("zero division error", Optional.of(ast.right()));
+            }
+            return new RuntimeValue.Primitive(li.divide(ri));
+        } else if (value(l) instanceof BigDecimal ld && value(r) instanceof BigDecimal rd) {
+            if (rd.signum() == 0) {
+                throw new EvaluateException("zero division error", Optional.of(ast.right()));
+            }
+            return new RuntimeValue.Primitive(ld.divide(rd, RoundingMode.HALF_EVEN));
+        }
+        throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+    }
+
+    static RuntimeValue equal(RuntimeValue l, RuntimeValue r) {
+        return Objects.equals(value(l), value(r)) ? TRUE : FALSE;
+    }
+
+    static RuntimeValue notEqual(RuntimeValue l, RuntimeValue r) {
+        return Objects.equals(value(l), value(r)) ? FALSE : TRUE;
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(RuntimeValue l, RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        if (!(l instanceof RuntimeValue.Primitive lp) || !(lp.value() instanceof Comparable<?> lc)) {
+            throw new EvaluateException("Invalid left", Optional.of(ast.left()));
+        }
+        var rw = value(r);
+        if (rw == null || !lc.getClass().isInstance(rw)) {
+            throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+        }
+        return ((Comparable<Object>) lc).compareTo(rw);
+    }
+
+    /**
+     * Returns the left operand of AND/OR, which must be a boolean.
+     */
+    static boolean left(RuntimeValue l, Ast.Expr.Binary ast) throws EvaluateException {
+        if (value(l) instanceof Boolean left) {
+            return left;
+        }
+        throw new EvaluateException("Invalid left", Optional.of(ast.left()));
+    }
+
+    /**
+     * Checks the right operand of AND/OR is a boolean, returning it.
+     */
+    static RuntimeValue right(RuntimeValue r, Ast.Expr.Binary ast) throws EvaluateException {
+        if (value(r) instanceof Boolean) {
+            return r;
+        }
+        throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+    }
+
+    static RuntimeValue function(Scope scope, Ast.Expr.Function ast) throws EvaluateException {
+        return scope.resolve(ast.name(), false)
+            .orElseThrow(() -> new EvaluateException("Function '" + ast.name() + "' not defined.", Optional.of(ast)));
+    }
+
+    static RuntimeValue.Function function(RuntimeValue value, Ast.Expr.Function ast) throws EvaluateException {
+        if (value instanceof RuntimeValue.Function function) {
+            return function;
+        }
+        throw new EvaluateException("'" + ast.name() + "' has error.", Optional.of(ast));
+    }
+
+    static RuntimeValue call(RuntimeValue.Function function, RuntimeValue[] arguments) throws EvaluateException {
+        return function.definition().invoke(new ArrayList<>(Arrays.asList(arguments)));
+    }
+
+    static RuntimeValue property(RuntimeValue receiver, Ast.Expr.Property ast) throws EvaluateException {
+        if (!(receiver instanceof RuntimeValue.ObjectValue object)) {
+            throw new EvaluateException("Invalid receiver", Optional.of(ast.receiver()));
+        }
+        var owner = owner(object, ast.name());
+        if (owner == null) {
+            throw new EvaluateException("Invalid property", Optional.of(ast));
+        }
+        return owner.scope().resolve(ast.name(), true).get();
+    }
+
+    /**
+     * Checks the receiver of an assigned property, returning it.
+     */
+    static RuntimeValue receiver(RuntimeValue receiver, Ast.Expr.Property ast) throws EvaluateException {
+        if (!(receiver instanceof RuntimeValue.ObjectValue object)) {
+            throw new EvaluateException("Receiver must be an object.", Optional.of(ast.receiver()));
+        }
+        if (owner(object, ast.name()) == null) {
+            throw new EvaluateException("Invalid property", Optional.of(ast));
+        }
+        return receiver;
+    }
+
+    static void assign(RuntimeValue receiver, RuntimeValue value, Ast.Expr.Property ast) {
+        var object = (RuntimeValue.ObjectValue) receiver;
+        if (object.scope().resolve(ast.name(), true).isPresent()) {
+            object.scope().assign(ast.name(), value);
+        } else {
+            object.scope().define(ast.name(), value);
+        }
+    }
+
+    /**
+     * A method and the receiver passed as its first argument, if any.
+     */
+    record Bound(RuntimeValue.Function method, RuntimeValue.@Nullable ObjectValue receiver) {}
+
+    static Bound method(RuntimeValue receiver, Ast.Expr.Method ast) throws EvaluateException {
+        if (!(receiver instanceof RuntimeValue.ObjectValue object)) {
+            throw new EvaluateException("Invalid receiver", Optional.of(ast.receiver()));
+        }
+        var owner = owner(object, ast.name());
+        if (owner == null || !(owner.scope().resolve(ast.name(), true).get() instanceof RuntimeValue.Function method)) {
+            throw new EvaluateException("Invalid method", Optional.of(ast));
+        }
+        var passed = owner.name().isPresent() && ("Object".equals(owner.name().get()) || "Prototype".equals(owner.name().get()));
+        return new Bound(method, passed ? object : null);
+    }
+
+    static RuntimeValue call(Bound bound, RuntimeValue[] arguments) throws EvaluateException {
+        var args = new ArrayList<RuntimeValue>(arguments.length + 1);
+        if (bound.receiver() != null) {
+            args.add(bound.receiver());
+        }
+        args.addAll(Arrays.asList(arguments));
+        return bound.method().definition().invoke(args);
+    }
+
+    /**
+     * Returns the object defining the property, which is the object itself
+     * or an object in its prototype chain, or null if it is undefined.
+     */
+    private static RuntimeValue.@Nullable ObjectValue owner(RuntimeValue.ObjectValue object, String name) {
+        var curr = object;
+        while (curr.scope().resolve(name, true).isEmpty()) {
+            if (curr.scope().resolve("prototype", true).orElse(null) instanceof RuntimeValue.ObjectValue prototype) {
+                curr = prototype;
+            } else {
+                return null;
+            }
+        }
+        return curr;
+    }
+
+    /**
+     * Returns the value of a primitive, or the value itself otherwise, which
+     * is how values are compared for equality.
+     */
+    private static @Nullable Object value(RuntimeValue value) {
+        return value instanceof RuntimeValue.Primitive primitive ? primitive.value() : value;
+    }
+
+}
@@ -0,0 +1,91 @@
+package plc.project.evaluator;
+
+/**
+ * The instructions of a {@link Chunk}, which are encoded in the code array
+ * as the opcode followed by its operands. Operands named k are indices into
+ * the constants of the chunk, which hold values and the information needed
+ * by the instruction (including the ast of any exception it throws).
+ *
+ * <p>Instructions operate on an operand stack, with every statement leaving
+ * its value on the stack (as the {@link Evaluator} returns it), which is
+ * popped unless it is the value of a source or IF. Variables are either in
+ * the slots of the current {@link Frame} (see {@link Resolver}) or in the
+ * current {@link Scope}, and IF/FOR push and pop a frame or scope for their
+ * bodies accordingly.
+ */
+final class Opcode {
+
+    //values
+    static final int NIL = 0;               //push NIL
+    static final int CONST = 1;             //k: push the value constant k
+    static final int POP = 2;               //pop
+    //variables
+    static final int LOAD_SLOT = 3;         //s k: push slot s of the current frame, else the Variable k from the scope
+    static final int LOAD_VAR = 4;          //k: push the Variable k (see Chunk.Variable)
+    static final int CHECK_VAR = 5;         //k: throw if the Variable k is undefined
+    static final int ASSIGN_VAR = 6;        //k: assign the value on the stack to the Variable k
+    static final int LET_SLOT = 7;          //s k: define slot s as the value on the stack, for the Let k
+    static final int LET_NAME = 8;          //k: define the value on the stack in the scope, for the Let k
+    static final int CLOSURE = 9;           //k: define and push the function of the DEF k
+    //control flow
+    static final int JUMP = 10;             //t: jump to t
+    static final int JUMP_IF_FALSE = 11;    //t k: pop the condition of the If k, jumping to t if false
+    static final int PUSH_SCOPE = 12;       //enter a new scope
+    static final int POP_SCOPE = 13;        //exit the scope
+    static final int PUSH_FRAME = 14;       //n: enter a new frame of size n
+    static final int POP_FRAME = 15;        //exit the frame
+    static final int ITER = 16;             //k: replace the list for the For k with an iterator
+    static final int NEXT = 17;             //t: push the next element, else pop the iterator and jump to t
+    static final int STORE_FRESH = 18;      //s: pop into slot s of the current frame
+    static final int DEFINE_FRESH = 19;     //k: pop into the name k in the current scope
+    static final int RETURN = 20;           //return the value on the stack from the current function
+    static final int HALT = 21;             //return the value on the stack from the chunk
+    static final int FAIL = 22;             //k: throw the failure k
+    //operators
+    static final int ADD = 23;              //k: pop two and push their sum for the Binary k
+    static final int CHECK_NUMBER = 24;     //k: throw if the left operand of the Binary k is not a number
+    static final int SUB = 25;              //k
+    static final int MUL = 26;              //k
+    static final int DIV = 27;              //k
+    static final int EQ = 28;
+    static final int NE = 29;
+    static final int LT = 30;               //k
+    static final int LE = 31;               //k
+    static final int GT = 32;               //k
+    static final int GE = 33;               //k
+    static final int AND = 34;              //t k: pop the left operand, jumping to t with FALSE if false
+    static final int OR = 35;               //t k: pop the left operand, jumping to t with TRUE if true
+    static final int BOOLEAN = 36;          //k: throw if the right operand of the Binary k is not a boolean
+    //calls and objects
+    static final int GET_FUNCTION = 37;     //k: push the function of the Call k
+    static final int CALL = 38;             //n: call the function below n arguments
+    static final int GET_PROPERTY = 39;     //k: replace the receiver with the property of the Property k
+    static final int GET_METHOD = 40;       //k: replace the receiver with the method of the Method k and the receiver argument (or null)
+    static final int CALL_METHOD = 41;      //n: call the method below the receiver argument and n arguments
+    static final int CHECK_PROPERTY = 42;   //k: throw if the receiver has no property of the Property k
+    static final int SET_PROPERTY = 43;     //k: pop the value and receiver and assign the Property k, pushing the value
+    static final int OBJECT = 44;           //k: push a new object for the ObjectExpr k and enter its scope
+    static final int END_OBJECT = 45;       //exit the scope of the object
+
+    static final String[] NAMES = {
+        "NIL", "CONST", "POP", "LOAD_SLOT", "LOAD_VAR", "CHECK_VAR", "ASSIGN_VAR", "LET_SLOT", "LET_NAME", "CLOSURE",
+        "JUMP", "JUMP_IF_FALSE", "PUSH_SCOPE", "POP_SCOPE", "PUSH_FRAME", "POP_FRAME", "ITER", "NEXT", "STORE_FRESH", "DEFINE_FRESH",
+        "RETURN", "HALT", "FAIL", "ADD", "CHECK_NUMBER", "SUB", "MUL", "DIV", "EQ", "NE",
+        "LT", "LE", "GT", "GE", "AND", "OR", "BOOLEAN", "GET_FUNCTION", "CALL", "GET_PROPERTY",
+        "GET_METHOD", "CALL_METHOD", "CHECK_PROPERTY", "SET_PROPERTY", "OBJECT", "END_OBJECT",
+    };
+
+    /**
+     * The number of operands of each instruction.
+     */
+    static final int[] OPERANDS = {
+        0, 1, 0, 2, 1, 1, 1, 2, 1, 1,
+        1, 2, 0, 0, 1, 0, 1, 1, 1, 1,
+        0, 0, 1, 1, 1, 1, 1, 1, 0, 0,
+        1, 1, 1, 1, 2, 2, 1, 1, 1, 1,
+        1, 1, 1, 1, 1, 0,
+    };
+
+    private Opcode() {}
+
+}
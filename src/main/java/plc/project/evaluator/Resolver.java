@@ -0,0 +1,378 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the variables of a source to slots in array-backed frames, so the
+ * {@link Evaluator} can access the variables of functions and blocks with an
+ * indexed load instead of looking up the name in each enclosing {@link Scope}
+ * (and without allocating two scopes per call and per loop iteration).
+ *
+ * <p>Resolution is done per <em>region</em>, which is the body of a DEF or
+ * an IF/FOR that is not itself within a region. Within a region, each call
+ * and each iteration of a FOR gets a frame for its parameters/variable and
+ * the variables declared in its body, as does each IF branch that declares
+ * variables. Each {@link Ast.Expr.Variable} (and function call, which looks
+ * up its name the same way) is resolved to the slots declaring that name in
+ * the enclosing scopes of the region as a (depth, slot) pair, where depth is
+ * the number of frames to go up. Names that are not declared within the
+ * region (globals, natives, etc.) are still looked up in the scope the region
+ * was entered from, which keeps the REPL and natives working as before.
+ *
+ * <p>A variable is only defined once its LET/DEF is evaluated, so a slot is
+ * null before then and a lookup continues with the next enclosing slot
+ * (ending with the scope). This keeps the dynamic semantics exactly, such as
+ * {@code LET x = x;} reading an outer x and functions calling functions that
+ * are defined after them. Objects define their fields in a {@link Scope}
+ * whose parents are part of the object's value, so regions containing an
+ * OBJECT are left to the evaluator's scopes (though nested regions may still
+ * be resolved).
+ *
+ * <p>Resolutions are keyed by node identity. If a node is shared within a
+ * region (e.g. by an {@link plc.project.parser.AstInterner}) and resolves
+ * differently in each place, the region is not resolved at all.
+ */
+public final class Resolver {
+
+    private final Map<Ast, Region> regions = new IdentityHashMap<>();
+    private final Set<Ast.Source> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Resolves the regions of the source, if it has not been resolved
+     * already. The {@link Evaluator} calls this when evaluating a source.
+     */
+    public void resolve(Ast.Source source) {
+        if (sources.add(source)) {
+            statements(source.statements());
+        }
+    }
+
+    /**
+     * Returns the region starting at the given DEF, IF, or FOR, or null if
+     * it is not the start of a (resolved) region.
+     */
+    @Nullable Region region(Ast ast) {
+        return regions.get(ast);
+    }
+
+    /**
+     * The resolutions of the nodes within a region, each of which is a
+     * {@link Reference}, {@link Definition}, {@link Function}, {@link Loop},
+     * or {@link Branch} depending on the type of node.
+     */
+    static final class Region {
+
+        private final Map<Ast, Object> nodes = new IdentityHashMap<>();
+        //set if the region contains an OBJECT or a node resolving differently
+        private boolean failed = false;
+
+        Object get(Ast ast) {
+            return nodes.get(ast);
+        }
+
+        private void put(Ast ast, Object resolution) {
+            var previous = nodes.putIfAbsent(ast, resolution);
+            if (previous != null && !previous.equals(resolution)) {
+                failed = true;
+            }
+        }
+
+    }
+
+    /**
+     * A variable (or function name) that is looked up in the given slots,
+     * innermost first, followed by the scope.
+     */
+    record Reference(int[] depths, int[] slots) {
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Reference reference
+                && Arrays.equals(depths, reference.depths)
+                && Arrays.equals(slots, reference.slots);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(depths) + Arrays.hashCode(slots);
+        }
+
+    }
+
+    /**
+     * A LET defining its variable in the given slot of the current frame.
+     */
+    record Definition(int slot) {}
+
+    /**
+     * A DEF defining its function in the given slot of the current frame (or
+     * -1 to define it in the scope, for the DEF starting a region), whose
+     * calls have frames of the given size starting with the parameters.
+     */
+    record Function(int slot, int size) {}
+
+    /**
+     * A FOR whose iterations have frames of the given size starting with the
+     * variable.
+     */
+    record Loop(int size) {}
+
+    /**
+     * An IF whose branches have frames of the given size, or 0 if the branch
+     * declares no variables (and is hence evaluated in the current frame).
+     */
+    record Branch(int thenSize, int elseSize) {}
+
+    /**
+     * A frame being resolved, i.e. the number of slots allocated so far.
+     */
+    private static final class Frame {
+
+        private int size = 0;
+
+    }
+
+    /**
+     * The variables declared by a scope, which belong to a frame that may be
+     * shared with the parent scope (e.g. the parameters of a function and the
+     * variables of its body, which are separate scopes to the evaluator).
+     */
+    private record Block(@Nullable Block parent, Frame frame, Map<String, Integer> names) {
+
+        Block(@Nullable Block parent, Frame frame) {
+            this(parent, frame, new HashMap<>());
+        }
+
+        int declare(String name) {
+            return names.computeIfAbsent(name, n -> frame.size++);
+        }
+
+    }
+
+    private void statements(List<Ast.Stmt> statements) {
+        for (var stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    /**
+     * Finds the regions of a statement evaluated with scopes.
+     */
+    private void statement(Ast.Stmt ast) {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> stmt.value().ifPresent(this::expression);
+            case Ast.Stmt.Def stmt -> {
+                if (!start(stmt)) {
+                    statements(stmt.body());
+                }
+            }
+            case Ast.Stmt.If stmt -> {
+                expression(stmt.condition());
+                if (!start(stmt)) {
+                    statements(stmt.thenBody());
+                    statements(stmt.elseBody());
+                }
+            }
+            case Ast.Stmt.For stmt -> {
+                expression(stmt.expression());
+                if (!start(stmt)) {
+                    statements(stmt.body());
+                }
+            }
+            case Ast.Stmt.Return stmt -> stmt.value().ifPresent(this::expression);
+            case Ast.Stmt.Expression stmt -> expression(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> {
+                expression(stmt.expression());
+                expression(stmt.value());
+            }
+        }
+    }
+
+    /**
+     * Finds the regions of an expression evaluated with scopes, which are
+     * within the methods of objects.
+     */
+    private void expression(Ast.Expr ast) {
+        switch (ast) {
+            case Ast.Expr.Literal ignored -> {}
+            case Ast.Expr.Group expr -> expression(expr.expression());
+            case Ast.Expr.Binary expr -> {
+                expression(expr.left());
+                expression(expr.right());
+            }
+            case Ast.Expr.Variable ignored -> {}
+            case Ast.Expr.Property expr -> expression(expr.receiver());
+            case Ast.Expr.Function expr -> expr.arguments().forEach(this::expression);
+            case Ast.Expr.Method expr -> {
+                expression(expr.receiver());
+                expr.arguments().forEach(this::expression);
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                expr.fields().forEach(this::statement);
+                expr.methods().forEach(this::statement);
+            }
+        }
+    }
+
+    /**
+     * Resolves the region starting at the given DEF, IF, or FOR, returning
+     * false if it cannot be resolved.
+     */
+    private boolean start(Ast.Stmt stmt) {
+        if (regions.containsKey(stmt)) {
+            return true;
+        }
+        var region = new Region();
+        if (stmt instanceof Ast.Stmt.Def def) {
+            region.put(def, function(region, def, -1, null));
+        } else {
+            resolve(region, stmt, null);
+        }
+        if (region.failed) {
+            return false;
+        }
+        regions.put(stmt, region);
+        return true;
+    }
+
+    private Function function(Region region, Ast.Stmt.Def def, int slot, @Nullable Block parent) {
+        var frame = new Frame();
+        var parameters = new Block(parent, frame);
+        def.parameters().forEach(parameters::declare);
+        //duplicate parameters are an error when the DEF is evaluated
+        frame.size = def.parameters().size();
+        var body = block(parameters, frame, def.body());
+        statements(region, def.body(), body);
+        return new Function(slot, frame.size);
+    }
+
+    /**
+     * Returns a new scope declaring the variables of the statements.
+     */
+    private static Block block(@Nullable Block parent, Frame frame, List<Ast.Stmt> statements) {
+        var block = new Block(parent, frame);
+        for (var stmt : statements) {
+            if (stmt instanceof Ast.Stmt.Let let) {
+                block.declare(let.name());
+            } else if (stmt instanceof Ast.Stmt.Def def) {
+                block.declare(def.name());
+            }
+        }
+        return block;
+    }
+
+    private void statements(Region region, List<Ast.Stmt> statements, @Nullable Block block) {
+        for (var stmt : statements) {
+            resolve(region, stmt, block);
+        }
+    }
+
+    private void resolve(Region region, Ast.Stmt ast, @Nullable Block block) {
+        switch (ast) {
+            case Ast.Stmt.Let stmt -> {
+                if (stmt.value().isPresent()) {
+                    resolve(region, stmt.value().get(), block);
+                }
+                region.put(stmt, new Definition(block.names().get(stmt.name())));
+            }
+            case Ast.Stmt.Def stmt -> region.put(stmt, function(region, stmt, block.names().get(stmt.name()), block));
+            case Ast.Stmt.If stmt -> {
+                resolve(region, stmt.condition(), block);
+                region.put(stmt, new Branch(
+                    branch(region, stmt.thenBody(), block),
+                    branch(region, stmt.elseBody(), block)
+                ));
+            }
+            case Ast.Stmt.For stmt -> {
+                resolve(region, stmt.expression(), block);
+                var frame = new Frame();
+                var variable = new Block(block, frame);
+                variable.declare(stmt.name());
+                statements(region, stmt.body(), block(variable, frame, stmt.body()));
+                region.put(stmt, new Loop(frame.size));
+            }
+            case Ast.Stmt.Return stmt -> {
+                if (stmt.value().isPresent()) {
+                    resolve(region, stmt.value().get(), block);
+                }
+            }
+            case Ast.Stmt.Expression stmt -> resolve(region, stmt.expression(), block);
+            case Ast.Stmt.Assignment stmt -> {
+                resolve(region, stmt.expression(), block);
+                resolve(region, stmt.value(), block);
+            }
+        }
+    }
+
+    /**
+     * Resolves a branch of an IF, returning the size of its frame.
+     */
+    private int branch(Region region, List<Ast.Stmt> statements, @Nullable Block block) {
+        var frame = new Frame();
+        var branch = block(block, frame, statements);
+        if (frame.size == 0) {
+            statements(region, statements, block);
+        } else {
+            statements(region, statements, branch);
+        }
+        return frame.size;
+    }
+
+    private void resolve(Region region, Ast.Expr ast, @Nullable Block block) {
+        switch (ast) {
+            case Ast.Expr.Literal ignored -> {}
+            case Ast.Expr.Group expr -> resolve(region, expr.expression(), block);
+            case Ast.Expr.Binary expr -> {
+                resolve(region, expr.left(), block);
+                resolve(region, expr.right(), block);
+            }
+            case Ast.Expr.Variable expr -> region.put(expr, reference(expr.name(), block));
+            case Ast.Expr.Property expr -> resolve(region, expr.receiver(), block);
+            case Ast.Expr.Function expr -> {
+                region.put(expr, reference(expr.name(), block));
+                for (var argument : expr.arguments()) {
+                    resolve(region, argument, block);
+                }
+            }
+            case Ast.Expr.Method expr -> {
+                resolve(region, expr.receiver(), block);
+                for (var argument : expr.arguments()) {
+                    resolve(region, argument, block);
+                }
+            }
+            case Ast.Expr.ObjectExpr ignored -> region.failed = true;
+        }
+    }
+
+    /**
+     * Returns the slots declaring the name in the enclosing scopes.
+     */
+    private static Reference reference(String name, @Nullable Block block) {
+        var depths = new int[0];
+        var slots = new int[0];
+        var depth = 0;
+        for (var current = block; current != null; current = current.parent()) {
+            var slot = current.names().get(name);
+            if (slot != null) {
+                depths = Arrays.copyOf(depths, depths.length + 1);
+                slots = Arrays.copyOf(slots, slots.length + 1);
+                depths[depths.length - 1] = depth;
+                slots[slots.length - 1] = slot;
+            }
+            if (current.parent() != null && current.parent().frame() != current.frame()) {
+                depth++;
+            }
+        }
+        return new Reference(depths, slots);
+    }
+
+}
@@ -0,0 +1,540 @@
+package plc.project.evaluator;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.parser.Ast;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Runs the {@link Chunk}s compiled by the {@link BytecodeCompiler} with a
+ * single dispatch loop over the code array, an operand stack, and a stack of
+ * call frames. Calls between functions of the same machine are handled in
+ * the loop without growing the Java stack, while natives (and functions of
+ * other machines or engines) are invoked through their
+ * {@link RuntimeValue.Function.Definition} as the {@link Evaluator} does.
+ */
+public final class VirtualMachine {
+
+    private static final RuntimeValue NIL = new RuntimeValue.Primitive(null);
+    private static final RuntimeValue TRUE = new RuntimeValue.Primitive(true);
+    private static final RuntimeValue FALSE = new RuntimeValue.Primitive(false);
+    //calls within the loop don't use the Java stack, so recursion is limited
+    //here instead (as the other engines are by the Java stack)
+    private static final int MAX_CALLS = 100_000;
+
+    private final Scope scope;
+
+    public VirtualMachine(Scope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Runs the chunk in the scope of the machine, like
+     * {@code new Evaluator(scope).visit(ast)}.
+     */
+    public RuntimeValue run(Chunk chunk) throws EvaluateException {
+        return execute(chunk, scope, null);
+    }
+
+    /**
+     * A function defined by a chunk, which captures the scope and frame it
+     * was defined in.
+     */
+    private static final class Closure implements RuntimeValue.Function.Definition {
+
+        private final VirtualMachine vm;
+        private final Chunk.Function function;
+        private final Scope scope;
+        private final @Nullable Frame frame;
+
+        private Closure(VirtualMachine vm, Chunk.Function function, Scope scope, @Nullable Frame frame) {
+            this.vm = vm;
+            this.function = function;
+            this.scope = scope;
+            this.frame = frame;
+        }
+
+        /**
+         * Invokes the function from outside of the dispatch loop, such as by
+         * a native.
+         */
+        @Override
+        public RuntimeValue invoke(List<RuntimeValue> arguments) throws EvaluateException {
+            var parameters = function.ast().parameters();
+            if (arguments.size() != parameters.size()) {
+                throw new EvaluateException("Invalid arg", Optional.of(function.ast()));
+            }
+            if (function.size() == -1) {
+                var ps = new Scope(scope);
+                for (int i = 0; i < parameters.size(); i++) {
+                    ps.define(parameters.get(i), arguments.get(i));
+                }
+                return vm.execute(function.chunk(), new Scope(ps), null);
+            }
+            var called = new Frame(function.size(), frame);
+            for (int i = 0; i < parameters.size(); i++) {
+                called.slots[i] = arguments.get(i);
+            }
+            return vm.execute(function.chunk(), scope, called);
+        }
+
+    }
+
+    /**
+     * The state of a caller, restored when the callee returns.
+     */
+    private record Call(@Nullable Call caller, Chunk chunk, int pc, Scope scope, @Nullable Frame frame, int scopes, int base) {}
+
+    private RuntimeValue execute(Chunk entry, Scope initial, @Nullable Frame initialFrame) throws EvaluateException {
+        var chunk = entry;
+        var code = chunk.code;
+        var constants = chunk.constants;
+        var pc = 0;
+        var stack = new Object[chunk.maxStack + 1];
+        var sp = 0;
+        var scope = initial;
+        var frame = initialFrame;
+        //the enclosing scopes of PUSH_SCOPE/OBJECT, since a scope has no parent
+        var scopes = new Scope[8];
+        var ss = 0;
+        @Nullable Call calls = null;
+        var depth = 0;
+        while (true) {
+            var opcode = code[pc++];
+            switch (opcode) {
+                case Opcode.NIL -> stack[sp++] = NIL;
+                case Opcode.CONST -> stack[sp++] = constants[code[pc++]];
+                case Opcode.POP -> sp--;
+                case Opcode.LOAD_SLOT -> {
+                    var value = frame.slots[code[pc++]];
+                    var variable = (Chunk.Variable) constants[code[pc++]];
+                    stack[sp++] = value != null ? value : resolve(scope, variable.ast());
+                }
+                case Opcode.LOAD_VAR -> {
+                    var variable = (Chunk.Variable) constants[code[pc++]];
+                    var value = lookup(variable.reference(), frame);
+                    stack[sp++] = value != null ? value : resolve(scope, variable.ast());
+                }
+                case Opcode.CHECK_VAR -> {
+                    var variable = (Chunk.Variable) constants[code[pc++]];
+                    if (lookup(variable.reference(), frame) == null && scope.resolve(variable.ast().name(), false).isEmpty()) {
+                        throw new EvaluateException("Undefined variable.", Optional.of(variable.ast()));
+                    }
+                }
+                case Opcode.ASSIGN_VAR -> {
+                    var variable = (Chunk.Variable) constants[code[pc++]];
+                    var value = (RuntimeValue) stack[sp - 1];
+                    if (!assign(variable.reference(), frame, value)) {
+                        try {
+                            scope.assign(variable.ast().name(), value);
+                        } catch (IllegalStateException ignore) {
+                            throw new EvaluateException("Invalid variable", Optional.of(variable.ast()));
+                        }
+                    }
+                }
+                case Opcode.LET_SLOT -> {
+                    var slot = code[pc++];
+                    var ast = (Ast.Stmt.Let) constants[code[pc++]];
+                    if (frame.slots[slot] != null) {
+                        throw new EvaluateException("Variable already defined in current scope.", Optional.of(ast));
+                    }
+                    frame.slots[slot] = (RuntimeValue) stack[sp - 1];
+                }
+                case Opcode.LET_NAME -> {
+                    var ast = (Ast.Stmt.Let) constants[code[pc++]];
+                    try {
+                        scope.define(ast.name(), (RuntimeValue) stack[sp - 1]);
+                    } catch (IllegalStateException ex) {
+                        throw new EvaluateException("Variable already defined in current scope.", Optional.of(ast));
+                    }
+                }
+                case Opcode.CLOSURE -> {
+                    var function = (Chunk.Function) constants[code[pc++]];
+                    var ast = function.ast();
+                    if (function.duplicate() != null) {
+                        throw new EvaluateException("Invalid duplicate " + function.duplicate(), Optional.of(ast));
+                    }
+                    var value = new RuntimeValue.Function(ast.name(), new Closure(this, function, scope, frame));
+                    if (function.slot() == -1) {
+                        try {
+                            scope.define(ast.name(), value);
+                        } catch (IllegalStateException ignore) {
+                            throw new EvaluateException("Invalid function", Optional.of(ast));
+                        }
+                    } else if (frame.slots[function.slot()] == null) {
+                        frame.slots[function.slot()] = value;
+                    } else {
+                        throw new EvaluateException("Invalid function", Optional.of(ast));
+                    }
+                    stack[sp++] = value;
+                }
+                case Opcode.JUMP -> pc = code[pc];
+                case Opcode.JUMP_IF_FALSE -> {
+                    if (!(stack[--sp] instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof Boolean condition)) {
+                        var ast = (Ast.Stmt.If) constants[code[pc + 1]];
+                        throw new EvaluateException("IF condition must be Boolean.", Optional.of(ast.condition()));
+                    }
+                    pc = condition ? pc + 2 : code[pc];
+                }
+                case Opcode.PUSH_SCOPE -> {
+                    if (ss == scopes.length) {
+                        scopes = Arrays.copyOf(scopes, 2 * ss);
+                    }
+                    scopes[ss++] = scope;
+                    scope = new Scope(scope);
+                }
+                case Opcode.POP_SCOPE, Opcode.END_OBJECT -> scope = scopes[--ss];
+                case Opcode.PUSH_FRAME -> frame = new Frame(code[pc++], frame);
+                case Opcode.POP_FRAME -> frame = frame.parent;
+                case Opcode.ITER -> {
+                    if (!(stack[sp - 1] instanceof RuntimeValue.Primitive primitive && primitive.value() instanceof List<?> list)) {
+                        throw new EvaluateException("Invalid FOR", Optional.of((Ast.Stmt.For) constants[code[pc]]));
+                    }
+                    pc++;
+                    stack[sp - 1] = list.iterator();
+                }
+                case Opcode.NEXT -> {
+                    var iterator = (Iterator<?>) stack[sp - 1];
+                    if (iterator.hasNext()) {
+                        stack[sp++] = iterator.next();
+                        pc++;
+                    } else {
+                        sp--;
+                        pc = code[pc];
+                    }
+                }
+                case Opcode.STORE_FRESH -> frame.slots[code[pc++]] = (RuntimeValue) stack[--sp];
+                case Opcode.DEFINE_FRESH -> {
+                    var ast = (Ast.Stmt.For) constants[code[pc++]];
+                    scope.define(ast.name(), (RuntimeValue) stack[--sp]);
+                }
+                case Opcode.RETURN -> {
+                    var value = stack[--sp];
+                    if (calls == null) {
+                        return (RuntimeValue) value;
+                    }
+                    chunk = calls.chunk();
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    pc = calls.pc();
+                    scope = calls.scope();
+                    frame = calls.frame();
+                    ss = calls.scopes();
+                    sp = calls.base();
+                    calls = calls.caller();
+                    depth--;
+                    stack[sp++] = value;
+                }
+                case Opcode.HALT -> {
+                    return (RuntimeValue) stack[sp - 1];
+                }
+                case Opcode.FAIL -> {
+                    var failure = (Chunk.Failure) constants[code[pc]];
+                    throw new EvaluateException(failure.message(), Optional.of(failure.ast()));
+                }
+                case Opcode.ADD -> {
+                    var r = (RuntimeValue) stack[--sp];
+                    var l = (RuntimeValue) stack[sp - 1];
+                    var lv = value(l);
+                    var rv = value(r);
+                    if (lv instanceof String || rv instanceof String) {
+                        stack[sp - 1] = new RuntimeValue.Primitive(l.print() + r.print());
+                    } else if (lv instanceof BigInteger li && rv instanceof BigInteger ri) {
+                        stack[sp - 1] = new RuntimeValue.Primitive(li.add(ri));
+                    } else if (lv instanceof BigDecimal ld && rv instanceof BigDecimal rd) {
+                        stack[sp - 1] = new RuntimeValue.Primitive(ld.add(rd));
+                    } else {
+                        throw new EvaluateException("Invalid '+'", Optional.of(((Ast.Expr.Binary) constants[code[pc]]).left()));
+                    }
+                    pc++;
+                }
+                case Opcode.CHECK_NUMBER -> {
+                    var lv = value((RuntimeValue) stack[sp - 1]);
+                    if (!(lv instanceof BigInteger) && !(lv instanceof BigDecimal)) {
+                        var ast = (Ast.Expr.Binary) constants[code[pc]];
+                        throw new EvaluateException(ast.operator().equals("/") ? "Invalid" : "Invalid left", Optional.of(ast.left()));
+                    }
+                    pc++;
+                }
+                case Opcode.SUB, Opcode.MUL, Opcode.DIV -> {
+                    var rv = value((RuntimeValue) stack[--sp]);
+                    var lv = value((RuntimeValue) stack[sp - 1]);
+                    var ast = (Ast.Expr.Binary) constants[code[pc++]];
+                    stack[sp - 1] = new RuntimeValue.Primitive(arithmetic(opcode, ast, lv, rv));
+                }
+                case Opcode.EQ -> {
+                    var r = value((RuntimeValue) stack[--sp]);
+                    stack[sp - 1] = Objects.equals(value((RuntimeValue) stack[sp - 1]), r) ? TRUE : FALSE;
+                }
+                case Opcode.NE -> {
+                    var r = value((RuntimeValue) stack[--sp]);
+                    stack[sp - 1] = Objects.equals(value((RuntimeValue) stack[sp - 1]), r) ? FALSE : TRUE;
+                }
+                case Opcode.LT, Opcode.LE, Opcode.GT, Opcode.GE -> {
+                    var r = (RuntimeValue) stack[--sp];
+                    var l = (RuntimeValue) stack[sp - 1];
+                    var comp = compare((Ast.Expr.Binary) constants[code[pc++]], l, r);
+                    stack[sp - 1] = switch (opcode) {
+                        case Opcode.LT -> comp < 0;
+                        case Opcode.LE -> comp <= 0;
+                        case Opcode.GT -> comp > 0;
+                        default -> comp >= 0;
+                    } ? TRUE : FALSE;
+                }
+                case Opcode.AND, Opcode.OR -> {
+                    if (!(value((RuntimeValue) stack[--sp]) instanceof Boolean l)) {
+                        throw new EvaluateException("Invalid left", Optional.of(((Ast.Expr.Binary) constants[code[pc + 1]]).left()));
+                    }
+                    if (l == (opcode == Opcode.OR)) {
+                        stack[sp++] = l ? TRUE : FALSE;
+                        pc = code[pc];
+                    } else {
+                        pc += 2;
+                    }
+                }
+                case Opcode.BOOLEAN -> {
+                    if (!(value((RuntimeValue) stack[sp - 1]) instanceof Boolean)) {
+                        throw new EvaluateException("Invalid right", Optional.of(((Ast.Expr.Binary) constants[code[pc]]).right()));
+                    }
+                    pc++;
+                }
+                case Opcode.GET_FUNCTION -> {
+                    var call = (Chunk.Call) constants[code[pc++]];
+                    var ast = call.ast();
+                    var resolved = lookup(call.reference(), frame);
+                    var value = resolved != null ? resolved : scope.resolve(ast.name(), false)
+                        .orElseThrow(() -> new EvaluateException("Function '" + ast.name() + "' not defined.", Optional.of(ast)));
+                    if (!(value instanceof RuntimeValue.Function)) {
+                        throw new EvaluateException("'" + ast.name() + "' has error.", Optional.of(ast));
+                    }
+                    stack[sp++] = value;
+                }
+                case Opcode.CALL, Opcode.CALL_METHOD -> {
+                    var count = code[pc++];
+                    var base = sp - count - 1;
+                    if (opcode == Opcode.CALL_METHOD) {
+                        //the receiver argument is null unless it is passed
+                        base--;
+                        if (stack[base + 1] != null) {
+                            count++;
+                        } else {
+                            System.arraycopy(stack, base + 2, stack, base + 1, count);
+                            sp--;
+                        }
+                    }
+                    var function = (RuntimeValue.Function) stack[base];
+                    if (function.definition() instanceof Closure closure && closure.vm == this) {
+                        var callee = closure.function;
+                        var parameters = callee.ast().parameters();
+                        if (count != parameters.size()) {
+                            throw new EvaluateException("Invalid arg", Optional.of(callee.ast()));
+                        }
+                        if (++depth > MAX_CALLS) {
+                            throw new StackOverflowError("Exceeded " + MAX_CALLS + " calls in " + callee.ast().name());
+                        }
+                        calls = new Call(calls, chunk, pc, scope, frame, ss, base);
+                        if (callee.size() == -1) {
+                            var ps = new Scope(closure.scope);
+                            for (int i = 0; i < count; i++) {
+                                ps.define(parameters.get(i), (RuntimeValue) stack[base + 1 + i]);
+                            }
+                            scope = new Scope(ps);
+                            frame = null;
+                        } else {
+                            scope = closure.scope;
+                            frame = new Frame(callee.size(), closure.frame);
+                            System.arraycopy(stack, base + 1, frame.slots, 0, count);
+                        }
+                        chunk = callee.chunk();
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        pc = 0;
+                        sp = base;
+                        if (sp + chunk.maxStack + 1 > stack.length) {
+                            stack = Arrays.copyOf(stack, Math.max(2 * stack.length, sp + chunk.maxStack + 1));
+                        }
+                    } else {
+                        var arguments = new ArrayList<RuntimeValue>(count);
+                        for (int i = 0; i < count; i++) {
+                            arguments.add((RuntimeValue) stack[base + 1 + i]);
+                        }
+                        sp = base;
+                        stack[sp++] = function.definition().invoke(arguments);
+                    }
+                }
+                case Opcode.GET_PROPERTY -> {
+                    var ast = (Ast.Expr.Property) constants[code[pc++]];
+                    if (!(stack[sp - 1] instanceof RuntimeValue.ObjectValue object)) {
+                        throw new EvaluateException("Invalid receiver", Optional.of(ast.receiver()));
+                    }
+                    var owner = owner(object, ast.name());
+                    if (owner == null) {
+                        throw new EvaluateException("Invalid property", Optional.of(ast));
+                    }
+                    stack[sp - 1] = owner.scope().resolve(ast.name(), true).get();
+                }
+                case Opcode.GET_METHOD -> {
+                    var ast = (Ast.Expr.Method) constants[code[pc++]];
+                    if (!(stack[sp - 1] instanceof RuntimeValue.ObjectValue object)) {
+                        throw new EvaluateException("Invalid receiver", Optional.of(ast.receiver()));
+                    }
+                    var owner = owner(object, ast.name());
+                    if (owner == null || !(owner.scope().resolve(ast.name(), true).get() instanceof RuntimeValue.Function method)) {
+                        throw new EvaluateException("Invalid method", Optional.of(ast));
+                    }
+                    stack[sp - 1] = method;
+                    var passed = owner.name().isPresent() && ("Object".equals(owner.name().get()) || "Prototype".equals(owner.name().get()));
+                    stack[sp++] = passed ? object : null;
+                }
+                case Opcode.CHECK_PROPERTY -> {
+                    var ast = (Ast.Expr.Property) constants[code[pc++]];
+                    if (!(stack[sp - 1] instanceof RuntimeValue.ObjectValue object)) {
+                        throw new EvaluateException("Receiver must be an object.", Optional.of(ast.receiver()));
+                    }
+                    if (owner(object, ast.name()) == null) {
+                        throw new EvaluateException("Invalid property", Optional.of(ast));
+                    }
+                }
+                case Opcode.SET_PROPERTY -> {
+                    var ast = (Ast.Expr.Property) constants[code[pc++]];
+                    var value = (RuntimeValue) stack[--sp];
+                    var object = (RuntimeValue.ObjectValue) stack[sp - 1];
+                    if (object.scope().resolve(ast.name(), true).isPresent()) {
+                        object.scope().assign(ast.name(), value);
+                    } else {
+                        object.scope().define(ast.name(), value);
+                    }
+                    stack[sp - 1] = value;
+                }
+                case Opcode.OBJECT -> {
+                    var ast = (Ast.Expr.ObjectExpr) constants[code[pc++]];
+                    var object = new RuntimeValue.ObjectValue(ast.name(), new Scope(scope));
+                    if (ss == scopes.length) {
+                        scopes = Arrays.copyOf(scopes, 2 * ss);
+                    }
+                    scopes[ss++] = scope;
+                    scope = object.scope();
+                    scope.define("this", object);
+                    stack[sp++] = object;
+                }
+                default -> throw new AssertionError("Invalid opcode " + opcode + " at " + (pc - 1) + " in " + chunk.name);
+            }
+        }
+    }
+
+    private static RuntimeValue resolve(Scope scope, Ast.Expr.Variable ast) throws EvaluateException {
+        return scope.resolve(ast.name(), false)
+            .orElseThrow(() -> new EvaluateException("Undefined: " + ast.name(), Optional.of(ast)));
+    }
+
+    /**
+     * Returns the value of a variable resolved to a slot, or null if it is
+     * undefined in the frames (and hence must be looked up in the scope).
+     */
+    private static @Nullable RuntimeValue lookup(Resolver.@Nullable Reference reference, @Nullable Frame frame) {
+        if (reference == null) {
+            return null;
+        }
+        for (int i = 0; i < reference.slots().length; i++) {
+            var value = frame.up(reference.depths()[i]).slots[reference.slots()[i]];
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Assigns a variable resolved to a slot, returning false if it is
+     * undefined in the frames.
+     */
+    private static boolean assign(Resolver.@Nullable Reference reference, @Nullable Frame frame, RuntimeValue value) {
+        if (reference == null) {
+            return false;
+        }
+        for (int i = 0; i < reference.slots().length; i++) {
+            var target = frame.up(reference.depths()[i]);
+            if (target.slots[reference.slots()[i]] != null) {
+                target.slots[reference.slots()[i]] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates -, *, and / once the left operand has been checked to be a
+     * number by {@link Opcode#CHECK_NUMBER}.
+     */
+    private static Object arithmetic(int opcode, Ast.Expr.Binary ast, @Nullable Object lv, @Nullable Object rv) throws EvaluateException {
+        if (lv instanceof BigInteger li && rv instanceof BigInteger ri) {
+            return switch (opcode) {
+                case Opcode.SUB -> li.subtract(ri);
+                case Opcode.MUL -> li.multiply(ri);
+                default -> {
+                    if (ri.signum() == 0) {
+                        throw new EvaluateException("zero division error", Optional.of(ast.right()));
+                    }
+                    yield li.divide(ri);
+                }
+            };
+        } else if (lv instanceof BigDecimal ld && rv instanceof BigDecimal rd) {
+            return switch (opcode) {
+                case Opcode.SUB -> ld.subtract(rd);
+                case Opcode.MUL -> ld.multiply(rd);
+                default -> {
+                    if (rd.signum() == 0) {
+                        throw new EvaluateException("zero division error", Optional.of(ast.right()));
+                    }
+                    yield ld.divide(rd, RoundingMode.HALF_EVEN);
+                }
+            };
+        }
+        throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Ast.Expr.Binary ast, RuntimeValue l, RuntimeValue r) throws EvaluateException {
+        if (!(l instanceof RuntimeValue.Primitive lp) || !(lp.value() instanceof Comparable<?> lc)) {
+            throw new EvaluateException("Invalid left", Optional.of(ast.left()));
+        }
+        var rw = value(r);
+        if (rw == null || !lc.getClass().isInstance(rw)) {
+            throw new EvaluateException("Invalid right", Optional.of(ast.right()));
+        }
+        return ((Comparable<Object>) lc).compareTo(rw);
+    }
+
+    /**
+     * Returns the object defining the property, which is the object itself
+     * or an object in its prototype chain, or null if it is undefined.
+     */
+    private static RuntimeValue.@Nullable ObjectValue owner(RuntimeValue.ObjectValue object, String name) {
+        var curr = object;
+        while (curr.scope().resolve(name, true).isEmpty()) {
+            if (curr.scope().resolve("prototype", true).orElse(null) instanceof RuntimeValue.ObjectValue prototype) {
+                curr = prototype;
+            } else {
+                return null;
+            }
+        }
+        return curr;
+    }
+
+    /**
+     * Returns the value of a primitive, or the value itself otherwise, which
+     * is how values are compared for equality.
+     */
+    private static @Nullable Object value(RuntimeValue value) {
+        return value instanceof RuntimeValue.Primitive primitive ? primitive.value() : value;
+    }
+
+}
@@ -5,6 +5,8 @@ import plc.project.analyzer.Type;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 
@@ -13,6 +15,9 @@ public final class Generator implements Ir.Visitor<StringBuilder, RuntimeExcepti
 
     private final StringBuilder builder = new StringBuilder();
     private int indent = 0;
+    //Literal values are canonicalized by ConstantPool, so each constant is
+    //only converted to Java source once.
+    private final Map<Object, String> literals = new IdentityHashMap<>();
 
     private void newline(int indent) {
         builder.append("\n");
@@ -215,16 +220,17 @@ public final class Generator implements Ir.Visitor<StringBuilder, RuntimeExcepti
     }
     @Override
     public StringBuilder visit(Ir.Expr.Literal ir) {
-        var literal = switch (ir.value()) {
-            case null -> "null";
+        if (ir.value() == null) {
+            return builder.append("null");
+        }
+        return builder.append(literals.computeIfAbsent(ir.value(), value -> switch (value) {
             case Boolean b -> b.toString();
             case BigInteger i -> "new BigInteger(\"" + i + "\")";
             case BigDecimal d -> "new BigDecimal(\"" + d + "\")";
             case Character c -> "\'" + c + "\'"; //Limitation: escapes unsupported
             case String s -> "\"" + s + "\""; //Limitation: escapes unsupported
-            default -> throw new AssertionError(ir.value());
-        };
-        return builder.append(literal);
+            default -> throw new AssertionError(value);
+        }));
     }
 
     @Override
@@ -0,0 +1,98 @@
+package plc.project.lexer;
+
+/**
+ * Precomputed character classes for the lexer, replacing the per-character
+ * regex checks previously used by {@code CharStream.peek}. Each class is a bit
+ * in a lookup table indexed by ASCII character, and {@link #is} tests whether
+ * a character belongs to any of the classes in a mask. Non-ASCII characters
+ * are never part of identifiers, numbers, or whitespace, so they only belong
+ * to the "anything except ..." classes.
+ */
+final class CharClass {
+
+    /** {@code [A-Za-z_]} */
+    static final int IDENTIFIER_START = 1;
+    /** {@code [A-Za-z0-9_-]} */
+    static final int IDENTIFIER_PART = 1 << 1;
+    /** {@code [0-9]} */
+    static final int DIGIT = 1 << 2;
+    /** {@code [+-]} */
+    static final int SIGN = 1 << 3;
+    /** {@code [ \b\n\r\t]} */
+    static final int WHITESPACE = 1 << 4;
+    /** {@code [\n\r]} */
+    static final int LINE_END = 1 << 5;
+    /** {@code [bnrt'"\\]}, the characters following a backslash. */
+    static final int ESCAPE = 1 << 6;
+    /** {@code [^"\\\n\r]} */
+    static final int STRING_CHAR = 1 << 7;
+    /** {@code [^'\\\n\r]} */
+    static final int CHARACTER_CHAR = 1 << 8;
+    /** {@code [<>!=]}, operators that may be followed by {@code =}. */
+    static final int COMPARISON = 1 << 9;
+    /** {@code [^A-Za-z_0-9'" \b\n\r\t]} */
+    static final int OPERATOR = 1 << 10;
+    /** {@code =} */
+    static final int EQUALS = 1 << 11;
+
+    private static final int NON_ASCII = STRING_CHAR | CHARACTER_CHAR | OPERATOR;
+
+    private static final int[] TABLE = new int[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            int mask = 0;
+            boolean letter = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+            boolean digit = c >= '0' && c <= '9';
+            if (letter || c == '_') {
+                mask |= IDENTIFIER_START;
+            }
+            if (letter || digit || c == '_' || c == '-') {
+                mask |= IDENTIFIER_PART;
+            }
+            if (digit) {
+                mask |= DIGIT;
+            }
+            if (c == '+' || c == '-') {
+                mask |= SIGN;
+            }
+            boolean whitespace = c == ' ' || c == '\b' || c == '\n' || c == '\r' || c == '\t';
+            if (whitespace) {
+                mask |= WHITESPACE;
+            }
+            if (c == '\n' || c == '\r') {
+                mask |= LINE_END;
+            }
+            if ("bnrt'\"\\".indexOf(c) != -1) {
+                mask |= ESCAPE;
+            }
+            if ("\"\\\n\r".indexOf(c) == -1) {
+                mask |= STRING_CHAR;
+            }
+            if ("'\\\n\r".indexOf(c) == -1) {
+                mask |= CHARACTER_CHAR;
+            }
+            if (c == '<' || c == '>' || c == '!' || c == '=') {
+                mask |= COMPARISON;
+            }
+            if (c == '=') {
+                mask |= EQUALS;
+            }
+            if (!letter && !digit && !whitespace && c != '_' && c != '\'' && c != '"') {
+                mask |= OPERATOR;
+            }
+            TABLE[c] = mask;
+        }
+    }
+
+    private CharClass() {}
+
+    /**
+     * Returns true if the character belongs to at least one of the classes
+     * in the mask.
+     */
+    static boolean is(char c, int mask) {
+        return ((c < 128 ? TABLE[c] : NON_ASCII) & mask) != 0;
+    }
+
+}
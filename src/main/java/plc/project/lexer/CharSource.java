@@ -0,0 +1,398 @@
+package plc.project.lexer;
+
+import com.google.common.base.Preconditions;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The characters being lexed, addressed by absolute index from the start of
+ * the input. This allows {@link Lexer} to work over an in-memory
+ * {@link String} as well as over inputs that are read incrementally and only
+ * partially held in memory.
+ */
+sealed interface CharSource {
+
+    /**
+     * Returns true if there is a character at the given index, reading more
+     * input if necessary.
+     */
+    boolean has(int index);
+
+    /**
+     * Returns the character at the given index, which must have been checked
+     * via {@link #has} and not yet released.
+     */
+    char charAt(int index);
+
+    /**
+     * Returns the number of indices occupied by the character at the given
+     * index, which is always 1 unless the source is indexed by bytes.
+     */
+    default int width(int index) {
+        return 1;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after
+     * index, or end if there is none before it. The start of each line after
+     * a line terminator in the skipped whitespace is added to lines.
+     */
+    default int skipWhitespace(int index, int end, LineTable lines) {
+        while (index < end && has(index)) {
+            var c = charAt(index);
+            if (!CharClass.is(c, CharClass.WHITESPACE)) {
+                break;
+            }
+            index++;
+            if (c == '\n' || (c == '\r' && !(index < end && has(index) && charAt(index) == '\n'))) {
+                lines.add(index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first line terminator at or after index, or
+     * end if there is none before it.
+     */
+    default int skipLine(int index, int end) {
+        while (index < end && has(index) && !CharClass.is(charAt(index), CharClass.LINE_END)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the characters in the range {@code [start, end)}.
+     */
+    String substring(int start, int end);
+
+    /**
+     * Returns true if the characters in the range {@code [start, end)} are
+     * equal to the given literal, without creating a substring.
+     */
+    default boolean regionMatches(int start, int end, String literal) {
+        if (end - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Signals that characters before the given index are no longer needed,
+     * allowing sources to discard them.
+     */
+    void release(int index);
+
+    final class OfString implements CharSource {
+
+        private final String input;
+
+        OfString(String input) {
+            this.input = input;
+        }
+
+        String input() {
+            return input;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < input.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return input.charAt(index);
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return input.substring(start, end);
+        }
+
+        @Override
+        public void release(int index) {}
+
+    }
+
+    /**
+     * A text edited in place by {@link IncrementalLexer}, kept as a gap
+     * buffer: the free capacity of the array is a gap at the last edit, with
+     * the characters after it at the end. An edit moves the gap to its offset
+     * and replaces characters there, so it costs the distance from the
+     * previous edit plus its length rather than the length of the text.
+     */
+    final class OfGapBuffer implements CharSource {
+
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        OfGapBuffer(String input) {
+            chars = new char[input.length() + Math.max(input.length() >> 4, 16)];
+            input.getChars(0, input.length(), chars, 0);
+            gapStart = input.length();
+            gapEnd = chars.length;
+        }
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            if (end <= gapStart) {
+                return new String(chars, start, end - start);
+            } else if (start >= gapStart) {
+                return new String(chars, start + gapEnd - gapStart, end - start);
+            }
+            return new StringBuilder(end - start)
+                .append(chars, start, gapStart - start)
+                .append(chars, gapEnd, end - gapStart)
+                .toString();
+        }
+
+        @Override
+        public void release(int index) {}
+
+        /**
+         * Replaces the removed characters at offset with the inserted text.
+         */
+        void replace(int offset, int removed, String inserted) {
+            Preconditions.checkPositionIndexes(offset, offset + removed, length());
+            if (offset < gapStart) {
+                var count = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (offset > gapStart) {
+                var count = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+            gapEnd += removed;
+            if (gapEnd - gapStart < inserted.length()) {
+                var grown = new char[Math.max(chars.length * 2, length() + inserted.length() + 16)];
+                var after = chars.length - gapEnd;
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - after, after);
+                gapEnd = grown.length - after;
+                chars = grown;
+            }
+            inserted.getChars(0, inserted.length(), chars, gapStart);
+            gapStart += inserted.length();
+        }
+
+    }
+
+    /**
+     * Reads characters from a {@link Reader} into a ring buffer. Only the
+     * characters from the last {@link #release} onwards (i.e. the token being
+     * lexed and its lookahead) are retained, so memory use is bounded by the
+     * buffer capacity regardless of input size. The buffer only grows if a
+     * single token is larger than the current capacity.
+     */
+    final class OfReader implements CharSource {
+
+        private final Reader reader;
+        private char[] buffer;
+        private int start = 0; //index of the oldest retained character
+        private int end = 0; //index after the newest buffered character
+        private boolean eof = false;
+
+        OfReader(Reader reader, int capacity) {
+            this.reader = reader;
+            this.buffer = new char[Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1];
+        }
+
+        @Override
+        public boolean has(int index) {
+            while (index >= end && !eof) {
+                fill();
+            }
+            return index < end;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer[index & (buffer.length - 1)];
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            var offset = start & (buffer.length - 1);
+            if (offset + (end - start) <= buffer.length) {
+                return new String(buffer, offset, end - start);
+            }
+            var first = buffer.length - offset;
+            return new StringBuilder(end - start)
+                .append(buffer, offset, first)
+                .append(buffer, 0, end - start - first)
+                .toString();
+        }
+
+        @Override
+        public void release(int index) {
+            start = index;
+        }
+
+        /**
+         * Skipped characters are never part of a literal, so they are released
+         * while skipping to avoid growing the buffer for long comments.
+         */
+        @Override
+        public int skipLine(int index, int end) {
+            while (index < end && has(index) && !CharClass.is(charAt(index), CharClass.LINE_END)) {
+                release(++index);
+            }
+            return index;
+        }
+
+        private void fill() {
+            if (end - start == buffer.length) {
+                grow();
+            }
+            var offset = end & (buffer.length - 1);
+            var count = Math.min(buffer.length - (end - start), buffer.length - offset);
+            try {
+                var read = reader.read(buffer, offset, count);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void grow() {
+            var grown = new char[buffer.length << 1];
+            for (int i = start; i < end; i++) {
+                grown[i & (grown.length - 1)] = buffer[i & (buffer.length - 1)];
+            }
+            buffer = grown;
+        }
+
+    }
+
+    /**
+     * Reads UTF-8 encoded characters directly from a {@link ByteBuffer},
+     * typically a {@link java.nio.MappedByteBuffer}, without copying the input
+     * into a {@code char[]}. Indices are byte offsets into the buffer and
+     * multi-byte sequences have a {@link #width} of their encoded length, so a
+     * non-ASCII code point is lexed as a single character. Since the lexer only
+     * distinguishes between ASCII characters, {@link #charAt} returns the
+     * replacement character for all non-ASCII code points, and literals are
+     * decoded from their bytes when emitted.
+     *
+     * <p>If the {@code plc.lexer.vector} system property is true and the
+     * {@code jdk.incubator.vector} module is available (via
+     * {@code --add-modules}), whitespace and comments are skipped with
+     * {@link VectorScan}; otherwise the scalar defaults are used.
+     */
+    final class OfBytes implements CharSource {
+
+        private static final boolean VECTORIZED = Boolean.getBoolean("plc.lexer.vector")
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+        private final ByteBuffer buffer;
+        private final @Nullable MemorySegment segment;
+
+        OfBytes(ByteBuffer buffer) {
+            this.buffer = buffer;
+            //a segment starts at the buffer's position, while indices are from 0
+            this.segment = VECTORIZED ? MemorySegment.ofBuffer(buffer.duplicate().position(0)) : null;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            var b = buffer.get(index);
+            return b >= 0 ? (char) b : '\uFFFD';
+        }
+
+        @Override
+        public int width(int index) {
+            var b = buffer.get(index);
+            int width;
+            if (b >= 0) {
+                return 1;
+            } else if ((b & 0xE0) == 0xC0) {
+                width = 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                width = 3;
+            } else if ((b & 0xF8) == 0xF0) {
+                width = 4;
+            } else {
+                width = 1; //stray continuation byte, decoded as U+FFFD
+            }
+            return Math.min(width, buffer.limit() - index);
+        }
+
+        @Override
+        public int skipWhitespace(int index, int end, LineTable lines) {
+            if (VECTORIZED) {
+                index = VectorScan.skipWhitespace(segment, index, Math.min(end, buffer.limit()), lines);
+            }
+            return CharSource.super.skipWhitespace(index, end, lines);
+        }
+
+        @Override
+        public int skipLine(int index, int end) {
+            if (VECTORIZED) {
+                index = VectorScan.skipLine(segment, index, Math.min(end, buffer.limit()));
+            }
+            return CharSource.super.skipLine(index, end);
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            var bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean regionMatches(int start, int end, String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (literal.charAt(i) >= 128) {
+                    return substring(start, end).equals(literal);
+                }
+            }
+            return CharSource.super.regionMatches(start, end, literal);
+        }
+
+        @Override
+        public void release(int index) {}
+
+    }
+
+}
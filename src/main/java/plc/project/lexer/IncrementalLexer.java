@@ -0,0 +1,101 @@
+package plc.project.lexer;
+
+/**
+ * Updates a {@link TokenBuffer} after an edit to its source by only re-lexing
+ * the damaged region, for use by editors and the REPL.
+ *
+ * <p>Lexing restarts at the end of the last token that cannot have been
+ * affected by the edit. A token depends on its own characters plus at most
+ * one character of lookahead (e.g. {@code 1.} checking for a digit), so any
+ * token ending at least two characters before the edit is unchanged; since
+ * the lexer is always in its initial state after a token, restarting there
+ * also correctly re-lexes any whitespace/comments in between. Re-lexing then
+ * stops as soon as a new token starts after the edit at the (shifted) start
+ * of a previous token, as the lexer is in the same state on the same
+ * characters and all remaining tokens must therefore be identical.
+ *
+ * <p>The buffer, its source, and its {@link LineTable} are edited in place.
+ * Each is a gap buffer with the gap at the last edit, and the offsets after
+ * the gap are shifted lazily, so an edit costs the re-lexed region plus the
+ * distance from the previous edit rather than the size of the source.
+ */
+public final class IncrementalLexer {
+
+    /**
+     * The result of re-lexing, where the tokens {@code [start, oldEnd)} of the
+     * buffer before the edit were replaced by the tokens {@code [start,
+     * newEnd)}. All tokens after that range are the previous tokens with
+     * offsets shifted by the length difference of the edit. Since the tokens
+     * re-lexed before the edit are compared with the previous ones, start is
+     * the first token that actually changed.
+     */
+    public record Result(
+        TokenBuffer tokens,
+        int start,
+        int oldEnd,
+        int newEnd
+    ) {}
+
+    private IncrementalLexer() {}
+
+    /**
+     * Re-lexes the buffer's source after replacing the removed characters at
+     * offset with the inserted text, updating the buffer in place. The buffer
+     * must have been lexed from a {@link String}, which is copied into a gap
+     * buffer on its first edit.
+     */
+    public static Result relex(TokenBuffer tokens, int offset, int removed, String inserted) throws LexException {
+        var source = tokens.editableSource();
+        source.replace(offset, removed, inserted);
+        var shift = inserted.length() - removed;
+        //First token that may be affected, i.e. ending at most one character before the edit.
+        var start = firstEndingAtOrAfter(tokens, offset - 1);
+        var restart = start > 0 ? tokens.end(start - 1) : 0;
+        var lexer = new Lexer(source, restart, Integer.MAX_VALUE);
+        var relexed = lexer.newBuffer();
+        //Offsets of the buffer are before the edit until it is replaced.
+        var old = start;
+        var until = Integer.MAX_VALUE;
+        while (lexer.lexNext(relexed)) {
+            var last = relexed.size() - 1;
+            if (relexed.start(last) < offset + inserted.length()) {
+                continue;
+            }
+            while (old < tokens.size() && tokens.start(old) < relexed.start(last) - shift) {
+                old++;
+            }
+            if (old < tokens.size() && tokens.start(old) == relexed.start(last) - shift) {
+                relexed.truncate(last);
+                until = tokens.start(old);
+                break;
+            }
+        }
+        var oldEnd = until != Integer.MAX_VALUE ? old : tokens.size();
+        //Tokens before the edit which were re-lexed the same are unchanged.
+        var same = 0;
+        while (same < relexed.size() && start + same < oldEnd && tokens.end(start + same) <= offset
+            && tokens.type(start + same) == relexed.type(same)
+            && tokens.start(start + same) == relexed.start(same)
+            && tokens.end(start + same) == relexed.end(same)) {
+            same++;
+        }
+        tokens.lines().replace(restart, until, lexer.lines(), shift);
+        tokens.replace(start + same, oldEnd, relexed, same, shift);
+        return new Result(tokens, start + same, oldEnd, start + relexed.size());
+    }
+
+    private static int firstEndingAtOrAfter(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (tokens.end(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -1,7 +1,15 @@
 package plc.project.lexer;
 
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * The lexer works through a combination of {@link #lex()}, which repeatedly
@@ -12,50 +20,173 @@ import java.util.List;
  * <p>Additionally, {@link CharStream} manages the lexer state and contains
  * {@link CharStream#peek} and {@link CharStream#match}. These are helpful
  * utilities for working with character state and building tokens.
+ *
+ * <p>Tokens can also be pulled one at a time via {@link #next()}. Combined
+ * with {@link #Lexer(Reader)}, this lexes inputs in constant memory since
+ * only the current token is buffered. For a {@code ReadableByteChannel},
+ * use {@code Channels.newReader(channel, charset)}.
+ *
+ * <p>Large files can be lexed without loading them into a {@link String} via
+ * {@link #map(Path)}, which decodes UTF-8 directly from a memory-mapped
+ * buffer.
+ *
+ * <p>While lexing, the start of each line is recorded in {@link #lines()} so
+ * offsets (e.g. {@link #span()} or {@link LexException#getIndex()}) can be
+ * mapped to a line and column.
  */
 public final class Lexer {
 
     private final CharStream chars;
+    private final LineTable lines = new LineTable();
+    private Span span = new Span(0, 0);
+
+    private static final int BUFFER_CAPACITY = 8192;
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        chars = new CharStream(new CharSource.OfString(input));
+    }
+
+    /**
+     * Creates a lexer reading from the given reader through a bounded ring
+     * buffer, intended for use with {@link #next()}. The reader is not closed.
+     */
+    public Lexer(Reader reader) {
+        chars = new CharStream(new CharSource.OfReader(reader, BUFFER_CAPACITY));
+    }
+
+    /**
+     * Creates a lexer over UTF-8 encoded bytes, from the buffer's position 0
+     * to its limit. Indices (e.g. in {@link LexException}) are byte offsets.
+     */
+    public Lexer(ByteBuffer buffer) {
+        chars = new CharStream(new CharSource.OfBytes(buffer));
+    }
+
+    /**
+     * Creates a lexer over the range {@code [start, end)} of the source, where
+     * start must be a token boundary. Used by {@link ParallelLexer}.
+     */
+    Lexer(CharSource source, int start, int end) {
+        chars = new CharStream(source, start, end);
+    }
+
+    /**
+     * Creates a lexer over a read-only memory mapping of the given file. The
+     * mapping remains valid after the underlying channel is closed.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
     }
 
     public List<Token> lex() throws LexException {
         var tokens = new ArrayList<Token>();
+        for (var token = next(); token.isPresent(); token = next()) {
+            tokens.add(token.get());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the next token, skipping whitespace/comments, or empty if the
+     * end of input has been reached.
+     */
+    public Optional<Token> next() throws LexException {
+        if (!skip()) {
+            return Optional.empty();
+        }
+        var type = lexToken();
+        span = new Span(chars.start(), chars.index);
+        return Optional.of(new Token(type, chars.emit()));
+    }
+
+    /**
+     * Returns the span of the token last returned by {@link #next()}.
+     */
+    public Span span() {
+        return span;
+    }
+
+    /**
+     * Returns the line starts of the input lexed so far, which is updated as
+     * lexing continues.
+     */
+    public LineTable lines() {
+        return lines;
+    }
+
+    /**
+     * Lexes the remaining input into a {@link TokenBuffer}, which records
+     * token offsets instead of creating literals. This requires the input to
+     * remain available, so it is not supported for {@link Reader} inputs.
+     */
+    public TokenBuffer lexBuffer() throws LexException {
+        var tokens = newBuffer();
+        while (lexNext(tokens)) {}
+        return tokens;
+    }
+
+    /**
+     * Returns an empty buffer over this lexer's input, to be filled one token
+     * at a time via {@link #lexNext} (e.g. by a parser pulling tokens on
+     * demand). As with {@link #lexBuffer()}, this is not supported for
+     * {@link Reader} inputs.
+     */
+    public TokenBuffer newBuffer() {
+        Preconditions.checkState(!(chars.source instanceof CharSource.OfReader), "Reader inputs cannot be buffered.");
+        return new TokenBuffer(chars.source, lines);
+    }
+
+    /**
+     * Lexes the next token into the buffer, returning false if the end of
+     * input has been reached. The buffer must be over the same input, i.e.
+     * from {@link #newBuffer()}.
+     */
+    public boolean lexNext(TokenBuffer tokens) throws LexException {
+        if (!skip()) {
+            return false;
+        }
+        var type = lexToken();
+        tokens.add(type, chars.start(), chars.index);
+        chars.discard();
+        return true;
+    }
+
+    /**
+     * Skips whitespace/comments, returning true if a token follows.
+     */
+    private boolean skip() {
         while (chars.has(0)) {
-            //TODO: Skip whitespace/comments
-            if (chars.peek("[ \b\n\r\t]")) {
+            if (chars.peek(CharClass.WHITESPACE)) {
                 lexWhitespace();
-            } else if (chars.peek("/", "/")) {
+            } else if (chars.peek('/', '/')) {
                 lexComment();
             } else {
-                tokens.add(lexToken());
+                return true;
             }
         }
-        return tokens;
+        return false;
     }
 
     private void lexWhitespace() {
-        while (chars.match("[ \b\n\r\t]")) {}
-        chars.emit();
+        chars.skipWhitespace(lines);
+        chars.discard();
     }
 
     private void lexComment() {
-        while (chars.has(0) && !chars.peek("\n") && !chars.peek("\r")) {
-            chars.match(".");
-        }
-        chars.emit();
+        chars.skipLine();
+        chars.discard();
     }
 
-    private Token lexToken() throws LexException {
-        if (chars.peek("[A-Za-z_]")) {
+    private Token.Type lexToken() throws LexException {
+        if (chars.peek(CharClass.IDENTIFIER_START)) {
             return lexIdentifier();
-        } else if (chars.peek("[+-]", "[0-9]") || chars.peek("[0-9]")) {
+        } else if (chars.peek(CharClass.SIGN, CharClass.DIGIT) || chars.peek(CharClass.DIGIT)) {
             return lexNumber();
-        } else if (chars.peek("'")) {
+        } else if (chars.peek('\'')) {
             return lexCharacter();
-        } else if (chars.peek("\"")) {
+        } else if (chars.peek('"')) {
             return lexString();
         } else {
             return lexOperator();
@@ -63,114 +194,97 @@ public final class Lexer {
 
     }
 
-    private Token lexIdentifier() {
-        chars.match("[A-Za-z_]");
+    private Token.Type lexIdentifier() {
+        chars.match(CharClass.IDENTIFIER_START);
 
-        while (chars.peek("[A-Za-z0-9_-]")) {
-            chars.match("[A-Za-z0-9_-]");
-        }
-        return new Token(Token.Type.IDENTIFIER, chars.emit());
+        while (chars.match(CharClass.IDENTIFIER_PART)) {}
+        return Token.Type.IDENTIFIER;
     }
 
-    private Token lexNumber() throws LexException {
+    private Token.Type lexNumber() throws LexException {
         boolean tf = false;
-        chars.match("[+-]");
-        while (chars.match("[0-9]")) {}
-        if (chars.match("\\.")) {
-            if (chars.peek("[0-9]")) {
+        chars.match(CharClass.SIGN);
+        while (chars.match(CharClass.DIGIT)) {}
+        if (chars.match('.')) {
+            if (chars.peek(CharClass.DIGIT)) {
                 tf = true;
 
-                while (chars.match("[0-9]")) {}
+                while (chars.match(CharClass.DIGIT)) {}
             } else {
                 chars.index--;
                 chars.length--;
-                String i = chars.emit();
-                return new Token(Token.Type.INTEGER, i);
+                return Token.Type.INTEGER;
             }
         }
-        if (chars.match("e")) {
-            chars.match("[+-]");
-            if (!chars.peek("[0-9]")) {
+        if (chars.match('e')) {
+            chars.match(CharClass.SIGN);
+            if (!chars.peek(CharClass.DIGIT)) {
                 chars.index--;
                 chars.length--;
-                String i = chars.emit();
-                return new Token(Token.Type.INTEGER, i);
+                return Token.Type.INTEGER;
             }
-            while (chars.match("[0-9]")) {}
+            while (chars.match(CharClass.DIGIT)) {}
         }
-        String val = chars.emit();
         if (tf) {
-            return new Token(Token.Type.DECIMAL, val);
+            return Token.Type.DECIMAL;
         } else {
-            return new Token(Token.Type.INTEGER, val);
+            return Token.Type.INTEGER;
         }
     }
 
-    private Token lexCharacter() throws LexException {
-        chars.match("'");
+    private Token.Type lexCharacter() throws LexException {
+        chars.match('\'');
         if (!chars.has(0)) {
             throw new LexException("Invalid character", chars.index);
         }
-        if (chars.peek("\\\\")) {
+        if (chars.peek('\\')) {
             lexEscape();
-        } else if (chars.peek("[^'\n\r\\\\]")) {
-            chars.match(".");
+        } else if (chars.peek(CharClass.CHARACTER_CHAR)) {
+            chars.advance();
         } else {
             throw new LexException("Invalid character", chars.index);
         }
-        if (!chars.match("'")) {
+        if (!chars.match('\'')) {
             throw new LexException("Invalid character", chars.index);
         }
-
-        String val = chars.emit();
-        if (val.length() < 3 || val.length() > 4) {
-            throw new LexException("Invalid character", chars.index);
-        }
-        return new Token(Token.Type.CHARACTER, val);
+        return Token.Type.CHARACTER;
     }
 
-    private Token lexString() throws LexException {
+    private Token.Type lexString() throws LexException {
         //string ::= '"' ([^"\n\r\\] | escape)* '"'
-        chars.match("\"");
-        while (chars.has(0) && !chars.peek("\"")) {
-            if (chars.peek("\\\\")) {
+        chars.match('"');
+        while (chars.has(0) && !chars.peek('"')) {
+            if (chars.peek('\\')) {
                 lexEscape();
-            } else if (chars.peek("[^\"\\\\\n\r]")) {
-                chars.match(".");
+            } else if (chars.peek(CharClass.STRING_CHAR)) {
+                chars.advance();
             } else {
                 throw new LexException("Invalid string", chars.index);
             }
         }
-        if (!chars.match("\"")) {
+        if (!chars.match('"')) {
             throw new LexException("Invalid string", chars.index);
         }
-        return new Token(Token.Type.STRING, chars.emit());
+        return Token.Type.STRING;
     }
 
     private void lexEscape() throws LexException {
-        if (!chars.match("\\\\")) {
+        if (!chars.match('\\')) {
             throw new LexException("Invalid escape", chars.index);
         }
         //
 
-        if (!chars.match("[bnrt'\"\\\\]")) {
+        if (!chars.match(CharClass.ESCAPE)) {
             throw new LexException("Invalid escape", chars.index);
         }
     }
 
-    public Token lexOperator() {
+    private Token.Type lexOperator() {
         //operator ::= [<>!=] '='? | [^A-Za-z_0-9'" \b\n\r\t]
-        if (chars.match("[<>!=]", "=")) {
-
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else if (chars.match("[^A-Za-z_0-9'\" \b\n\r\t]")) {
-
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else {
-            chars.match(".");
-
-            return new Token(Token.Type.OPERATOR, chars.emit());
+        if (!chars.match(CharClass.COMPARISON, CharClass.EQUALS)) {
+            chars.advance();
         }
+        return Token.Type.OPERATOR;
     }
 
     /**
@@ -179,49 +293,137 @@ public final class Lexer {
      */
     private static final class CharStream {
 
-        private final String input;
-        private int index = 0;
+        private final CharSource source;
+        private final int end;
+        private int index;
         private int length = 0;
 
-        public CharStream(String input) {
-            this.input = input;
+        public CharStream(CharSource source) {
+            this(source, 0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates a stream over the range {@code [start, end)} of the source.
+         */
+        public CharStream(CharSource source, int start, int end) {
+            this.source = source;
+            this.index = start;
+            this.end = end;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return available(index + offset);
+        }
+
+        private boolean available(int index) {
+            return index < end && source.has(index);
         }
 
         /**
-         * Returns true if the next character(s) match their corresponding
-         * pattern(s). Each pattern is a regex matching ONE character, e.g.:
-         *  - peek("/") is valid and will match the next character
-         *  - peek("/", "/") is valid and will match the next two characters
-         *  - peek("/+") is conceptually invalid, but will match one character
-         *  - peek("//") is strictly invalid as it can never match one character
+         * Returns true if the next character belongs to the given
+         * {@link CharClass} mask, e.g. {@code peek(CharClass.DIGIT)}.
          */
-        public boolean peek(String... patterns) {
-            if (!has(patterns.length - 1)) {
+        public boolean peek(int mask) {
+            return has(0) && CharClass.is(source.charAt(index), mask);
+        }
+
+        /**
+         * Returns true if the next two characters belong to their respective
+         * {@link CharClass} masks.
+         */
+        public boolean peek(int first, int second) {
+            if (!has(0) || !CharClass.is(source.charAt(index), first)) {
                 return false;
             }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var character = input.charAt(index + offset);
-                if (!String.valueOf(character).matches(patterns[offset])) {
-                    return false;
-                }
+            var next = index + source.width(index);
+            return available(next) && CharClass.is(source.charAt(next), second);
+        }
+
+        /**
+         * Returns true if the next character is exactly the given character.
+         */
+        public boolean peek(char c) {
+            return has(0) && source.charAt(index) == c;
+        }
+
+        /**
+         * Returns true if the next two characters are exactly the given
+         * characters, e.g. {@code peek('/', '/')}.
+         */
+        public boolean peek(char first, char second) {
+            if (!has(0) || source.charAt(index) != first) {
+                return false;
             }
-            return true;
+            var next = index + source.width(index);
+            return available(next) && source.charAt(next) == second;
         }
 
         /**
          * Equivalent to peek, but also advances the character stream.
          */
-        public boolean match(String... patterns) {
-            var peek = peek(patterns);
-            if (peek) {
-                index += patterns.length;
-                length += patterns.length;
+        public boolean match(int mask) {
+            return peek(mask) && advance(1);
+        }
+
+        public boolean match(int first, int second) {
+            return peek(first, second) && advance(2);
+        }
+
+        public boolean match(char c) {
+            return peek(c) && advance(1);
+        }
+
+        /**
+         * Unconditionally advances past the next character.
+         */
+        public void advance() {
+            advance(1);
+        }
+
+        private boolean advance(int count) {
+            for (int i = 0; i < count; i++) {
+                var width = source.width(index);
+                index += width;
+                length += width;
             }
-            return peek;
+            return true;
+        }
+
+        /**
+         * Advances past all whitespace, equivalent to
+         * {@code while (match(CharClass.WHITESPACE)) {}} but allowing the
+         * source to scan in bulk, and records the line starts within it.
+         */
+        public void skipWhitespace(LineTable lines) {
+            skipTo(source.skipWhitespace(index, end, lines));
+        }
+
+        /**
+         * Advances to the next line terminator or the end of input.
+         */
+        public void skipLine() {
+            skipTo(source.skipLine(index, end));
+        }
+
+        private void skipTo(int next) {
+            length += next - index;
+            index = next;
+        }
+
+        /**
+         * Returns the index where the current literal started.
+         */
+        public int start() {
+            return index - length;
+        }
+
+        /**
+         * Discards all characters matched since the last call to emit(),
+         * equivalent to emit() without creating the literal.
+         */
+        public void discard() {
+            length = 0;
+            source.release(index);
         }
 
         /**
@@ -229,8 +431,9 @@ public final class Lexer {
          * call to emit(); also resetting the length for subsequent tokens.
          */
         public String emit() {
-            var literal = input.substring(index - length, index);
+            var literal = source.substring(index - length, index);
             length = 0;
+            source.release(index);
             return literal;
         }
 
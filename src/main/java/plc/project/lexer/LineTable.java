@@ -0,0 +1,163 @@
+package plc.project.lexer;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which each line of the source starts, recorded by the lexer
+ * while skipping whitespace so positions can be mapped to a line and column
+ * without re-reading the source. Only the starts after the first line are
+ * stored (the first line always starts at 0), so a source without newlines
+ * has an empty table.
+ *
+ * <p>A line ends at {@code \n}, {@code \r\n}, or a lone {@code \r}. Since
+ * strings, characters, and comments cannot contain a line terminator, these
+ * only ever occur in whitespace. Offsets are indices into the source, and
+ * hence byte offsets for {@link Lexer#Lexer(java.nio.ByteBuffer)}.
+ *
+ * <p>When edited by {@link IncrementalLexer}, the starts are kept as a gap
+ * buffer: the free capacity is a gap at the last edit, and the starts after
+ * it are stored without the shift of the edits since they were moved there.
+ * The shift is added when reading them, so an edit costs the distance from
+ * the previous edit rather than the number of lines after it.
+ */
+public final class LineTable {
+
+    private int[] starts = new int[16];
+    private int size = 0;
+    private int gap = 0; //index of the first start after the gap
+    private int shift = 0; //added to the starts after the gap
+
+    LineTable() {}
+
+    /**
+     * Records a line starting at the given offset, which must be after all
+     * previously recorded lines.
+     */
+    void add(int start) {
+        Preconditions.checkArgument(size == 0 || start > at(size - 1));
+        move(size);
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+        }
+        starts[size++] = start;
+        gap = size;
+    }
+
+    /**
+     * Appends the line starts of the other table in the range
+     * {@code (after, until]}, adding shift to each.
+     */
+    void addRange(LineTable other, int after, int until, int shift) {
+        for (int i = other.count(after); i < other.count(until); i++) {
+            add(other.at(i) + shift);
+        }
+    }
+
+    /**
+     * Replaces the line starts in the range {@code (after, until]} with all
+     * starts of the other table (which are offsets in the edited source), and
+     * shifts the starts after until by shift.
+     */
+    void replace(int after, int until, LineTable other, int shift) {
+        var from = count(after);
+        var to = count(until);
+        move(from);
+        size -= to - from;
+        if (starts.length - size < other.size) {
+            grow(other.size);
+        }
+        for (int i = 0; i < other.size; i++) {
+            starts[gap + i] = other.at(i);
+        }
+        gap += other.size;
+        size += other.size;
+        this.shift += shift;
+    }
+
+    /**
+     * Returns the number of lines, which is always at least 1.
+     */
+    public int lineCount() {
+        return size + 1;
+    }
+
+    /**
+     * Returns the offset at which the given (1-based) line starts.
+     */
+    public int lineStart(int line) {
+        Preconditions.checkElementIndex(line - 1, size + 1);
+        return line == 1 ? 0 : at(line - 2);
+    }
+
+    /**
+     * Returns the (1-based) line containing the given offset.
+     */
+    public int line(int offset) {
+        return count(offset) + 1;
+    }
+
+    /**
+     * Returns the (1-based) column of the given offset within its line.
+     */
+    public int column(int offset) {
+        return offset - lineStart(line(offset)) + 1;
+    }
+
+    /**
+     * Returns the start at the given index, skipping the gap.
+     */
+    private int at(int index) {
+        return index < gap ? starts[index] : starts[index + starts.length - size] + shift;
+    }
+
+    /**
+     * Moves the gap to the given index, updating the starts moved across it.
+     */
+    private void move(int index) {
+        var after = starts.length - size + index;
+        if (index < gap) {
+            System.arraycopy(starts, index, starts, after, gap - index);
+            for (int i = after; i < after + gap - index; i++) {
+                starts[i] -= shift;
+            }
+        } else if (index > gap) {
+            System.arraycopy(starts, gap + starts.length - size, starts, gap, index - gap);
+            for (int i = gap; i < index; i++) {
+                starts[i] += shift;
+            }
+        }
+        gap = index;
+    }
+
+    /**
+     * Grows the array to fit at least count more starts, keeping the starts
+     * after the gap at the end.
+     */
+    private void grow(int count) {
+        var grown = new int[Math.max(starts.length * 2, size + count)];
+        var after = size - gap;
+        System.arraycopy(starts, 0, grown, 0, gap);
+        System.arraycopy(starts, starts.length - after, grown, grown.length - after, after);
+        starts = grown;
+    }
+
+    /**
+     * Returns the number of recorded line starts at or before the offset.
+     */
+    private int count(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (at(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
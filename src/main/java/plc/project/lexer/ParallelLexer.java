@@ -0,0 +1,90 @@
+package plc.project.lexer;
+
+import org.jspecify.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lexes large inputs by splitting them into chunks that are lexed
+ * concurrently and then stitched into a single {@link TokenBuffer}, with the
+ * same result as {@link Lexer#lexBuffer()}.
+ *
+ * <p>Chunks are split after a newline, which is always a token boundary:
+ * strings and characters cannot contain a raw newline (the lexer rejects
+ * them), and comments end at the first newline. The pre-scan for a safe split
+ * point is therefore just a search for the next {@code '\n'}, and each chunk
+ * starts in the same state the sequential lexer would be in at that point.
+ */
+public final class ParallelLexer {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private record Chunk(
+        @Nullable TokenBuffer tokens,
+        @Nullable LexException exception
+    ) {}
+
+    private ParallelLexer() {}
+
+    public static TokenBuffer lex(String input, ForkJoinPool pool) throws LexException {
+        return lex(new CharSource.OfString(input), input.length(), CHUNK_SIZE, pool);
+    }
+
+    /**
+     * Lexes UTF-8 encoded bytes as with {@link Lexer#Lexer(ByteBuffer)}, e.g.
+     * from {@link java.nio.channels.FileChannel#map}.
+     */
+    public static TokenBuffer lex(ByteBuffer input, ForkJoinPool pool) throws LexException {
+        return lex(new CharSource.OfBytes(input), input.limit(), CHUNK_SIZE, pool);
+    }
+
+    /**
+     * Lexes the source in chunks of at least the given size, using up to four
+     * chunks per thread so uneven chunks are balanced across the pool. If any
+     * chunk fails, the exception from the earliest failing chunk is thrown,
+     * which is the same one sequential lexing would have encountered.
+     */
+    static TokenBuffer lex(CharSource source, int length, int chunkSize, ForkJoinPool pool) throws LexException {
+        var target = Math.max(chunkSize, length / (pool.getParallelism() * 4) + 1);
+        var tasks = new ArrayList<Callable<Chunk>>();
+        int start = 0;
+        while (start < length) {
+            var end = Math.min(start + target, length);
+            while (end < length && source.charAt(end - 1) != '\n') {
+                end++;
+            }
+            var lexer = new Lexer(source, start, end);
+            tasks.add(() -> {
+                try {
+                    return new Chunk(lexer.lexBuffer(), null);
+                } catch (LexException e) {
+                    return new Chunk(null, e);
+                }
+            });
+            start = end;
+        }
+        var tokens = new TokenBuffer(source);
+        for (var future : pool.invokeAll(tasks)) {
+            Chunk chunk;
+            try {
+                chunk = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            var exception = chunk.exception();
+            if (exception != null) {
+                throw exception;
+            }
+            tokens.addAll(chunk.tokens());
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,16 @@
+package plc.project.lexer;
+
+/**
+ * The source offsets {@code [start, end)} covered by a token or AST node,
+ * which can be mapped to lines/columns via {@link LineTable}.
+ */
+public record Span(
+    int start,
+    int end
+) {
+
+    public int length() {
+        return end - start;
+    }
+
+}
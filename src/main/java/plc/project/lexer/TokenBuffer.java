@@ -0,0 +1,291 @@
+package plc.project.lexer;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact alternative to {@code List<Token>}, storing tokens as parallel
+ * arrays of types and {@code [start, end)} offsets into the source. Literals
+ * are only created when requested via {@link #literal} or {@link #get}, and
+ * {@link #literalEquals} compares against the source directly, so lexing into
+ * a buffer allocates no per-token objects.
+ *
+ * <p>Each token also records its {@link TokenKind}, and keyword/operator
+ * literals are returned as the interned {@link TokenKind#literal()}.
+ *
+ * <p>The {@link LineTable} of the source is kept alongside the tokens, so a
+ * token's {@link #span} can be mapped to a line and column.
+ *
+ * <p>A buffer is edited in place by {@link IncrementalLexer}. Like the line
+ * table, the tokens are then kept as a gap buffer with the free capacity at
+ * the last edit, and the offsets of the tokens after the gap are stored
+ * without the shift of the edits since, which is added when reading them.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private CharSource source;
+    private final LineTable lines;
+    private byte[] types = new byte[64];
+    private byte[] kinds = new byte[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size = 0;
+    private int gap = 0; //index of the first token after the gap
+    private int shift = 0; //added to the offsets of tokens after the gap
+
+    TokenBuffer(CharSource source) {
+        this(source, new LineTable());
+    }
+
+    TokenBuffer(CharSource source, LineTable lines) {
+        this.source = source;
+        this.lines = lines;
+    }
+
+    /**
+     * Creates a buffer containing the given tokens, for use with APIs that
+     * accept a {@link TokenBuffer}.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        var builder = new StringBuilder();
+        for (var token : tokens) {
+            builder.append(token.literal());
+        }
+        var buffer = new TokenBuffer(new CharSource.OfString(builder.toString()));
+        int offset = 0;
+        for (var token : tokens) {
+            buffer.add(token.type(), offset, offset + token.literal().length());
+            offset += token.literal().length();
+        }
+        return buffer;
+    }
+
+    void add(Token.Type type, int start, int end) {
+        move(size);
+        if (size == types.length) {
+            grow(1);
+        }
+        types[size] = (byte) type.ordinal();
+        kinds[size] = (byte) TokenKind.of(type, source, start, end).ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+        gap = size;
+    }
+
+    /**
+     * Appends all tokens and lines of the other buffer, which must be over the
+     * same source and follow this buffer's tokens.
+     */
+    void addAll(TokenBuffer other) {
+        Preconditions.checkArgument(other.source == source);
+        other.move(other.size);
+        move(size);
+        if (types.length - size < other.size) {
+            grow(other.size);
+        }
+        copy(other, 0, size);
+        size += other.size;
+        gap = size;
+        lines.addRange(other.lines, -1, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Replaces the tokens {@code [from, to)} with the tokens of the other
+     * buffer from index first (which must be over the edited source), and
+     * shifts the offsets of the tokens after them by shift. This moves the
+     * gap to from, so the cost is the distance from the previous edit plus
+     * the number of tokens inserted.
+     */
+    void replace(int from, int to, TokenBuffer other, int first, int shift) {
+        Preconditions.checkPositionIndexes(from, to, size);
+        Preconditions.checkArgument(other.source == source);
+        other.move(other.size);
+        move(from);
+        size -= to - from;
+        var count = other.size - first;
+        if (types.length - size < count) {
+            grow(count);
+        }
+        copy(other, first, gap);
+        gap += count;
+        size += count;
+        this.shift += shift;
+    }
+
+    /**
+     * Removes all tokens after the first size tokens.
+     */
+    void truncate(int size) {
+        Preconditions.checkArgument(size <= this.size);
+        move(this.size);
+        this.size = size;
+        gap = size;
+    }
+
+    /**
+     * Removes the first count tokens, e.g. those already consumed by a parser,
+     * so a buffer filled incrementally via {@link Lexer#lexNext} stays small.
+     * Remaining tokens are shifted to the start of the buffer.
+     */
+    public void discard(int count) {
+        Preconditions.checkPositionIndex(count, size);
+        move(size);
+        System.arraycopy(types, count, types, 0, size - count);
+        System.arraycopy(kinds, count, kinds, 0, size - count);
+        System.arraycopy(starts, count, starts, 0, size - count);
+        System.arraycopy(ends, count, ends, 0, size - count);
+        size -= count;
+        gap = size;
+    }
+
+    CharSource source() {
+        return source;
+    }
+
+    /**
+     * Returns the source to be edited in place, which replaces a String
+     * source with a gap buffer of its characters on the first edit.
+     */
+    CharSource.OfGapBuffer editableSource() {
+        if (source instanceof CharSource.OfString string) {
+            source = new CharSource.OfGapBuffer(string.input());
+        }
+        Preconditions.checkArgument(source instanceof CharSource.OfGapBuffer, "Only String sources can be edited.");
+        return (CharSource.OfGapBuffer) source;
+    }
+
+    public LineTable lines() {
+        return lines;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type type(int index) {
+        return TYPES[types[physical(index)]];
+    }
+
+    public TokenKind kind(int index) {
+        return TokenKind.of(kinds[physical(index)]);
+    }
+
+    /**
+     * Returns the source offset of the first character of the token.
+     */
+    public int start(int index) {
+        return index < gap ? starts[index] : starts[physical(index)] + shift;
+    }
+
+    /**
+     * Returns the source offset after the last character of the token.
+     */
+    public int end(int index) {
+        return index < gap ? ends[index] : ends[physical(index)] + shift;
+    }
+
+    public Span span(int index) {
+        return new Span(start(index), end(index));
+    }
+
+    public String literal(int index) {
+        var kind = kinds[physical(index)];
+        return kind != 0
+            ? TokenKind.of(kind).literal()
+            : source.substring(start(index), end(index));
+    }
+
+    public boolean literalEquals(int index, String literal) {
+        return source.regionMatches(start(index), end(index), literal);
+    }
+
+    public Token get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return new Token(type(index), literal(index));
+    }
+
+    public List<Token> toList() {
+        var tokens = new ArrayList<Token>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the array index of the token at index, skipping the gap.
+     */
+    private int physical(int index) {
+        return index < gap ? index : index + types.length - size;
+    }
+
+    /**
+     * Moves the gap to the given index, updating the offsets of the tokens
+     * moved across it.
+     */
+    private void move(int index) {
+        if (index == gap) {
+            return;
+        }
+        var from = index < gap ? index : gap + types.length - size;
+        var to = index < gap ? index + types.length - size : gap;
+        var count = Math.abs(index - gap);
+        System.arraycopy(types, from, types, to, count);
+        System.arraycopy(kinds, from, kinds, to, count);
+        System.arraycopy(starts, from, starts, to, count);
+        System.arraycopy(ends, from, ends, to, count);
+        var delta = index < gap ? -shift : shift;
+        for (int i = to; i < to + count; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+        gap = index;
+    }
+
+    /**
+     * Grows the arrays to fit at least count more tokens, keeping the tokens
+     * after the gap at the end.
+     */
+    private void grow(int count) {
+        var capacity = types.length;
+        while (capacity < size + count) {
+            capacity *= 2;
+        }
+        var after = size - gap;
+        types = grow(types, capacity, after);
+        kinds = grow(kinds, capacity, after);
+        starts = grow(starts, capacity, after);
+        ends = grow(ends, capacity, after);
+    }
+
+    private byte[] grow(byte[] array, int capacity, int after) {
+        var grown = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, array.length - after, grown, capacity - after, after);
+        return grown;
+    }
+
+    private int[] grow(int[] array, int capacity, int after) {
+        var grown = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, array.length - after, grown, capacity - after, after);
+        return grown;
+    }
+
+    /**
+     * Copies the tokens of the other buffer from index first, which must
+     * have no gap, to the given array index.
+     */
+    private void copy(TokenBuffer other, int first, int index) {
+        var count = other.size - first;
+        System.arraycopy(other.types, first, types, index, count);
+        System.arraycopy(other.kinds, first, kinds, index, count);
+        System.arraycopy(other.starts, first, starts, index, count);
+        System.arraycopy(other.ends, first, ends, index, count);
+    }
+
+}
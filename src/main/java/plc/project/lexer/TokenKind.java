@@ -0,0 +1,136 @@
+package plc.project.lexer;
+
+/**
+ * Identifies keyword and operator tokens used by the grammar, allowing the
+ * parser to compare tokens by reference instead of by literal. Kinds are
+ * recognized once per token when the token is added to a {@link TokenBuffer};
+ * all other tokens (including identifiers that aren't keywords and literals)
+ * have the kind {@link #NONE}.
+ */
+public enum TokenKind {
+
+    NONE(""),
+
+    LET("LET"),
+    DEF("DEF"),
+    IF("IF"),
+    DO("DO"),
+    ELSE("ELSE"),
+    END("END"),
+    FOR("FOR"),
+    IN("IN"),
+    RETURN("RETURN"),
+    NIL("NIL"),
+    TRUE("TRUE"),
+    FALSE("FALSE"),
+    OBJECT("OBJECT"),
+    AND("AND"),
+    OR("OR"),
+
+    LEFT_PAREN("("),
+    RIGHT_PAREN(")"),
+    COMMA(","),
+    SEMICOLON(";"),
+    COLON(":"),
+    EQUALS("="),
+    DOT("."),
+    PLUS("+"),
+    MINUS("-"),
+    STAR("*"),
+    SLASH("/"),
+    LESS("<"),
+    LESS_EQUAL("<="),
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    EQUAL_EQUAL("=="),
+    NOT_EQUAL("!=");
+
+    private static final TokenKind[] KINDS = values();
+
+    private final String literal;
+
+    TokenKind(String literal) {
+        this.literal = literal;
+    }
+
+    /**
+     * Returns the (interned) literal of this kind.
+     */
+    public String literal() {
+        return literal;
+    }
+
+    static TokenKind of(int ordinal) {
+        return KINDS[ordinal];
+    }
+
+    /**
+     * Returns the kind of a token with the given type and literal.
+     */
+    public static TokenKind of(Token.Type type, String literal) {
+        return of(type, new CharSource.OfString(literal), 0, literal.length());
+    }
+
+    /**
+     * Returns the kind of the token in the range {@code [start, end)}. The
+     * candidate is selected by length and first character (which is unique
+     * except for IF/IN) and then verified against the source, so recognizing
+     * a token costs at most one comparison against a single literal.
+     */
+    static TokenKind of(Token.Type type, CharSource source, int start, int end) {
+        if (type != Token.Type.IDENTIFIER && type != Token.Type.OPERATOR) {
+            return NONE;
+        }
+        var candidate = switch (end - start) {
+            case 1 -> switch (source.charAt(start)) {
+                case '(' -> LEFT_PAREN;
+                case ')' -> RIGHT_PAREN;
+                case ',' -> COMMA;
+                case ';' -> SEMICOLON;
+                case ':' -> COLON;
+                case '=' -> EQUALS;
+                case '.' -> DOT;
+                case '+' -> PLUS;
+                case '-' -> MINUS;
+                case '*' -> STAR;
+                case '/' -> SLASH;
+                case '<' -> LESS;
+                case '>' -> GREATER;
+                default -> NONE;
+            };
+            case 2 -> switch (source.charAt(start)) {
+                case 'I' -> source.charAt(start + 1) == 'F' ? IF : IN;
+                case 'D' -> DO;
+                case 'O' -> OR;
+                case '<' -> LESS_EQUAL;
+                case '>' -> GREATER_EQUAL;
+                case '=' -> EQUAL_EQUAL;
+                case '!' -> NOT_EQUAL;
+                default -> NONE;
+            };
+            case 3 -> switch (source.charAt(start)) {
+                case 'L' -> LET;
+                case 'D' -> DEF;
+                case 'E' -> END;
+                case 'F' -> FOR;
+                case 'N' -> NIL;
+                case 'A' -> AND;
+                default -> NONE;
+            };
+            case 4 -> switch (source.charAt(start)) {
+                case 'E' -> ELSE;
+                case 'T' -> TRUE;
+                default -> NONE;
+            };
+            case 5 -> source.charAt(start) == 'F' ? FALSE : NONE;
+            case 6 -> switch (source.charAt(start)) {
+                case 'R' -> RETURN;
+                case 'O' -> OBJECT;
+                default -> NONE;
+            };
+            default -> NONE;
+        };
+        return candidate != NONE && source.regionMatches(start, end, candidate.literal) ? candidate : NONE;
+    }
+
+}
@@ -0,0 +1,91 @@
+package plc.project.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Vectorized scanning for {@link CharSource.OfBytes}, comparing a full vector
+ * of bytes (16-64 depending on the platform) per iteration. Both methods stop
+ * at the last full vector before end, leaving the remainder to the scalar
+ * loop of the caller.
+ *
+ * <p>This class uses the incubating {@code jdk.incubator.vector} module and
+ * must only be loaded if that module is present.
+ */
+final class VectorScan {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorScan() {}
+
+    /**
+     * Returns the index of the first non-whitespace byte, or the index after
+     * the last full vector before end. Line starts are added to lines from
+     * the terminators in the skipped bytes, found from the same comparisons.
+     */
+    static int skipWhitespace(MemorySegment segment, int index, int end, LineTable lines) {
+        while (index + SPECIES.length() <= end) {
+            var vector = ByteVector.fromMemorySegment(SPECIES, segment, index, ByteOrder.nativeOrder());
+            VectorMask<Byte> newline = vector.eq((byte) '\n');
+            VectorMask<Byte> carriage = vector.eq((byte) '\r');
+            VectorMask<Byte> whitespace = newline.or(carriage)
+                .or(vector.eq((byte) ' '))
+                .or(vector.eq((byte) '\t'))
+                .or(vector.eq((byte) '\b'));
+            var count = whitespace.allTrue() ? SPECIES.length() : whitespace.not().firstTrue();
+            var terminators = newline.or(carriage).toLong();
+            if (count < Long.SIZE) {
+                terminators &= (1L << count) - 1;
+            }
+            if (terminators != 0) {
+                addLines(segment, index, end, newline.toLong(), terminators, lines);
+            }
+            if (count < SPECIES.length()) {
+                return index + count;
+            }
+            index += SPECIES.length();
+        }
+        return index;
+    }
+
+    /**
+     * Adds the line start after each terminator lane, except a {@code \r}
+     * followed by {@code \n} (including as the first byte of the next
+     * vector), which is a single terminator.
+     */
+    private static void addLines(MemorySegment segment, int index, int end, long newlines, long terminators, LineTable lines) {
+        while (terminators != 0) {
+            var lane = Long.numberOfTrailingZeros(terminators);
+            terminators &= terminators - 1;
+            var next = index + lane + 1;
+            var crlf = (newlines & (1L << lane)) == 0 && (lane + 1 < SPECIES.length()
+                ? (newlines & (1L << (lane + 1))) != 0
+                : next < end && segment.get(ValueLayout.JAVA_BYTE, next) == '\n');
+            if (!crlf) {
+                lines.add(next);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first line terminator, or the index after the
+     * last full vector before end.
+     */
+    static int skipLine(MemorySegment segment, int index, int end) {
+        while (index + SPECIES.length() <= end) {
+            var vector = ByteVector.fromMemorySegment(SPECIES, segment, index, ByteOrder.nativeOrder());
+            VectorMask<Byte> terminator = vector.eq((byte) '\n').or(vector.eq((byte) '\r'));
+            if (terminator.anyTrue()) {
+                return index + terminator.firstTrue();
+            }
+            index += SPECIES.length();
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,60 @@
+package plc.project.parser;
+
+import com.google.common.hash.Hashing;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An on-disk cache of parsed programs, so unchanged sources are loaded via
+ * {@link AstCodec} instead of being lexed and parsed again.
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the source, so an edited source
+ * is simply a miss (stale entries are never read, but also never removed).
+ * Entries are written to a temporary file and then moved into place, so
+ * concurrent processes sharing a directory never see a partial entry. The
+ * cache is best-effort: unreadable or invalid entries are treated as misses
+ * and failures to write an entry are ignored.
+ *
+ * <p>Since cached ASTs are not produced by a {@link Parser}, they have no
+ * spans; reparse the source if positions are needed (e.g. for errors).
+ */
+public final class AstCache {
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Ast.Source parse(String input) throws LexException, ParseException {
+        var path = directory.resolve(Hashing.sha256().hashString(input, StandardCharsets.UTF_8) + ".ast");
+        try {
+            return AstCodec.decode(Files.readAllBytes(path));
+        } catch (IOException | IllegalArgumentException ignored) {
+            //miss, or an invalid entry (e.g. from a different format version)
+        }
+        var ast = (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source");
+        write(path, AstCodec.encode(ast));
+        return ast;
+    }
+
+    private void write(Path path, byte[] bytes) {
+        try {
+            Files.createDirectories(directory);
+            var temp = Files.createTempFile(directory, null, ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException ignored) {}
+    }
+
+}
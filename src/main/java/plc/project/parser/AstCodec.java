@@ -0,0 +1,524 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+import org.jspecify.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A compact binary serialization of {@link Ast.Source}, used by
+ * {@link AstCache} to store parsed programs.
+ *
+ * <p>Nodes are written in post-order, so each node follows its children.
+ * A node is written as a tag byte (in the order of {@link Ast.Visitor})
+ * followed by its non-node components: names, the sizes of lists and the
+ * presence of optionals (as varints and bytes), and literals as a second tag
+ * followed by their value ({@link BigInteger}s as two's-complement bytes,
+ * {@link BigDecimal}s as an unscaled value and scale). Strings are
+ * deduplicated, so each distinct identifier/literal is only written once and
+ * later occurrences are a varint reference to its first use.
+ *
+ * <p>Since a node's children are already decoded when its tag is read, both
+ * encoding and decoding use an explicit stack, and nesting depth is limited
+ * only by the heap as for the {@link Parser}.
+ */
+public final class AstCodec {
+
+    private static final byte[] MAGIC = {'P', 'L', 'C', 'A'};
+    private static final int VERSION = 2;
+
+    private static final int SOURCE = 0, LET = 1, DEF = 2, IF = 3, FOR = 4, RETURN = 5, EXPRESSION = 6, ASSIGNMENT = 7;
+    private static final int LITERAL = 8, GROUP = 9, BINARY = 10, VARIABLE = 11, PROPERTY = 12, FUNCTION = 13, METHOD = 14, OBJECT = 15;
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, INTEGER = 3, DECIMAL = 4, CHARACTER = 5, STRING = 6;
+
+    private AstCodec() {}
+
+    public static byte[] encode(Ast.Source ast) {
+        var encoder = new Encoder();
+        encoder.writeBytes(MAGIC);
+        encoder.writeVarInt(VERSION);
+        encoder.write(ast);
+        return Arrays.copyOf(encoder.bytes, encoder.size);
+    }
+
+    /**
+     * Decodes an AST written by {@link #encode}, throwing an
+     * {@link IllegalArgumentException} if the bytes are not a valid encoding
+     * (including those of a different format version).
+     */
+    public static Ast.Source decode(byte[] bytes) {
+        var decoder = new Decoder(bytes);
+        try {
+            for (var b : MAGIC) {
+                Preconditions.checkArgument(decoder.readByte() == b, "Invalid header.");
+            }
+            Preconditions.checkArgument(decoder.readVarInt() == VERSION, "Unsupported version.");
+            while (decoder.index < bytes.length) {
+                decoder.readNode();
+            }
+            Preconditions.checkArgument(decoder.values.size() == 1 && decoder.values.getFirst() instanceof Ast.Source, "Expected source.");
+            return (Ast.Source) decoder.values.getFirst();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid encoding.", e);
+        }
+    }
+
+    /**
+     * Writes the components of a node following its children (see
+     * {@link #write}), so the visit methods only write non-node components.
+     */
+    private static final class Encoder implements Ast.Visitor<@Nullable Void, RuntimeException> {
+
+        private byte[] bytes = new byte[1024];
+        private int size = 0;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        /**
+         * A node on the stack of {@link #write}, which is visited once its
+         * children have been written.
+         */
+        private record Pending(Ast ast, boolean expanded) {}
+
+        private void write(Ast root) {
+            var stack = new ArrayList<Pending>();
+            stack.add(new Pending(root, false));
+            while (!stack.isEmpty()) {
+                var pending = stack.removeLast();
+                if (pending.expanded()) {
+                    visit(pending.ast());
+                } else {
+                    stack.add(new Pending(pending.ast(), true));
+                    var children = children(pending.ast());
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        stack.add(new Pending(children.get(i), false));
+                    }
+                }
+            }
+        }
+
+        private static List<Ast> children(Ast ast) {
+            var children = new ArrayList<Ast>();
+            switch (ast) {
+                case Ast.Source source -> children.addAll(source.statements());
+                case Ast.Stmt.Let stmt -> stmt.value().ifPresent(children::add);
+                case Ast.Stmt.Def stmt -> children.addAll(stmt.body());
+                case Ast.Stmt.If stmt -> {
+                    children.add(stmt.condition());
+                    children.addAll(stmt.thenBody());
+                    children.addAll(stmt.elseBody());
+                }
+                case Ast.Stmt.For stmt -> {
+                    children.add(stmt.expression());
+                    children.addAll(stmt.body());
+                }
+                case Ast.Stmt.Return stmt -> stmt.value().ifPresent(children::add);
+                case Ast.Stmt.Expression stmt -> children.add(stmt.expression());
+                case Ast.Stmt.Assignment stmt -> {
+                    children.add(stmt.expression());
+                    children.add(stmt.value());
+                }
+                case Ast.Expr.Literal _, Ast.Expr.Variable _ -> {}
+                case Ast.Expr.Group expr -> children.add(expr.expression());
+                case Ast.Expr.Binary expr -> {
+                    children.add(expr.left());
+                    children.add(expr.right());
+                }
+                case Ast.Expr.Property expr -> children.add(expr.receiver());
+                case Ast.Expr.Function expr -> children.addAll(expr.arguments());
+                case Ast.Expr.Method expr -> {
+                    children.add(expr.receiver());
+                    children.addAll(expr.arguments());
+                }
+                case Ast.Expr.ObjectExpr expr -> {
+                    children.addAll(expr.fields());
+                    children.addAll(expr.methods());
+                }
+            }
+            return children;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Source ast) {
+            writeByte(SOURCE);
+            writeVarInt(ast.statements().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.Let ast) {
+            writeByte(LET);
+            writeString(ast.name());
+            writeOptionalString(ast.type());
+            writeByte(ast.value().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.Def ast) {
+            writeByte(DEF);
+            writeString(ast.name());
+            writeVarInt(ast.parameters().size());
+            for (int i = 0; i < ast.parameters().size(); i++) {
+                writeString(ast.parameters().get(i));
+                writeOptionalString(ast.parameterTypes().get(i));
+            }
+            writeOptionalString(ast.returnType());
+            writeVarInt(ast.body().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.If ast) {
+            writeByte(IF);
+            writeVarInt(ast.thenBody().size());
+            writeVarInt(ast.elseBody().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.For ast) {
+            writeByte(FOR);
+            writeString(ast.name());
+            writeVarInt(ast.body().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.Return ast) {
+            writeByte(RETURN);
+            writeByte(ast.value().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.Expression ast) {
+            writeByte(EXPRESSION);
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Stmt.Assignment ast) {
+            writeByte(ASSIGNMENT);
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Literal ast) {
+            writeByte(LITERAL);
+            switch (ast.value()) {
+                case null -> writeByte(NIL);
+                case Boolean b -> writeByte(b ? TRUE : FALSE);
+                case BigInteger i -> {
+                    writeByte(INTEGER);
+                    writeBigInteger(i);
+                }
+                case BigDecimal d -> {
+                    writeByte(DECIMAL);
+                    writeBigInteger(d.unscaledValue());
+                    writeVarInt(d.scale());
+                }
+                case Character c -> {
+                    writeByte(CHARACTER);
+                    writeVarInt(c);
+                }
+                case String s -> {
+                    writeByte(STRING);
+                    writeString(s);
+                }
+                default -> throw new IllegalArgumentException("Unsupported literal " + ast.value().getClass());
+            }
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Group ast) {
+            writeByte(GROUP);
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Binary ast) {
+            writeByte(BINARY);
+            writeString(ast.operator());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Variable ast) {
+            writeByte(VARIABLE);
+            writeString(ast.name());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Property ast) {
+            writeByte(PROPERTY);
+            writeString(ast.name());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Function ast) {
+            writeByte(FUNCTION);
+            writeString(ast.name());
+            writeVarInt(ast.arguments().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.Method ast) {
+            writeByte(METHOD);
+            writeString(ast.name());
+            writeVarInt(ast.arguments().size());
+            return null;
+        }
+
+        @Override
+        public @Nullable Void visit(Ast.Expr.ObjectExpr ast) {
+            writeByte(OBJECT);
+            writeOptionalString(ast.name());
+            writeVarInt(ast.fields().size());
+            writeVarInt(ast.methods().size());
+            return null;
+        }
+
+        private void writeOptionalString(Optional<String> string) {
+            writeByte(string.isPresent() ? 1 : 0);
+            string.ifPresent(this::writeString);
+        }
+
+        /**
+         * Writes a reference to a previously written string, or 0 followed by
+         * the string's UTF-8 bytes for its first occurrence.
+         */
+        private void writeString(String string) {
+            var id = strings.get(string);
+            if (id != null) {
+                writeVarInt(id + 1);
+            } else {
+                strings.put(string, strings.size());
+                writeVarInt(0);
+                var utf8 = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(utf8.length);
+                writeBytes(utf8);
+            }
+        }
+
+        private void writeBigInteger(BigInteger integer) {
+            var magnitude = integer.toByteArray();
+            writeVarInt(magnitude.length);
+            writeBytes(magnitude);
+        }
+
+        /**
+         * Writes an int in 7-bit groups, least significant first, with the
+         * high bit set on all but the last byte. Negative values are zigzag
+         * encoded so small magnitudes stay short.
+         */
+        private void writeVarInt(int value) {
+            var zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                writeByte((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            writeByte(zigzag);
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        private void ensure(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+
+    }
+
+    /**
+     * Reads nodes onto a stack of values, where each node replaces its
+     * children (the values on top of the stack) once they are read.
+     */
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private int index = 0;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Ast> values = new ArrayList<>();
+
+        private Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Reads the next node, whose children are popped in reverse order
+         * from the end of the stack.
+         */
+        private void readNode() {
+            values.add(switch (readByte()) {
+                case SOURCE -> new Ast.Source(pop(readVarInt(), Ast.Stmt.class));
+                case LET -> readLet();
+                case DEF -> readDef();
+                case IF -> {
+                    var thenCount = readVarInt();
+                    var elseBody = pop(readVarInt(), Ast.Stmt.class);
+                    var thenBody = pop(thenCount, Ast.Stmt.class);
+                    yield new Ast.Stmt.If(pop(Ast.Expr.class), thenBody, elseBody);
+                }
+                case FOR -> {
+                    var name = readString();
+                    var body = pop(readVarInt(), Ast.Stmt.class);
+                    yield new Ast.Stmt.For(name, pop(Ast.Expr.class), body);
+                }
+                case RETURN -> new Ast.Stmt.Return(popOptional());
+                case EXPRESSION -> new Ast.Stmt.Expression(pop(Ast.Expr.class));
+                case ASSIGNMENT -> {
+                    var value = pop(Ast.Expr.class);
+                    yield new Ast.Stmt.Assignment(pop(Ast.Expr.class), value);
+                }
+                case LITERAL -> new Ast.Expr.Literal(readLiteral());
+                case GROUP -> new Ast.Expr.Group(pop(Ast.Expr.class));
+                case BINARY -> {
+                    var operator = readString();
+                    var right = pop(Ast.Expr.class);
+                    yield new Ast.Expr.Binary(operator, pop(Ast.Expr.class), right);
+                }
+                case VARIABLE -> new Ast.Expr.Variable(readString());
+                case PROPERTY -> new Ast.Expr.Property(pop(Ast.Expr.class), readString());
+                case FUNCTION -> new Ast.Expr.Function(readString(), pop(readVarInt(), Ast.Expr.class));
+                case METHOD -> {
+                    var name = readString();
+                    var arguments = pop(readVarInt(), Ast.Expr.class);
+                    yield new Ast.Expr.Method(pop(Ast.Expr.class), name, arguments);
+                }
+                case OBJECT -> {
+                    var name = readOptional(this::readString);
+                    var fieldCount = readVarInt();
+                    var methods = pop(readVarInt(), Ast.Stmt.Def.class);
+                    yield new Ast.Expr.ObjectExpr(name, pop(fieldCount, Ast.Stmt.Let.class), methods);
+                }
+                default -> throw new IllegalArgumentException("Invalid tag.");
+            });
+        }
+
+        private Ast.Stmt.Let readLet() {
+            var name = readString();
+            var type = readOptional(this::readString);
+            return new Ast.Stmt.Let(name, type, popOptional());
+        }
+
+        private Ast.Stmt.Def readDef() {
+            var name = readString();
+            var count = readVarInt();
+            Preconditions.checkArgument(count >= 0 && count <= bytes.length - index, "Invalid parameter count.");
+            var parameters = new ArrayList<String>(count);
+            var parameterTypes = new ArrayList<Optional<String>>(count);
+            for (int i = 0; i < count; i++) {
+                parameters.add(readString());
+                parameterTypes.add(readOptional(this::readString));
+            }
+            var returnType = readOptional(this::readString);
+            return new Ast.Stmt.Def(name, parameters, parameterTypes, returnType, pop(readVarInt(), Ast.Stmt.class));
+        }
+
+        private @Nullable Object readLiteral() {
+            return switch (readByte()) {
+                case NIL -> null;
+                case TRUE -> Boolean.TRUE;
+                case FALSE -> Boolean.FALSE;
+                case INTEGER -> readBigInteger();
+                case DECIMAL -> new BigDecimal(readBigInteger(), readVarInt());
+                case CHARACTER -> (char) readVarInt();
+                case STRING -> readString();
+                default -> throw new IllegalArgumentException("Invalid literal tag.");
+            };
+        }
+
+        private <T extends Ast> T pop(Class<T> type) {
+            Preconditions.checkArgument(!values.isEmpty(), "Missing node.");
+            var value = values.removeLast();
+            Preconditions.checkArgument(type.isInstance(value), "Expected %s.", type.getSimpleName());
+            return type.cast(value);
+        }
+
+        /**
+         * Pops the last count values, in the order they were read.
+         */
+        private <T extends Ast> List<T> pop(int count, Class<T> type) {
+            Preconditions.checkArgument(count >= 0 && count <= values.size(), "Invalid list size.");
+            var popped = values.subList(values.size() - count, values.size());
+            var list = new ArrayList<T>(count);
+            for (var value : popped) {
+                Preconditions.checkArgument(type.isInstance(value), "Expected %s.", type.getSimpleName());
+                list.add(type.cast(value));
+            }
+            popped.clear();
+            return list;
+        }
+
+        private Optional<Ast.Expr> popOptional() {
+            return readByte() != 0 ? Optional.of(pop(Ast.Expr.class)) : Optional.empty();
+        }
+
+        private <T> Optional<T> readOptional(Supplier<T> reader) {
+            return readByte() != 0 ? Optional.of(reader.get()) : Optional.empty();
+        }
+
+        private String readString() {
+            var id = readVarInt();
+            if (id != 0) {
+                return strings.get(id - 1);
+            }
+            var length = readVarInt();
+            Preconditions.checkArgument(length >= 0 && length <= bytes.length - index, "Invalid string length.");
+            var string = new String(bytes, index, length, StandardCharsets.UTF_8);
+            index += length;
+            strings.add(string);
+            return string;
+        }
+
+        private BigInteger readBigInteger() {
+            var length = readVarInt();
+            Preconditions.checkArgument(length > 0 && length <= bytes.length - index, "Invalid integer length.");
+            var integer = new BigInteger(bytes, index, length);
+            index += length;
+            return integer;
+        }
+
+        private int readVarInt() {
+            int zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                Preconditions.checkArgument(shift < 35, "Invalid varint.");
+                var b = readByte();
+                zigzag |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private int readByte() {
+            return bytes[index++] & 0xFF;
+        }
+
+    }
+
+}
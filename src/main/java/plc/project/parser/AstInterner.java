@@ -0,0 +1,156 @@
+package plc.project.parser;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Interns AST nodes so structurally equal subtrees are shared, which is known
+ * as <em>hash-consing</em>. Generated code repeats the same expressions many
+ * times, so this reduces the memory of the AST and lets caches keyed by node
+ * identity hit for every occurrence. An interner may be shared by several
+ * (non-concurrent) parsers, e.g. to share nodes across the inputs of a REPL.
+ *
+ * <p>Nodes are interned bottom-up as {@link Parser} creates them, so all
+ * children of a node are already interned. Two nodes are then structurally
+ * equal exactly when they have the same type, equal values (such as names
+ * and literals), and identical children. Comparing nodes this way is
+ * shallow, unlike the equals and hashCode of the records, which traverse the
+ * entire subtree (and overflow the stack on deeply nested ASTs).
+ */
+public final class AstInterner {
+
+    private final Map<Key, Ast> nodes = new HashMap<>();
+    private long count = 0;
+
+    /**
+     * Returns the interned node structurally equal to the given node, whose
+     * children must already be interned.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Ast> T intern(T ast) {
+        count++;
+        return (T) nodes.computeIfAbsent(new Key(ast), key -> ast);
+    }
+
+    /**
+     * Returns the number of nodes interned, including duplicates.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of unique nodes.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the deduplication ratio, i.e. the number of nodes interned per
+     * unique node (so 1.0 if there were no duplicates).
+     */
+    public double ratio() {
+        return nodes.isEmpty() ? 1.0 : (double) count / nodes.size();
+    }
+
+    private static final class Key {
+
+        private final Ast ast;
+        private final Object[] components;
+        private final int hash;
+
+        Key(Ast ast) {
+            this.ast = ast;
+            this.components = components(ast);
+            this.hash = 31 * ast.getClass().hashCode() + hash(Arrays.asList(components));
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Key key
+                && ast.getClass() == key.ast.getClass()
+                && same(Arrays.asList(components), Arrays.asList(key.components));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /**
+     * Returns the record components of the node, in order.
+     */
+    private static Object[] components(Ast ast) {
+        return switch (ast) {
+            case Ast.Source source -> new Object[] {source.statements()};
+            case Ast.Stmt.Let stmt -> new Object[] {stmt.name(), stmt.type(), stmt.value()};
+            case Ast.Stmt.Def stmt -> new Object[] {stmt.name(), stmt.parameters(), stmt.parameterTypes(), stmt.returnType(), stmt.body()};
+            case Ast.Stmt.If stmt -> new Object[] {stmt.condition(), stmt.thenBody(), stmt.elseBody()};
+            case Ast.Stmt.For stmt -> new Object[] {stmt.name(), stmt.expression(), stmt.body()};
+            case Ast.Stmt.Return stmt -> new Object[] {stmt.value()};
+            case Ast.Stmt.Expression stmt -> new Object[] {stmt.expression()};
+            case Ast.Stmt.Assignment stmt -> new Object[] {stmt.expression(), stmt.value()};
+            //a null value is stored as Optional.empty() to keep components non-null
+            case Ast.Expr.Literal expr -> new Object[] {Optional.ofNullable(expr.value())};
+            case Ast.Expr.Group expr -> new Object[] {expr.expression()};
+            case Ast.Expr.Binary expr -> new Object[] {expr.operator(), expr.left(), expr.right()};
+            case Ast.Expr.Variable expr -> new Object[] {expr.name()};
+            case Ast.Expr.Property expr -> new Object[] {expr.receiver(), expr.name()};
+            case Ast.Expr.Function expr -> new Object[] {expr.name(), expr.arguments()};
+            case Ast.Expr.Method expr -> new Object[] {expr.receiver(), expr.name(), expr.arguments()};
+            case Ast.Expr.ObjectExpr expr -> new Object[] {expr.name(), expr.fields(), expr.methods()};
+        };
+    }
+
+    /**
+     * Returns true if the components are equal, comparing nodes by identity
+     * and lists and optionals by their elements.
+     */
+    private static boolean same(@Nullable Object first, @Nullable Object second) {
+        if (first instanceof Ast) {
+            return first == second;
+        } else if (first instanceof List<?> list && second instanceof List<?> other) {
+            if (list.size() != other.size()) {
+                return false;
+            }
+            for (int i = 0; i < list.size(); i++) {
+                if (!same(list.get(i), other.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (first instanceof Optional<?> optional && second instanceof Optional<?> other) {
+            return same(optional.orElse(null), other.orElse(null));
+        } else {
+            return first == null ? second == null : first.equals(second);
+        }
+    }
+
+    /**
+     * Returns the hash code of the component consistent with {@link #same}.
+     */
+    private static int hash(@Nullable Object component) {
+        if (component instanceof Ast) {
+            return System.identityHashCode(component);
+        } else if (component instanceof List<?> list) {
+            int hash = 1;
+            for (var element : list) {
+                hash = 31 * hash + hash(element);
+            }
+            return hash;
+        } else if (component instanceof Optional<?> optional) {
+            return hash(optional.orElse(null));
+        } else {
+            return component == null ? 0 : component.hashCode();
+        }
+    }
+
+}
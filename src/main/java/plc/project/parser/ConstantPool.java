@@ -0,0 +1,113 @@
+package plc.project.parser;
+
+import org.jspecify.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonicalizes the values of literals, so a constant repeated throughout a
+ * program is converted once and all of its {@link Ast.Expr.Literal}s share
+ * the same value. Values are keyed by the literal as written (which is
+ * distinct across token types, e.g. only decimals contain a {@code .} and
+ * only characters and strings are quoted), so a hit skips parsing digits and
+ * escapes entirely.
+ *
+ * <p>Small integers are shared by all pools and skip the map as well, with
+ * literals of up to 18 digits (which always fit in a long) parsed directly
+ * instead of via {@link BigInteger#BigInteger(String)}. Later phases use the
+ * same table via {@link #integer(long)}, and can cache anything derived from
+ * a literal value by identity (such as the generated Java source).
+ */
+public final class ConstantPool {
+
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 1024;
+    private static final BigInteger[] SMALL = new BigInteger[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        for (int i = 0; i < SMALL.length; i++) {
+            SMALL[i] = BigInteger.valueOf(i + SMALL_MIN);
+        }
+    }
+
+    private final Map<String, Object> literals = new HashMap<>();
+
+    /**
+     * Returns the integer with the given value, which is shared for small
+     * values.
+     */
+    public static BigInteger integer(long value) {
+        return value >= SMALL_MIN && value <= SMALL_MAX
+            ? SMALL[(int) value - SMALL_MIN]
+            : BigInteger.valueOf(value);
+    }
+
+    /**
+     * Returns the value of an integer literal, with an optional sign and
+     * exponent, which must have an exact integer value.
+     *
+     * @throws NumberFormatException if the literal is invalid
+     * @throws ArithmeticException if the exponent results in a fraction
+     */
+    BigInteger integer(String literal) {
+        var start = literal.charAt(0) == '-' || literal.charAt(0) == '+' ? 1 : 0;
+        if (literal.length() - start <= 18 && literal.length() > start) {
+            long value = 0;
+            int i = start;
+            while (i < literal.length() && literal.charAt(i) >= '0' && literal.charAt(i) <= '9') {
+                value = 10 * value + (literal.charAt(i++) - '0');
+            }
+            if (i == literal.length()) {
+                return integer(start == 1 && literal.charAt(0) == '-' ? -value : value);
+            }
+        }
+        var cached = literals.get(literal);
+        if (cached != null) {
+            return (BigInteger) cached;
+        }
+        var value = literal.contains("e") || literal.contains("E")
+            ? new BigDecimal(literal).toBigIntegerExact()
+            : new BigInteger(literal);
+        if (value.bitLength() < 32) {
+            value = integer(value.intValue());
+        }
+        literals.put(literal, value);
+        return value;
+    }
+
+    /**
+     * Returns the value of a decimal literal.
+     *
+     * @throws NumberFormatException if the literal is invalid
+     */
+    BigDecimal decimal(String literal) {
+        var cached = literals.get(literal);
+        if (cached != null) {
+            return (BigDecimal) cached;
+        }
+        var value = new BigDecimal(literal);
+        literals.put(literal, value);
+        return value;
+    }
+
+    /**
+     * Returns the value of a literal previously added with {@link #add}, or
+     * null if there is none. This is used for characters and strings, whose
+     * escapes are processed by the parser.
+     */
+    @Nullable Object get(String literal) {
+        return literals.get(literal);
+    }
+
+    /**
+     * Adds the value of the literal, returning the value.
+     */
+    <T> T add(String literal, T value) {
+        literals.put(literal, value);
+        return value;
+    }
+
+}
@@ -0,0 +1,123 @@
+package plc.project.parser;
+
+import com.google.common.base.Preconditions;
+import org.jspecify.annotations.Nullable;
+import plc.project.lexer.IncrementalLexer;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Updates the AST of a source after an edit by only reparsing the affected
+ * top-level statements, for use with {@link IncrementalLexer} by editors and
+ * the REPL. Since AST nodes are immutable, all other statements (and hence
+ * all of their subtrees) are shared with the previous AST.
+ *
+ * <p>The parser keeps the index at which each top-level statement ends.
+ * After an edit replacing the tokens {@code [start, oldEnd)}, every
+ * statement ending at or before start is unchanged, as a statement only
+ * depends on its own tokens (the parser never looks past the {@code ;} or
+ * {@code END} ending it). Parsing
+ * restarts at the first statement after these, and stops as
+ * soon as a new statement starts after the edit where a previous statement
+ * started, since all remaining tokens and therefore statements are identical.
+ * An edit within a DEF body therefore reparses only that DEF.
+ *
+ * <p>If parsing fails, the exception is the same as for a full parse of the
+ * new tokens, and the next call reparses everything. The ASTs have no spans.
+ */
+public final class IncrementalParser {
+
+    private @Nullable List<Ast.Stmt> statements;
+    private int[] ends = new int[0];
+
+    /**
+     * Parses all of the tokens, discarding any previous state.
+     */
+    public Ast.Source parse(TokenBuffer tokens) throws ParseException {
+        statements = null;
+        return update(tokens, 0, List.of(), new int[0], 0, 0);
+    }
+
+    /**
+     * Reparses the tokens re-lexed by {@link IncrementalLexer#relex}, which
+     * must be an edit of the tokens last parsed (and so, since the lexer
+     * edits in place, the same buffer).
+     */
+    public Ast.Source reparse(IncrementalLexer.Result edit) throws ParseException {
+        return reparse(edit.tokens(), edit.start(), edit.oldEnd(), edit.newEnd());
+    }
+
+    /**
+     * Reparses the tokens after the previous tokens {@code [start, oldEnd)}
+     * were replaced by the tokens {@code [start, newEnd)}, with all other
+     * tokens unchanged (except for their offsets).
+     */
+    public Ast.Source reparse(TokenBuffer tokens, int start, int oldEnd, int newEnd) throws ParseException {
+        Preconditions.checkArgument(start <= oldEnd && start <= newEnd && newEnd <= tokens.size());
+        if (statements == null) {
+            return parse(tokens);
+        }
+        var previous = statements;
+        var previousEnds = ends;
+        statements = null;
+        int first = 0;
+        while (first < previous.size() && previousEnds[first] <= start) {
+            first++;
+        }
+        return update(tokens, first, previous, previousEnds, oldEnd, newEnd);
+    }
+
+    /**
+     * Parses the statements after the first unchanged ones until reaching a
+     * position after the edit where a previous statement started, from which
+     * on the previous statements are reused.
+     */
+    private Ast.Source update(TokenBuffer tokens, int first, List<Ast.Stmt> previous, int[] previousEnds, int oldEnd, int newEnd) throws ParseException {
+        var shift = newEnd - oldEnd;
+        var statements = new ArrayList<Ast.Stmt>(previous.size() + 1);
+        statements.addAll(previous.subList(0, first));
+        var ends = Arrays.copyOf(previousEnds, Math.max(previous.size(), 16));
+        var parser = new Parser(tokens, start(previousEnds, first), tokens.size());
+        int old = first;
+        while (true) {
+            var position = parser.index();
+            if (position >= newEnd) {
+                while (old < previous.size() && start(previousEnds, old) < position - shift) {
+                    old++;
+                }
+                if (old < previous.size() && start(previousEnds, old) == position - shift) {
+                    var size = statements.size();
+                    statements.addAll(previous.subList(old, previous.size()));
+                    ends = Arrays.copyOf(ends, Math.max(statements.size(), ends.length));
+                    for (int i = old; i < previous.size(); i++) {
+                        ends[size++] = previousEnds[i] + shift;
+                    }
+                    break;
+                }
+            }
+            if (position == tokens.size()) {
+                break;
+            }
+            statements.add(parser.parseNext());
+            if (statements.size() > ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[statements.size() - 1] = parser.index();
+        }
+        this.statements = statements;
+        this.ends = ends;
+        return new Ast.Source(statements);
+    }
+
+    /**
+     * Returns the index of the first token of the statement at index, i.e.
+     * the end of the previous statement.
+     */
+    private static int start(int[] ends, int index) {
+        return index > 0 ? ends[index - 1] : 0;
+    }
+
+}
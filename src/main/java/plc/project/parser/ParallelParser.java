@@ -0,0 +1,114 @@
+package plc.project.parser;
+
+import org.jspecify.annotations.Nullable;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses large sources by splitting the tokens into runs of top-level
+ * statements that are parsed concurrently and then concatenated into a
+ * single {@link Ast.Source}, with the same result as {@link Parser#parse}.
+ *
+ * <p>Every statement ends with a {@code ;} or an {@code END}, and the parser
+ * never looks past that terminator to finish a statement. A run of tokens
+ * that parses as a complete sequence of statements on its own is therefore
+ * parsed the same way in the full source, so the pre-scan only has to find
+ * likely boundaries by balancing {@code DO ... END} blocks (every DEF, IF,
+ * FOR, and OBJECT body starts with {@code DO}). Outside of any block, a
+ * {@code ;} always ends a statement, while an {@code END} may also close an
+ * object within an expression, so it is only a boundary if followed by a
+ * statement keyword. If a boundary was wrong (e.g. the {@code END} in
+ * {@code RETURN OBJECT DO END IF c;}) or the source is invalid, some run
+ * fails to parse, and the whole source is parsed sequentially instead so
+ * errors are reported exactly as before.
+ *
+ * <p>Since runs are parsed by separate parsers, the result has no spans.
+ */
+public final class ParallelParser {
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private ParallelParser() {}
+
+    public static Ast.Source parse(TokenBuffer tokens, ForkJoinPool pool) throws ParseException {
+        return parse(tokens, CHUNK_SIZE, pool);
+    }
+
+    /**
+     * Parses the tokens in runs of at least the given number of tokens (ending
+     * at the next boundary), using up to four runs per thread so uneven runs
+     * are balanced across the pool.
+     */
+    static Ast.Source parse(TokenBuffer tokens, int chunkSize, ForkJoinPool pool) throws ParseException {
+        var target = Math.max(chunkSize, tokens.size() / (pool.getParallelism() * 4) + 1);
+        var tasks = new ArrayList<Callable<Ast.@Nullable Source>>();
+        int start = 0;
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            switch (tokens.kind(i)) {
+                case DO -> depth++;
+                case END -> depth = Math.max(depth - 1, 0);
+                default -> {}
+            }
+            if (i + 1 - start >= target && depth == 0 && isBoundary(tokens, i)) {
+                tasks.add(task(tokens, start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (tasks.isEmpty()) {
+            return (Ast.Source) new Parser(tokens).parse("source");
+        }
+        tasks.add(task(tokens, start, tokens.size()));
+        var statements = new ArrayList<Ast.Stmt>();
+        for (var future : pool.invokeAll(tasks)) {
+            Ast.@Nullable Source source;
+            try {
+                source = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (source == null) {
+                return (Ast.Source) new Parser(tokens).parse("source");
+            }
+            statements.addAll(source.statements());
+        }
+        return new Ast.Source(statements);
+    }
+
+    /**
+     * Returns true if the token at index may end a top-level statement, i.e.
+     * it is a terminator and the next token starts a new statement.
+     */
+    private static boolean isBoundary(TokenBuffer tokens, int index) {
+        if (index + 1 == tokens.size()) {
+            return false;
+        }
+        return switch (tokens.kind(index)) {
+            case SEMICOLON -> true;
+            case END -> switch (tokens.kind(index + 1)) {
+                case LET, DEF, IF, FOR, RETURN -> true;
+                default -> false;
+            };
+            default -> false;
+        };
+    }
+
+    private static Callable<Ast.@Nullable Source> task(TokenBuffer tokens, int from, int to) {
+        var parser = new Parser(tokens, from, to);
+        return () -> {
+            try {
+                return (Ast.Source) parser.parse("source");
+            } catch (ParseException e) {
+                return null;
+            }
+        };
+    }
+
+}
@@ -1,460 +1,1160 @@
 package plc.project.parser;
 
 import com.google.common.base.Preconditions;
+import org.jspecify.annotations.Nullable;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.Span;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+import plc.project.lexer.TokenKind;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
- * This style of parser is called <em>recursive descent</em>. Each rule in our
- * grammar has dedicated function, and references to other rules correspond to
- * calling that function. Recursive rules are therefore supported by actual
- * recursive calls, while operator precedence is encoded via the grammar.
+ * This parser started out as <em>recursive descent</em>, where each rule in
+ * our grammar has a dedicated function and references to other rules
+ * correspond to calling that function. Deeply nested inputs (such as
+ * generated code) would then overflow the call stack, so rules are instead
+ * {@link Frame}s run on an explicit stack by {@link #run}, with each frame
+ * following the structure of the former function. Expressions are parsed by
+ * {@link ExprFrame} with explicit operand and operator stacks, so nesting
+ * depth is only limited by the heap.
  *
  * <p>The parser has a similar architecture to the lexer, just with
  * {@link Token}s instead of characters. As before, {@link TokenStream#peek} and
  * {@link TokenStream#match} help with traversing the token stream. Instead of
  * emitting tokens, you will instead need to extract the literal value via
  * {@link TokenStream#get} to be added to the relevant AST.
+ *
+ * <p>With {@link #withSpans()}, the {@link Span} of each AST node is recorded
+ * as it is created and can be looked up via {@link #span(Ast)}. Since AST
+ * nodes are records (and equal nodes may appear at different positions),
+ * spans are kept by identity.
  */
 public final class Parser {
 
+    /**
+     * The precedence of each binary operator by {@link TokenKind#ordinal()},
+     * from logical (lowest) to multiplicative (highest), with 0 for all other
+     * kinds so they always end a binary expression.
+     */
+    private static final int[] PRECEDENCE = new int[TokenKind.values().length];
+
+    static {
+        for (var kind : List.of(TokenKind.AND, TokenKind.OR)) {
+            PRECEDENCE[kind.ordinal()] = 1;
+        }
+        for (var kind : List.of(TokenKind.LESS, TokenKind.LESS_EQUAL, TokenKind.GREATER, TokenKind.GREATER_EQUAL, TokenKind.EQUAL_EQUAL, TokenKind.NOT_EQUAL)) {
+            PRECEDENCE[kind.ordinal()] = 2;
+        }
+        for (var kind : List.of(TokenKind.PLUS, TokenKind.MINUS)) {
+            PRECEDENCE[kind.ordinal()] = 3;
+        }
+        for (var kind : List.of(TokenKind.STAR, TokenKind.SLASH)) {
+            PRECEDENCE[kind.ordinal()] = 4;
+        }
+    }
+
     private final TokenStream tokens;
+    private @Nullable Map<Ast, Span> spans = null;
+    private final @Nullable AstInterner interner;
+    private final ConstantPool constants = new ConstantPool();
+
+    //The operand and operator stacks of all ExprFrames, see ExprFrame.
+    private Ast.@Nullable Expr[] operands = new Ast.Expr[16];
+    private int[] operandStarts = new int[16];
+    private int operandCount = 0;
+    private TokenKind[] operators = new TokenKind[16];
+    private int operatorCount = 0;
+    private final List<Call> calls = new ArrayList<>();
+
+    //The errors so far when recovering, see parseWithRecovery.
+    private @Nullable List<ParseException> errors;
+    private int lastError = -1;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(TokenBuffer.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream(tokens, null, 0, tokens.size());
+        this.interner = null;
+    }
+
+    /**
+     * Creates a parser that interns all nodes it creates with the given
+     * interner, so structurally equal subtrees are shared. Since a shared
+     * node occurs at several positions, this does not record spans.
+     */
+    public Parser(TokenBuffer tokens, AstInterner interner) {
+        this.tokens = new TokenStream(tokens, null, 0, tokens.size());
+        this.interner = interner;
+    }
+
+    /**
+     * Creates a parser for only the tokens in the range {@code [from, to)},
+     * as if the buffer ended at to, which does not record spans. This is used
+     * by {@link ParallelParser} and {@link IncrementalParser}, which combine
+     * the results of several parsers.
+     */
+    Parser(TokenBuffer tokens, int from, int to) {
+        Preconditions.checkPositionIndexes(from, to, tokens.size());
+        this.tokens = new TokenStream(tokens, null, from, to);
+        this.interner = null;
+    }
+
+    /**
+     * Creates a parser that pulls tokens from the lexer on demand instead of
+     * lexing the entire input first, so only a small window of tokens is held
+     * at any time and parsing starts immediately. If lexing fails, parse
+     * throws a {@link ParseException} with the {@link LexException} as its
+     * cause.
+     */
+    public Parser(Lexer lexer) {
+        var buffer = lexer.newBuffer();
+        this.tokens = new TokenStream(buffer, lexer, 0, buffer.size());
+        this.interner = null;
+    }
+
+    /**
+     * Records the span of every node this parser creates, for
+     * {@link #span(Ast)}. This costs a map entry per node, so it is off
+     * unless enabled, and is not supported when interning.
+     */
+    public Parser withSpans() {
+        Preconditions.checkState(interner == null, "Spans are not recorded when interning.");
+        //Each node consumes at least one token (except the source itself),
+        //so this avoids rehashing the spans as the AST grows.
+        spans = tokens.lexer == null
+            ? new IdentityHashMap<>(tokens.limit - tokens.index + 1)
+            : new IdentityHashMap<>();
+        return this;
     }
 
     public Ast parse(String rule) throws ParseException {
-        var ast = switch (rule) {
-            case "source" -> parseSource();
-            case "stmt" -> parseStmt();
-            case "expr" -> parseExpr();
-            default -> throw new AssertionError(rule);
-        };
-        if (tokens.has(0)) {
-            throw new ParseException("Expected end of input.", tokens.getNext());
+        try {
+            var ast = switch (rule) {
+                case "source" -> run(new SourceFrame());
+                case "stmt" -> run(stmt());
+                case "expr" -> run(new ExprFrame());
+                default -> throw new AssertionError(rule);
+            };
+            if (tokens.has(0)) {
+                throw new ParseException("Expected end of input.", tokens.getNext());
+            }
+            return ast;
+        } catch (LexFailure e) {
+            var exception = new ParseException(e.getCause().getMessage(), Optional.empty());
+            exception.initCause(e.getCause());
+            throw exception;
+        }
+    }
+
+    /**
+     * The result of {@link #parseWithRecovery()}, with all errors in the order
+     * they were found.
+     */
+    public record Recovery(Ast.Source source, List<ParseException> errors) {}
+
+    /**
+     * Parses a source like {@code parse("source")}, but instead of throwing
+     * the first error, records it and continues parsing to find all errors in
+     * a single pass. The statement containing an error is dropped, so the
+     * resulting source contains every statement that parsed successfully
+     * (including the rest of a block containing an error).
+     *
+     * <p>After an error, parsing continues with the innermost block (or the
+     * source) whose body was being parsed, after skipping tokens until the
+     * next statement: past a {@code ;}, before a statement keyword, or before
+     * an {@code END} (or {@code ELSE}) closing that block. Tokens within
+     * {@code DO ... END} are skipped entirely, including the rest of an
+     * object the error occurred in. Some errors may still cause others, e.g.
+     * a missing {@code DO} leaves its {@code END} to close the enclosing
+     * block. Lexing errors when lexing on demand cannot be recovered from, so
+     * they end parsing with the statements so far.
+     */
+    public Recovery parseWithRecovery() {
+        var errors = new ArrayList<ParseException>();
+        this.errors = errors;
+        lastError = -1;
+        //the frame reads the first token, which may itself fail to lex
+        SourceFrame root = null;
+        try {
+            root = new SourceFrame();
+            return new Recovery((Ast.Source) run(root), errors);
+        } catch (ParseException e) {
+            throw new AssertionError(e); //all errors are recovered from
+        } catch (LexFailure e) {
+            var exception = new ParseException(e.getCause().getMessage(), Optional.empty());
+            exception.initCause(e.getCause());
+            errors.add(exception);
+            return new Recovery(new Ast.Source(root != null ? root.statements : List.of()), errors);
+        } finally {
+            this.errors = null;
+        }
+    }
+
+    /**
+     * Returns the span of a node created by this parser, i.e. from the start
+     * of its first token to the end of its last, or empty if spans are not
+     * being recorded (see {@link #withSpans()}).
+     */
+    public Optional<Span> span(Ast ast) {
+        return spans != null ? Optional.ofNullable(spans.get(ast)) : Optional.empty();
+    }
+
+    /**
+     * Returns the offset of the next token, or the end of input if there are
+     * no more tokens. After a {@link ParseException}, this is the position of
+     * the error (which may have no token to report).
+     */
+    public int offset() {
+        return tokens.position();
+    }
+
+    /**
+     * Parses the next statement without requiring the end of input, for
+     * {@link IncrementalParser}.
+     */
+    Ast.Stmt parseNext() throws ParseException {
+        return (Ast.Stmt) run(stmt());
+    }
+
+    /**
+     * Returns the index of the next token in the buffer, which is only
+     * meaningful when not lexing on demand.
+     */
+    int index() {
+        return tokens.index;
+    }
+
+    /**
+     * Called for every node created, which records its span from start to
+     * the last token (if recording spans) or returns the interned node (if
+     * interning).
+     */
+    private <T extends Ast> T span(int start, T ast) {
+        if (interner != null) {
+            return interner.intern(ast);
+        }
+        if (spans != null) {
+            spans.put(ast, tokens.span(start));
         }
         return ast;
     }
 
-    private Ast.Source parseSource() throws ParseException {
-        var statements = new ArrayList<Ast.Stmt>();
+    /**
+     * Parses a rule by running frames on an explicit stack instead of the
+     * call stack, so nesting depth is only limited by the heap. When a frame
+     * needs a nested rule, it returns that rule's frame, which is run to
+     * completion before the outer frame is resumed with its result.
+     */
+    private Ast run(Frame root) throws ParseException {
+        operandCount = 0;
+        operatorCount = 0;
+        calls.clear();
+        var frames = new ArrayList<Frame>();
+        var frame = root;
+        @Nullable Ast child = null;
+        while (true) {
+            @Nullable Frame nested;
+            try {
+                nested = frame.resume(child);
+            } catch (ParseException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                frame = recover(e, frames, frame);
+                child = null;
+                continue;
+            }
+            if (nested != null) {
+                frames.add(frame);
+                frame = nested;
+                child = null;
+            } else if (frames.isEmpty()) {
+                return frame.result();
+            } else {
+                child = frame.result();
+                frame = frames.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Records the error in the given frame and returns the innermost block
+     * parsing its body (see {@link #parseWithRecovery()}), discarding all
+     * frames within it and skipping to the next statement.
+     */
+    private BlockFrame recover(ParseException error, List<Frame> frames, Frame frame) {
+        //If the last error was at the same position, the block failed again
+        //without making progress (e.g. a missing END at the end of input), so
+        //it is discarded too and the repeated error is not recorded.
+        var discard = tokens.position() == lastError;
+        if (!discard) {
+            Preconditions.checkNotNull(errors).add(error);
+        }
+        lastError = tokens.position();
+        int depth = 0;
+        while (!frames.isEmpty() && (!(frame instanceof BlockFrame block && block.body()) || discard)) {
+            if (frame instanceof BlockFrame block && block.body()) {
+                discard = false;
+                depth++;
+            } else if (frame instanceof ObjectFrame && frame.state > 0) {
+                depth++;
+            }
+            frame = frames.removeLast();
+        }
+        var block = (BlockFrame) frame;
+        if (discard && tokens.has(0)) {
+            tokens.advance(1);
+        }
+        Arrays.fill(operands, block.operandCount, operandCount, null);
+        operandCount = block.operandCount;
+        operatorCount = block.operatorCount;
+        calls.subList(block.callCount, calls.size()).clear();
         while (tokens.has(0)) {
-            statements.add(parseStmt());
+            switch (tokens.kind(0)) {
+                case LET, DEF, IF, FOR, RETURN -> {
+                    if (depth == 0) {
+                        return block;
+                    }
+                }
+                case SEMICOLON -> {
+                    if (depth == 0) {
+                        tokens.advance(1);
+                        return block;
+                    }
+                }
+                case ELSE -> {
+                    if (depth == 0 && block instanceof IfFrame && block.state == 2) {
+                        return block;
+                    }
+                }
+                case DO -> depth++;
+                case END -> {
+                    if (depth == 0 && !(block instanceof SourceFrame)) {
+                        return block;
+                    } else if (depth > 0 && --depth == 0) {
+                        tokens.advance(1);
+                        tokens.match(TokenKind.SEMICOLON);
+                        return block;
+                    }
+                }
+                default -> {}
+            }
+            tokens.advance(1);
         }
-        return new Ast.Source(statements);
+        return block;
     }
 
-    private Ast.Stmt parseStmt() throws ParseException {
-        if (tokens.peek("LET")) {
-            return parseLetStmt();
+    /**
+     * Returns the frame for the statement starting at the next token.
+     */
+    private Frame stmt() {
+        if (tokens.peek(TokenKind.LET)) {
+            return new LetFrame();
         }
-        else if (tokens.peek("DEF")) {
-            return parseDefStmt();
+        else if (tokens.peek(TokenKind.DEF)) {
+            return new DefFrame();
         }
-        else if (tokens.peek("IF")) {
-            return parseIfStmt();
+        else if (tokens.peek(TokenKind.IF)) {
+            return new IfFrame();
         }
-        else if (tokens.peek("FOR")) {
-            return parseForStmt();
+        else if (tokens.peek(TokenKind.FOR)) {
+            return new ForFrame();
         }
-        else if (tokens.peek("RETURN")) {
-            return parseReturnStmt();
+        else if (tokens.peek(TokenKind.RETURN)) {
+            return new ReturnFrame();
         }
         else {
-            return parseExpressionOrAssignmentStmt();
+            return new ExpressionOrAssignmentFrame();
         }
-
     }
 
-    private Ast.Stmt parseLetStmt() throws ParseException {
-        if (!tokens.match("LET")) {
+    /**
+     * Parses the statement starting at the next token directly and adds it to
+     * the statements if possible (see {@link Frame#complete()}), otherwise
+     * returning its frame.
+     */
+    private @Nullable Frame stmt(List<Ast.Stmt> statements) throws ParseException {
+        var frame = stmt();
+        if (frame instanceof BlockFrame || !frame.complete()) {
+            return frame;
+        }
+        statements.add((Ast.Stmt) frame.result());
+        return null;
+    }
 
-            throw new ParseException("invalid LET", tokens.getNext());
-        }
-        if (!tokens.peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("invalid identifier.", tokens.getNext());
-        }
+    /**
+     * A rule in the middle of being parsed, which is the explicit-stack
+     * equivalent of a recursive descent parse method. Frames keep a state to
+     * know where to continue after a nested rule, like a return address.
+     */
+    private abstract class Frame {
 
-        String name = tokens.get(0).literal();
-        tokens.match(Token.Type.IDENTIFIER);
+        final int start = tokens.position();
+        int state = 0;
+        @Nullable Ast result;
+        private @Nullable Frame pending;
 
-        Optional<String> type = Optional.empty();
-        Optional<Ast.Expr> val = Optional.empty();
+        /**
+         * Continues parsing with the result of the last nested rule (or null
+         * when first run), returning the frame of the next nested rule to
+         * parse or null once the result is set.
+         */
+        abstract @Nullable Frame step(@Nullable Ast child) throws ParseException;
 
-        if (tokens.match(":")) {
-            if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                throw new ParseException("invalid type", tokens.getNext());
+        final @Nullable Frame resume(@Nullable Ast child) throws ParseException {
+            if (pending != null) {
+                var nested = pending;
+                pending = null;
+                return nested;
             }
-            type = Optional.of(tokens.get(0).literal());
-            tokens.match(Token.Type.IDENTIFIER);
+            return step(child);
         }
 
-        if (tokens.match("=")) {
-            val = Optional.of(parseExpr());
+        /**
+         * Starts parsing from the enclosing frame instead of the explicit
+         * stack, returning true if the rule completed without a nested frame.
+         * Otherwise, the enclosing frame must return this frame, which then
+         * continues with the pending nested frame.
+         *
+         * <p>Most rules complete directly, which avoids the overhead of the
+         * explicit stack for them. This is only used for frames that do not
+         * contain statements (i.e. not a {@link BlockFrame}) and objects are
+         * always nested frames, so the call stack depth remains bounded.
+         */
+        final boolean complete() throws ParseException {
+            pending = step(null);
+            return pending == null;
         }
 
-        if (!tokens.match(";")) {
-            throw new ParseException("invalid ;", tokens.getNext());
+        final Ast result() {
+            return Preconditions.checkNotNull(result);
         }
 
-        return new Ast.Stmt.Let(name, type, val);
     }
 
-    private Ast.Stmt parseDefStmt() throws ParseException {
-        if (!tokens.match("DEF")) {
+    /**
+     * A frame for the source or a statement containing statements, which is
+     * always run on the explicit stack.
+     */
+    private abstract class BlockFrame extends Frame {
 
-            throw new ParseException("invalid DEF", tokens.getNext());
-        }
-        if (!tokens.peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("invalid identifier.", tokens.getNext());
-        }
+        //The stacks at the start of the block, to restore after an error.
+        final int operandCount = Parser.this.operandCount;
+        final int operatorCount = Parser.this.operatorCount;
+        final int callCount = calls.size();
 
-        String name = tokens.get(0).literal();
-        tokens.match(Token.Type.IDENTIFIER);
+        /**
+         * Returns true if the frame is parsing its body, in which case it can
+         * continue with the next statement after an error. It is then resumed
+         * without a child.
+         */
+        abstract boolean body();
 
-        if (!tokens.match("(")) {
-            throw new ParseException("invalid (", tokens.getNext());
-        }
+    }
 
-        List<String> parameter = new ArrayList<>();
-        List<Optional<String>> parameterTypes = new ArrayList<>();
+    private final class SourceFrame extends BlockFrame {
 
-        if (!tokens.peek(")")) {
-            if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                throw new ParseException("invalid parameter", tokens.getNext());
+        private final List<Ast.Stmt> statements = new ArrayList<>();
+
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            if (child != null) {
+                statements.add((Ast.Stmt) child);
             }
-            String paramName = tokens.get(0).literal();
-            tokens.match(Token.Type.IDENTIFIER);
-            
-            Optional<String> paramType = Optional.empty();
-            if (tokens.match(":")) {
-                if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                    throw new ParseException("invalid parameter type", tokens.getNext());
+            while (tokens.has(0)) {
+                var nested = stmt(statements);
+                if (nested != null) {
+                    return nested;
                 }
-                paramType = Optional.of(tokens.get(0).literal());
-                tokens.match(Token.Type.IDENTIFIER);
             }
-            
-            parameter.add(paramName);
-            parameterTypes.add(paramType);
+            result = span(start, new Ast.Source(statements));
+            return null;
+        }
 
-            while (tokens.match(",")) {
+        @Override
+        boolean body() {
+            return true;
+        }
+
+    }
+
+    private final class LetFrame extends Frame {
+
+        private @Nullable String name;
+        private Optional<String> type = Optional.empty();
+
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            if (state == 0) {
+                if (!tokens.match(TokenKind.LET)) {
+
+                    throw new ParseException("invalid LET", tokens.getNext());
+                }
                 if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                    throw new ParseException("invalid parameter", tokens.getNext());
+                    throw new ParseException("invalid identifier.", tokens.getNext());
                 }
-                paramName = tokens.get(0).literal();
+
+                name = tokens.literal(0);
                 tokens.match(Token.Type.IDENTIFIER);
-                
-                paramType = Optional.empty();
-                if (tokens.match(":")) {
+
+                if (tokens.match(TokenKind.COLON)) {
                     if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                        throw new ParseException("invalid parameter type", tokens.getNext());
+                        throw new ParseException("invalid type", tokens.getNext());
                     }
-                    paramType = Optional.of(tokens.get(0).literal());
+                    type = Optional.of(tokens.literal(0));
                     tokens.match(Token.Type.IDENTIFIER);
                 }
-                
-                parameter.add(paramName);
-                parameterTypes.add(paramType);
+
+                if (tokens.match(TokenKind.EQUALS)) {
+                    state = 1;
+                    var expr = new ExprFrame();
+                    if (!expr.complete()) {
+                        return expr;
+                    }
+                    child = expr.result();
+                }
             }
-        }
-        if (!tokens.match(")")) {
-            throw new ParseException("invalid )", tokens.getNext());
-        }
-        
-        Optional<String> returnType = Optional.empty();
-        if (tokens.match(":")) {
-            if (!tokens.peek(Token.Type.IDENTIFIER)) {
-                throw new ParseException("invalid return type", tokens.getNext());
+            Optional<Ast.Expr> val = Optional.ofNullable((Ast.Expr) child);
+
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw new ParseException("invalid ;", tokens.getNext());
             }
-            returnType = Optional.of(tokens.get(0).literal());
-            tokens.match(Token.Type.IDENTIFIER);
-        }
-        
-        if (!tokens.match("DO")) {
-            throw new  ParseException("invalid DO", tokens.getNext());
-        }
-        List<Ast.Stmt> l = new ArrayList<>();
-        while (tokens.has(0) && !tokens.peek("END")) {
-            l.add(parseStmt());
-        }
-        if (!tokens.match("END")) {
-            throw new ParseException("invalid END", tokens.getNext());
-        }
-        return new Ast.Stmt.Def(name, parameter, parameterTypes, returnType, l);
 
+            result = span(start, new Ast.Stmt.Let(Preconditions.checkNotNull(name), type, val));
+            return null;
+        }
 
     }
 
-    private Ast.Stmt parseIfStmt() throws ParseException {
-        if (!tokens.match("IF")) {
-            throw new ParseException("invalid IF", tokens.getNext());
+    private final class DefFrame extends BlockFrame {
+
+        private @Nullable String name;
+        private final List<String> parameter = new ArrayList<>();
+        private final List<Optional<String>> parameterTypes = new ArrayList<>();
+        private Optional<String> returnType = Optional.empty();
+        private final List<Ast.Stmt> l = new ArrayList<>();
+
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            if (state == 0) {
+                header();
+                state = 1;
+            } else if (child != null) {
+                l.add((Ast.Stmt) child);
+            }
+            while (tokens.has(0) && !tokens.peek(TokenKind.END)) {
+                var nested = stmt(l);
+                if (nested != null) {
+                    return nested;
+                }
+            }
+            if (!tokens.match(TokenKind.END)) {
+                throw new ParseException("invalid END", tokens.getNext());
+            }
+            result = span(start, new Ast.Stmt.Def(Preconditions.checkNotNull(name), parameter, parameterTypes, returnType, l));
+            return null;
         }
 
-        Ast.Expr cond = parseExpr();
-
-        if (!tokens.match("DO")) {
-            throw new ParseException("invalid DO", tokens.getNext());
+        @Override
+        boolean body() {
+            return state == 1;
         }
 
-        List<Ast.Stmt> l = new ArrayList<>();
+        private void header() throws ParseException {
+            if (!tokens.match(TokenKind.DEF)) {
 
-        while (tokens.has(0) && !tokens.peek("ELSE") && !tokens.peek("END")) {
-            l.add(parseStmt());
-        }
+                throw new ParseException("invalid DEF", tokens.getNext());
+            }
+            if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                throw new ParseException("invalid identifier.", tokens.getNext());
+            }
+
+            name = tokens.literal(0);
+            tokens.match(Token.Type.IDENTIFIER);
 
-        List<Ast.Stmt> l2 = new ArrayList<>();
-        if (tokens.match("ELSE")) {
-            while (tokens.has(0) && !tokens.peek("END")) {
-                l2.add(parseStmt());
+            if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                throw new ParseException("invalid (", tokens.getNext());
             }
-        }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("invalid END", tokens.getNext());
-        }
-        return new Ast.Stmt.If(cond, l, l2);
+            if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                parameter();
+                while (tokens.match(TokenKind.COMMA)) {
+                    parameter();
+                }
+            }
+            if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                throw new ParseException("invalid )", tokens.getNext());
+            }
 
-    }
+            if (tokens.match(TokenKind.COLON)) {
+                if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("invalid return type", tokens.getNext());
+                }
+                returnType = Optional.of(tokens.literal(0));
+                tokens.match(Token.Type.IDENTIFIER);
+            }
 
-    private Ast.Stmt parseForStmt() throws ParseException {
-        if (!tokens.match("FOR")) {
-            throw new ParseException("invalid FOR", tokens.getNext());
-        }
-        if (!tokens.peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("invalid identifier", tokens.getNext());
+            if (!tokens.match(TokenKind.DO)) {
+                throw new  ParseException("invalid DO", tokens.getNext());
+            }
         }
-        String name = tokens.get(0).literal();
-        tokens.match(Token.Type.IDENTIFIER);
 
-        if (!tokens.match("IN")) {
-            throw new ParseException("invalid IN", tokens.getNext());
-        }
+        private void parameter() throws ParseException {
+            if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                throw new ParseException("invalid parameter", tokens.getNext());
+            }
+            String paramName = tokens.literal(0);
+            tokens.match(Token.Type.IDENTIFIER);
 
-        Ast.Expr exp = parseExpr();
+            Optional<String> paramType = Optional.empty();
+            if (tokens.match(TokenKind.COLON)) {
+                if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("invalid parameter type", tokens.getNext());
+                }
+                paramType = Optional.of(tokens.literal(0));
+                tokens.match(Token.Type.IDENTIFIER);
+            }
 
-        if (!tokens.match("DO")) {
-            throw new ParseException("invalid DO", tokens.getNext());
-        }
-        List<Ast.Stmt> l = new ArrayList<>();
-        while (tokens.has(0) && !tokens.peek("END")) {
-            l.add(parseStmt());
-        }
-        if (!tokens.match("END")) {
-            throw new ParseException("invalid END", tokens.getNext());
+            parameter.add(paramName);
+            parameterTypes.add(paramType);
         }
 
-        return new Ast.Stmt.For(name, exp, l);
     }
 
-    private Ast.Stmt parseReturnStmt() throws ParseException {
-        if (!tokens.match("RETURN")) {
-            throw new  ParseException("invalid RETURN", tokens.getNext());
-        }
-        Optional<Ast.Expr> val = Optional.empty();
+    private final class IfFrame extends BlockFrame {
+
+        private Ast.@Nullable Expr cond;
+        private final List<Ast.Stmt> l = new ArrayList<>();
+        private final List<Ast.Stmt> l2 = new ArrayList<>();
 
-        if (!tokens.peek("IF") && !tokens.peek(";")) {
-            val = Optional.of(parseExpr());
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            switch (state) {
+                case 0 -> {
+                    if (!tokens.match(TokenKind.IF)) {
+                        throw new ParseException("invalid IF", tokens.getNext());
+                    }
+                    state = 1;
+                    var expr = new ExprFrame();
+                    if (!expr.complete()) {
+                        return expr;
+                    }
+                    child = expr.result();
+                }
+                case 2 -> {
+                    if (child != null) {
+                        l.add((Ast.Stmt) child);
+                    }
+                }
+                case 3 -> {
+                    if (child != null) {
+                        l2.add((Ast.Stmt) child);
+                    }
+                }
+                default -> {}
+            }
+            if (state == 1) {
+                cond = (Ast.Expr) child;
+                if (!tokens.match(TokenKind.DO)) {
+                    throw new ParseException("invalid DO", tokens.getNext());
+                }
+                state = 2;
+            }
+            if (state == 2) {
+                while (tokens.has(0) && !tokens.peek(TokenKind.ELSE) && !tokens.peek(TokenKind.END)) {
+                    var nested = stmt(l);
+                    if (nested != null) {
+                        return nested;
+                    }
+                }
+                if (!tokens.match(TokenKind.ELSE)) {
+                    return end();
+                }
+                state = 3;
+            }
+            while (tokens.has(0) && !tokens.peek(TokenKind.END)) {
+                var nested = stmt(l2);
+                if (nested != null) {
+                    return nested;
+                }
+            }
+            return end();
         }
-        if (tokens.match("IF")) {
-            Ast.Expr cond = parseExpr();
-            if (!tokens.match(";")) {
-                throw new ParseException("invalid ;", tokens.getNext());
+
+        private @Nullable Frame end() throws ParseException {
+            if (!tokens.match(TokenKind.END)) {
+                throw new ParseException("invalid END", tokens.getNext());
             }
-            return new Ast.Stmt.If(cond, List.of(new Ast.Stmt.Return(val)), List.of());
+            result = span(start, new Ast.Stmt.If(Preconditions.checkNotNull(cond), l, l2));
+            return null;
         }
-        if (!tokens.match(";")) {
-            throw new ParseException("invalid ;", tokens.getNext());
+
+        @Override
+        boolean body() {
+            return state >= 2;
         }
-        return new Ast.Stmt.Return(val);
 
     }
 
-    private Ast.Stmt parseExpressionOrAssignmentStmt() throws ParseException {
-        Ast.Expr l = parseExpr();
+    private final class ForFrame extends BlockFrame {
 
-        Ast.Stmt result;
+        private @Nullable String name;
+        private Ast.@Nullable Expr exp;
+        private final List<Ast.Stmt> l = new ArrayList<>();
 
-        if (tokens.match("=")) {
-            Ast.Expr r = parseExpr();
-            result = new Ast.Stmt.Assignment(l, r);
-        }
-        else {
-            result = new Ast.Stmt.Expression(l);
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            switch (state) {
+                case 0 -> {
+                    if (!tokens.match(TokenKind.FOR)) {
+                        throw new ParseException("invalid FOR", tokens.getNext());
+                    }
+                    if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                        throw new ParseException("invalid identifier", tokens.getNext());
+                    }
+                    name = tokens.literal(0);
+                    tokens.match(Token.Type.IDENTIFIER);
+
+                    if (!tokens.match(TokenKind.IN)) {
+                        throw new ParseException("invalid IN", tokens.getNext());
+                    }
+                    state = 1;
+                    var expr = new ExprFrame();
+                    if (!expr.complete()) {
+                        return expr;
+                    }
+                    child = expr.result();
+                }
+                case 2 -> {
+                    if (child != null) {
+                        l.add((Ast.Stmt) child);
+                    }
+                }
+                default -> {}
+            }
+            if (state == 1) {
+                exp = (Ast.Expr) child;
+                if (!tokens.match(TokenKind.DO)) {
+                    throw new ParseException("invalid DO", tokens.getNext());
+                }
+                state = 2;
+            }
+            while (tokens.has(0) && !tokens.peek(TokenKind.END)) {
+                var nested = stmt(l);
+                if (nested != null) {
+                    return nested;
+                }
+            }
+            if (!tokens.match(TokenKind.END)) {
+                throw new ParseException("invalid END", tokens.getNext());
+            }
+
+            result = span(start, new Ast.Stmt.For(Preconditions.checkNotNull(name), Preconditions.checkNotNull(exp), l));
+            return null;
         }
-        if (!tokens.match(";")) {
-            throw new ParseException("invalid ;", tokens.getNext());
+
+        @Override
+        boolean body() {
+            return state == 2;
         }
-        return result;
-    }
 
-    private Ast.Expr parseExpr() throws ParseException {
-        return parseLogicalExpr();
     }
 
-    private Ast.Expr parseLogicalExpr() throws ParseException {
-        Ast.Expr l = parseComparisonExpr();
-
-        while (tokens.peek("AND") || tokens.peek("OR")) {
-            String o = tokens.get(0).literal();
+    private final class ReturnFrame extends Frame {
 
-            tokens.match(o);
-            Ast.Expr r = parseComparisonExpr();
+        private Optional<Ast.Expr> val = Optional.empty();
 
-            l = new Ast.Expr.Binary(o, l, r);
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            if (state == 0) {
+                if (!tokens.match(TokenKind.RETURN)) {
+                    throw new  ParseException("invalid RETURN", tokens.getNext());
+                }
+                if (!tokens.peek(TokenKind.IF) && !tokens.peek(TokenKind.SEMICOLON)) {
+                    state = 1;
+                    var expr = new ExprFrame();
+                    if (!expr.complete()) {
+                        return expr;
+                    }
+                    child = expr.result();
+                }
+            }
+            if (state == 1) {
+                val = Optional.of((Ast.Expr) Preconditions.checkNotNull(child));
+            }
+            if (state < 2) {
+                if (!tokens.match(TokenKind.IF)) {
+                    if (!tokens.match(TokenKind.SEMICOLON)) {
+                        throw new ParseException("invalid ;", tokens.getNext());
+                    }
+                    result = span(start, new Ast.Stmt.Return(val));
+                    return null;
+                }
+                state = 2;
+                var expr = new ExprFrame();
+                if (!expr.complete()) {
+                    return expr;
+                }
+                child = expr.result();
+            }
+            Ast.Expr cond = (Ast.Expr) Preconditions.checkNotNull(child);
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw new ParseException("invalid ;", tokens.getNext());
+            }
+            var ret = span(start, new Ast.Stmt.Return(val));
+            result = span(start, new Ast.Stmt.If(cond, List.of(ret), List.of()));
+            return null;
         }
-        return l;
 
     }
 
-    private Ast.Expr parseComparisonExpr() throws ParseException {
-        Ast.Expr l = parseAdditiveExpr();
+    private final class ExpressionOrAssignmentFrame extends Frame {
 
-        while (tokens.peek(">") || tokens.peek("<") || tokens.peek(">=") || tokens.peek("<=") || tokens.peek("==") || tokens.peek("!=")) {
-            String o = tokens.get(0).literal();
-            tokens.match(o);
+        private Ast.@Nullable Expr l;
+        private Ast.@Nullable Expr r;
 
-            Ast.Expr r = parseAdditiveExpr();
-            l = new Ast.Expr.Binary(o, l, r);
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            if (state == 0) {
+                state = 1;
+                var expr = new ExprFrame();
+                if (!expr.complete()) {
+                    return expr;
+                }
+                child = expr.result();
+            }
+            if (state == 1) {
+                l = (Ast.Expr) child;
+                if (tokens.match(TokenKind.EQUALS)) {
+                    state = 2;
+                    var expr = new ExprFrame();
+                    if (!expr.complete()) {
+                        return expr;
+                    }
+                    child = expr.result();
+                }
+            }
+            if (state == 2) {
+                r = (Ast.Expr) child;
+            }
+            Ast.Stmt stmt = r != null
+                ? new Ast.Stmt.Assignment(Preconditions.checkNotNull(l), r)
+                : new Ast.Stmt.Expression(Preconditions.checkNotNull(l));
+            if (!tokens.match(TokenKind.SEMICOLON)) {
+                throw new ParseException("invalid ;", tokens.getNext());
+            }
+            result = span(start, stmt);
+            return null;
         }
-        return l;
-    }
 
-    private Ast.Expr parseAdditiveExpr() throws ParseException {
-        Ast.Expr l = parseMultiplicativeExpr();
-        while (tokens.peek("+") || tokens.peek("-")) {
-            String o = tokens.get(0).literal();
-            tokens.match(o);
-            Ast.Expr r = parseMultiplicativeExpr();
-            l = new Ast.Expr.Binary(o, l, r);
-        }
-        return l;
     }
 
-    private Ast.Expr parseMultiplicativeExpr() throws ParseException {
-        Ast.Expr l = parseSecondaryExpr();
+    private final class ObjectFrame extends Frame {
 
-        while (tokens.peek("*") || tokens.peek("/")) {
-            String o = tokens.get(0).literal();
-            tokens.match(o);
-            Ast.Expr r = parseSecondaryExpr();
-            l = new Ast.Expr.Binary(o, l, r);
-        }
-        return l;
-    }
+        private Optional<String> name = Optional.empty();
+        private final List<Ast.Stmt.Let> field = new ArrayList<>();
+        private final List<Ast.Stmt.Def> method = new ArrayList<>();
 
-    private Ast.Expr parseSecondaryExpr() throws ParseException {
-        Ast.Expr expr = parsePrimaryExpr();
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            switch (state) {
+                case 0 -> {
+                    // checkpoint 2
+                    if (!tokens.match(TokenKind.OBJECT)) {
+                        throw new ParseException("invalid OBJECT", tokens.getNext());
+                    }
+
+                    if (tokens.peek(Token.Type.IDENTIFIER) && !tokens.peek(TokenKind.DO)) {
+                        name = Optional.of(tokens.literal(0));
+                        tokens.match(Token.Type.IDENTIFIER);
+                    }
+
+                    if (!tokens.match(TokenKind.DO)) {
+                        throw new ParseException("invalid DO", tokens.getNext());
+                    }
+                    state = 1;
+                }
+                case 1 -> field.add((Ast.Stmt.Let) Preconditions.checkNotNull(child));
+                default -> method.add((Ast.Stmt.Def) Preconditions.checkNotNull(child));
+            }
+            if (state == 1) {
+                while (tokens.peek(TokenKind.LET)) {
+                    var let = new LetFrame();
+                    if (!let.complete()) {
+                        return let;
+                    }
+                    field.add((Ast.Stmt.Let) let.result());
+                }
+                state = 2;
+            }
+            if (tokens.peek(TokenKind.DEF)) {
+                return new DefFrame();
+            }
 
-        while (tokens.peek(".")) {
-            expr = parsePropertyOrMethod(expr);
+            if (!tokens.match(TokenKind.END)) {
+                throw new ParseException("invalid END", tokens.getNext());
+            }
+            result = span(start, new Ast.Expr.ObjectExpr(name, field, method));
+            return null;
         }
 
-        return expr;
     }
 
-    private Ast.Expr parsePropertyOrMethod(Ast.Expr receiver) throws ParseException {
-        if (!tokens.match(".")) {
-            throw new ParseException("Missing .", tokens.getNext());
-        }
-        if (!tokens.peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Missing identifier.", tokens.getNext());
+    /**
+     * Parses an expression with operand and operator stacks (i.e. the
+     * shunting-yard algorithm) instead of a parse method per precedence level
+     * and nested group/argument. The stacks are shared by all expression
+     * frames, with each frame only using the entries above those at its
+     * creation, since a nested expression (in an object) always completes
+     * before the enclosing one continues. The topmost operand is kept in
+     * {@link #operand} rather than on the stack, so an expression without
+     * binary operators or calls (the majority) never uses the stacks.
+     *
+     * <p>Operators are reduced once the next operator has equal or lower
+     * precedence (see {@link #PRECEDENCE}), so all operators are left
+     * associative as in the grammar. An open parenthesis pushes a
+     * {@link Call} with a {@link TokenKind#LEFT_PAREN} operator, which has no
+     * precedence and therefore stops reductions until it is closed.
+     */
+    private final class ExprFrame extends Frame {
+
+        private final int operatorBase = operatorCount;
+        private Ast.@Nullable Expr operand;
+        private int operandStart;
+
+        @Override
+        @Nullable Frame step(@Nullable Ast child) throws ParseException {
+            var expectOperand = child == null;
+            if (child != null) {
+                operand = (Ast.Expr) child;
+            }
+            while (true) {
+                if (expectOperand) {
+                    var start = tokens.position();
+                    if (tokens.match(TokenKind.NIL)) {
+                        operand = span(start, new Ast.Expr.Literal(null));
+                    } else if (tokens.match(TokenKind.TRUE)) {
+                        operand = span(start, new Ast.Expr.Literal(Boolean.TRUE));
+                    } else if (tokens.match(TokenKind.FALSE)) {
+                        operand = span(start, new Ast.Expr.Literal(Boolean.FALSE));
+                    } else if (tokens.peek(Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL) || tokens.peek(Token.Type.CHARACTER)|| tokens.peek(Token.Type.STRING)) {
+                        operand = parseLiteralExpr();
+                    } else if (tokens.match(TokenKind.LEFT_PAREN)) {
+                        open(new Call(start, null, null));
+                        continue;
+                    } else if (tokens.peek(TokenKind.OBJECT)) {
+                        operandStart = start;
+                        return new ObjectFrame();
+                    } else if (tokens.peek(Token.Type.IDENTIFIER)) {
+                        String name = tokens.literal(0);
+                        tokens.match(Token.Type.IDENTIFIER);
+                        if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                            operand = span(start, new Ast.Expr.Variable(name));
+                        } else if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                            open(new Call(start, null, name));
+                            continue;
+                        } else {
+                            tokens.match(TokenKind.RIGHT_PAREN);
+                            operand = span(start, new Ast.Expr.Function(name, new ArrayList<>()));
+                        }
+                    } else {
+                        throw new ParseException("Missing primary expression.", tokens.getNext());
+                    }
+                    operandStart = start;
+                }
+                expectOperand = parsePropertiesAndMethods();
+                if (expectOperand) {
+                    continue;
+                }
+                if (tokens.has(0) && PRECEDENCE[tokens.kind(0).ordinal()] > 0) {
+                    var kind = tokens.kind(0);
+                    reduce(PRECEDENCE[kind.ordinal()]);
+                    pushOperand(operandStart, Preconditions.checkNotNull(operand));
+                    pushOperator(kind);
+                    tokens.match(kind);
+                    expectOperand = true;
+                    continue;
+                }
+                reduce(1);
+                if (operatorCount == operatorBase) {
+                    result = operand;
+                    return null;
+                }
+                expectOperand = close();
+            }
         }
-        String name = tokens.get(0).literal();
 
-        tokens.match(Token.Type.IDENTIFIER);
+        /**
+         * Applies property accesses and method calls to the operand, returning
+         * true if a method call with arguments was opened (and hence an operand
+         * is expected next).
+         */
+        private boolean parsePropertiesAndMethods() throws ParseException {
+            while (tokens.peek(TokenKind.DOT)) {
+                tokens.match(TokenKind.DOT);
+                if (!tokens.peek(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Missing identifier.", tokens.getNext());
+                }
+                String name = tokens.literal(0);
 
-        if (tokens.match("(")) {
-            List<Ast.Expr> a = new ArrayList<>();
-            if (!tokens.peek(")")) {
-                a.add(parseExpr());
+                tokens.match(Token.Type.IDENTIFIER);
 
-                while (tokens.match(",")) {
-                    a.add(parseExpr());
+                var receiver = Preconditions.checkNotNull(operand);
+                if (!tokens.match(TokenKind.LEFT_PAREN)) {
+                    operand = span(operandStart, new Ast.Expr.Property(receiver, name));
+                } else if (!tokens.peek(TokenKind.RIGHT_PAREN)) {
+                    open(new Call(operandStart, receiver, name));
+                    return true;
+                } else {
+                    tokens.match(TokenKind.RIGHT_PAREN);
+                    operand = span(operandStart, new Ast.Expr.Method(receiver, name, new ArrayList<>()));
                 }
             }
-            if (!tokens.match(")")) {
-                throw new ParseException("Missing ).", tokens.getNext());
+            return false;
+        }
+
+        /**
+         * Combines the operand with the operands and operators on top of the
+         * stacks while the operators have at least the given precedence.
+         */
+        private void reduce(int precedence) {
+            while (operatorCount > operatorBase && PRECEDENCE[operators[operatorCount - 1].ordinal()] >= precedence) {
+                var kind = operators[--operatorCount];
+                operandStart = operandStarts[operandCount - 1];
+                operand = span(operandStart, new Ast.Expr.Binary(kind.literal(), popOperand(), Preconditions.checkNotNull(operand)));
             }
-            return new Ast.Expr.Method(receiver, name, a);
         }
-        else {
-            return new Ast.Expr.Property(receiver, name);
+
+        /**
+         * Adds the operand to the open call, then either continues with the
+         * next argument or closes the call, returning true if an operand is
+         * expected next.
+         */
+        private boolean close() throws ParseException {
+            var call = calls.getLast();
+            var argument = Preconditions.checkNotNull(operand);
+            if (call.name == null) {
+                if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                    throw new ParseException("Expected ')'", tokens.getNext());
+                }
+                operand = span(call.start, new Ast.Expr.Group(argument));
+            } else {
+                call.arguments.add(argument);
+                if (tokens.match(TokenKind.COMMA)) {
+                    return true;
+                }
+                if (!tokens.match(TokenKind.RIGHT_PAREN)) {
+                    throw new ParseException(call.receiver == null ? "Missing ')'" : "Missing ).", tokens.getNext());
+                }
+                operand = span(call.start, call.receiver == null
+                    ? new Ast.Expr.Function(call.name, call.arguments)
+                    : new Ast.Expr.Method(call.receiver, call.name, call.arguments));
+            }
+            calls.removeLast();
+            operatorCount--;
+            operandStart = call.start;
+            return false;
         }
+
+        private void open(Call call) {
+            calls.add(call);
+            pushOperator(TokenKind.LEFT_PAREN);
+        }
+
     }
 
-    private Ast.Expr parsePrimaryExpr() throws ParseException {
-        if (tokens.match("NIL")) return new Ast.Expr.Literal(null);
-        if (tokens.match("TRUE")) return new Ast.Expr.Literal(Boolean.TRUE);
-        if (tokens.match("FALSE")) return new Ast.Expr.Literal(Boolean.FALSE);
+    /**
+     * An open group (without a name), function call, or method call (with a
+     * receiver), which is closed by the next unmatched right parenthesis.
+     */
+    private static final class Call {
 
-        if (tokens.peek(Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL) || tokens.peek(Token.Type.CHARACTER)|| tokens.peek(Token.Type.STRING)) {
-            return parseLiteralExpr();
-        }
-        else if (tokens.peek("(")) {
-            return parseGroupExpr();
-        }
+        private final int start;
+        private final Ast.@Nullable Expr receiver;
+        private final @Nullable String name;
+        private final List<Ast.Expr> arguments = new ArrayList<>();
 
-        else if (tokens.peek("OBJECT")) {
-            return parseObjectExpr();
+        private Call(int start, Ast.@Nullable Expr receiver, @Nullable String name) {
+            this.start = start;
+            this.receiver = receiver;
+            this.name = name;
         }
 
-        else if (tokens.peek(Token.Type.IDENTIFIER)) {
-            return parseVariableOrFunctionExpr();
+    }
+
+    private void pushOperand(int start, Ast.Expr operand) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+            operandStarts = Arrays.copyOf(operandStarts, operandCount * 2);
         }
+        operands[operandCount] = operand;
+        operandStarts[operandCount++] = start;
+    }
 
-        throw new ParseException("Missing primary expression.", tokens.getNext());
+    private Ast.Expr popOperand() {
+        var operand = operands[--operandCount];
+        operands[operandCount] = null;
+        return Preconditions.checkNotNull(operand);
+    }
+
+    private void pushOperator(TokenKind kind) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+        }
+        operators[operatorCount++] = kind;
     }
 
     private Ast.Expr parseLiteralExpr() throws ParseException {
-        if (tokens.match("NIL")) {
-            return new Ast.Expr.Literal(null);
+        var start = tokens.position();
+        if (tokens.match(TokenKind.NIL)) {
+            return span(start, new Ast.Expr.Literal(null));
         }
-        else if (tokens.match("TRUE")) {
-            return new  Ast.Expr.Literal(Boolean.TRUE);
+        else if (tokens.match(TokenKind.TRUE)) {
+            return span(start, new Ast.Expr.Literal(Boolean.TRUE));
         }
-        else if (tokens.match("FALSE")) {
-            return new  Ast.Expr.Literal(Boolean.FALSE);
+        else if (tokens.match(TokenKind.FALSE)) {
+            return span(start, new Ast.Expr.Literal(Boolean.FALSE));
         }
 
 
         else if (tokens.peek(Token.Type.INTEGER)) {
-            String l = tokens.get(0).literal();
+            String l = tokens.literal(0);
             tokens.match(Token.Type.INTEGER);
             try {
-                if (l.contains("e") || l.contains("E")) {
-
-                    //  Hint: Maybe there's a way to utilize BigDecimal?
-                    BigDecimal b = new BigDecimal(l);
-
-                    return new Ast.Expr.Literal(b.toBigIntegerExact());
-                }
-                return new Ast.Expr.Literal(new BigInteger(l));
+                return span(start, new Ast.Expr.Literal(constants.integer(l)));
             }
             catch (ArithmeticException  | NumberFormatException err) {
                 throw new ParseException("Invalid integer", tokens.getNext());
             }
         }
         else if (tokens.peek(Token.Type.DECIMAL)) {
-            String l = tokens.get(0).literal();
+            String l = tokens.literal(0);
             tokens.match(Token.Type.DECIMAL);
 
             try {
-                return new  Ast.Expr.Literal(new BigDecimal(l));
+                return span(start, new Ast.Expr.Literal(constants.decimal(l)));
             }
             catch (NumberFormatException err) {
                 throw new ParseException("Invalid decimal", tokens.getNext());
             }
         }
         else if (tokens.peek(Token.Type.CHARACTER)) {
-            String l = tokens.get(0).literal();
+            String l = tokens.literal(0);
             tokens.match(Token.Type.CHARACTER);
+            var cached = constants.get(l);
+            if (cached != null) {
+                return span(start, new Ast.Expr.Literal(cached));
+            }
             String i = l.substring(1, l.length() - 1);
             Character val;
 
@@ -478,13 +1178,17 @@ public final class Parser {
                 if (i.length() != 1) throw new ParseException("Invalid character", tokens.getNext());
                 val = i.charAt(0);
             }
-            return new Ast.Expr.Literal(val);
+            return span(start, new Ast.Expr.Literal(constants.add(l, val)));
 
 
         }
         else if (tokens.peek(Token.Type.STRING)) {
-            String l = tokens.get(0).literal();
+            String l = tokens.literal(0);
             tokens.match(Token.Type.STRING);
+            var cached = constants.get(l);
+            if (cached != null) {
+                return span(start, new Ast.Expr.Literal(cached));
+            }
 
             StringBuilder sb = new StringBuilder();
             for (int i = 1; i < l.length() - 1; i++) {
@@ -511,156 +1215,156 @@ public final class Parser {
                     }
                 }
             }
-            return new Ast.Expr.Literal(sb.toString());
+            return span(start, new Ast.Expr.Literal(constants.add(l, sb.toString())));
         }
         throw new ParseException("Expected literal", tokens.getNext());
     }
 
-    private Ast.Expr parseGroupExpr() throws ParseException {
-        if (!tokens.match("(")) {
-            throw new ParseException("Expected '('", tokens.getNext());
-
-        }
-        Ast.Expr i = parseExpr();
-
+    /**
+     * Carries a {@link LexException} from {@link TokenStream}, which lexes on
+     * demand in every peek/match, out of {@link #parse}.
+     */
+    private static final class LexFailure extends RuntimeException {
 
-        if (!tokens.match(")")) {
-            throw new ParseException("Expected ')'", tokens.getNext());
+        private LexFailure(LexException cause) {
+            super(cause);
         }
-        return new Ast.Expr.Group(i);
-    }
-
-    private Ast.Expr parseObjectExpr() throws ParseException {
 
-        // checkpoint 2
-        if (!tokens.match("OBJECT")) {
-            throw new ParseException("invalid OBJECT", tokens.getNext());
+        @Override
+        public LexException getCause() {
+            return (LexException) super.getCause();
         }
 
-        Optional<String> name = Optional.empty();
-
-        if (tokens.peek(Token.Type.IDENTIFIER) && !tokens.peek("DO")) {
-
+    }
 
-            name = Optional.of(tokens.get(0).literal());
-            tokens.match(Token.Type.IDENTIFIER);
-        }
+    /**
+     * A view of the tokens from the current index onwards. When created with
+     * a lexer, the buffer is filled on demand and consumed tokens are
+     * periodically discarded, so it only holds the lookahead plus at most
+     * {@link #WINDOW} consumed tokens. Otherwise, the stream ends at limit,
+     * which may be before the end of the buffer.
+     */
+    private static final class TokenStream {
 
-        if (!tokens.match("DO")) {
-            throw new ParseException("invalid DO", tokens.getNext());
-        }
+        private static final int WINDOW = 64;
 
-        List<Ast.Stmt.Let> field = new ArrayList<>();
+        private final TokenBuffer tokens;
+        private @Nullable Lexer lexer;
+        private int index;
+        private int limit; //index after the last available token
+        private int end; //end offset of the last consumed token
 
-        List<Ast.Stmt.Def> method = new ArrayList<>();
-        while (tokens.peek("LET")) {
-            Ast.Stmt l = parseLetStmt();
-            field.add((Ast.Stmt.Let) l);
+        private TokenStream(TokenBuffer tokens, @Nullable Lexer lexer, int index, int limit) {
+            this.tokens = tokens;
+            this.lexer = lexer;
+            this.index = index;
+            this.limit = limit;
+            this.end = index > 0 ? tokens.end(index - 1) : 0;
         }
 
-        while (tokens.peek("DEF")) {
-            Ast.Stmt d = parseDefStmt();
-            method.add((Ast.Stmt.Def) d);
+        /**
+         * Returns the offset of the next token, or the end of the last token
+         * if there are no more tokens, for use with {@link #span}.
+         */
+        public int position() {
+            return has(0) ? tokens.start(index) : end;
         }
 
-        if (!tokens.match("END")) {
-            throw new ParseException("invalid END", tokens.getNext());
+        /**
+         * Returns the span from the start position up to the end of the last
+         * consumed token. If no tokens were matched since start, this is an
+         * empty span at start.
+         */
+        public Span span(int start) {
+            return new Span(start, Math.max(start, end));
         }
-        return new Ast.Expr.ObjectExpr(name, field, method);
 
-    }
-
-    private Ast.Expr parseVariableOrFunctionExpr() throws ParseException {
-        if (!tokens.peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Missing IDENTIFIER", tokens.getNext());
+        /**
+         * Returns true if there is a token at (index + offset).
+         */
+        public boolean has(int offset) {
+            return index + offset < limit || fill(offset);
         }
 
-        String name = tokens.get(0).literal();
-        tokens.match(Token.Type.IDENTIFIER);
-
-        if (tokens.match("(")) {
-            List<Ast.Expr> a = new ArrayList<>();
-            if (!tokens.peek(")")) {
-                a.add(parseExpr());
-
-                while (tokens.match(",")) {
-                    a.add(parseExpr());
+        private boolean fill(int offset) {
+            try {
+                while (lexer != null && index + offset >= limit) {
+                    if (index >= WINDOW) {
+                        tokens.discard(index);
+                        index = 0;
+                    }
+                    if (!lexer.lexNext(tokens)) {
+                        lexer = null;
+                    }
+                    limit = tokens.size();
                 }
+            } catch (LexException e) {
+                lexer = null;
+                throw new LexFailure(e);
             }
-            if (!tokens.match(")")) {
-                throw new ParseException("Missing ')'", tokens.getNext());
-            }
-            return new Ast.Expr.Function(name, a);
-
-        }
-        else {
-            return new Ast.Expr.Variable(name);
-        }
-    }
-
-    private static final class TokenStream {
-
-        private final List<Token> tokens;
-        private int index = 0;
-
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+            return index + offset < limit;
         }
 
         /**
-         * Returns true if there is a token at (index + offset).
+         * Returns the literal of the token at (index + offset).
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        public String literal(int offset) {
+            Preconditions.checkState(has(offset));
+            return tokens.literal(index + offset);
         }
 
         /**
-         * Returns the token at (index + offset).
+         * Returns the kind of the token at (index + offset).
          */
-        public Token get(int offset) {
+        public TokenKind kind(int offset) {
             Preconditions.checkState(has(offset));
-            return tokens.get(index + offset);
+            return tokens.kind(index + offset);
         }
 
         /**
          * Returns the next token, if present.
          */
         public Optional<Token> getNext() {
-            return index < tokens.size() ? Optional.of(tokens.get(index)) : Optional.empty();
+            return has(0) ? Optional.of(tokens.get(index)) : Optional.empty();
         }
 
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is either a {@link Token.Type}, matching tokens
-         * of that type, or a {@link String}, matching tokens with that literal.
-         * In effect, {@code new Token(Token.Type.IDENTIFIER, "literal")} is
-         * matched by both {@code peek(Token.Type.IDENTIFIER)} and
-         * {@code peek("literal")}.
+         * Returns true if the next token has the given type, e.g.
+         * {@code peek(Token.Type.IDENTIFIER)}.
+         *
+         * <p>The peek/match methods are called several times per token, so
+         * they are overloaded by pattern rather than taking varargs (which
+         * would allocate an array per call) and only compare the one field
+         * of the pattern. In effect, {@code new Token(Token.Type.IDENTIFIER,
+         * "LET")} is matched by {@code peek(Token.Type.IDENTIFIER)} and
+         * {@code peek(TokenKind.LET)}.
          */
-        public boolean peek(Object... patterns) {
-            if (!has(patterns.length - 1)) {
-                return false;
-            }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var token = tokens.get(index + offset);
-                var pattern = patterns[offset];
-                Preconditions.checkState(pattern instanceof Token.Type || pattern instanceof String, pattern);
-                if (!token.type().equals(pattern) && !token.literal().equals(pattern)) {
-                    return false;
-                }
-            }
-            return true;
+        public boolean peek(Token.Type type) {
+            return has(0) && tokens.type(index) == type;
+        }
+
+        /**
+         * Returns true if the next token is the given keyword/operator.
+         */
+        public boolean peek(TokenKind kind) {
+            return has(0) && tokens.kind(index) == kind;
         }
 
         /**
          * Equivalent to peek, but also advances the token stream.
          */
-        public boolean match(Object... patterns) {
-            var peek = peek(patterns);
-            if (peek) {
-                index += patterns.length;
-            }
-            return peek;
+        public boolean match(Token.Type type) {
+            return peek(type) && advance(1);
+        }
+
+        public boolean match(TokenKind kind) {
+            return peek(kind) && advance(1);
+        }
+
+        private boolean advance(int count) {
+            index += count;
+            end = tokens.end(index - 1);
+            return true;
         }
 
     }
@@ -0,0 +1,235 @@
+package plc.project.evaluator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Randomized differential tests of the execution engines, which must give
+ * the same value (or exception message and ast) and log the same values as
+ * the {@link Evaluator} for generated programs. Programs use objects,
+ * closures, loops, and recursion, and many fail at runtime (e.g. undefined
+ * variables or invalid operands) so error paths are compared as well.
+ *
+ * <p>As with ParserFuzzTests, these are seeded, tagged {@code fuzz}, and run
+ * by {@code ./gradlew fuzz} with {@code -Pfuzz.count} programs.
+ */
+@Tag("fuzz")
+final class EvaluatorFuzzTests {
+
+    private static final int COUNT = Integer.getInteger("plc.fuzz.count", 1000);
+
+    private static final String[] NAMES = {"a", "b", "c", "f", "g", "o", "x"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=", "AND", "OR"};
+    //defines every name (with o an object) so programs don't mostly fail early
+    private static final String PRELUDE = """
+        LET a = 1; LET b = 2; LET c = list(1, 2); LET x = 3;
+        LET o = OBJECT DO LET a = 1; LET b = 2; DEF f(x) DO RETURN x; END DEF g() DO RETURN this.a; END END;
+        DEF f(x) DO RETURN x + 1; END DEF g() DO RETURN 2; END
+        """;
+
+    private interface Engine {
+        RuntimeValue evaluate(Scope scope, Ast.Source ast) throws EvaluateException;
+    }
+
+    private static final List<Map.Entry<String, Engine>> ENGINES = List.of(
+        Map.entry("Resolved", (scope, ast) -> new Evaluator(scope, new Resolver()).visit(ast)),
+        Map.entry("Compiled", (scope, ast) -> new ClosureCompiler().compile(ast).evaluate(scope)),
+        Map.entry("Bytecode", (scope, ast) -> new VirtualMachine(scope).run(new BytecodeCompiler().compile(ast))),
+        Map.entry("Jit", jit(false)),
+        Map.entry("Jit Resolved", jit(true))
+    );
+
+    /**
+     * Evaluates with every supported function compiled on its first call,
+     * which must not fall back to interpreting (as in EvaluatorTests).
+     */
+    private static Engine jit(boolean resolved) {
+        return (scope, ast) -> {
+            var jit = new Jit(0);
+            try {
+                return new Evaluator(scope, resolved ? new Resolver() : null, jit).visit(ast);
+            } finally {
+                for (var def : jit.called()) {
+                    if (Jit.isSupported(def)) {
+                        Assertions.assertTrue(jit.isCompiled(def), "Expected DEF " + def.name() + " to be compiled.");
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    void testEngines() {
+        for (int seed = 0; seed < COUNT; seed++) {
+            var input = new Generator(new Random(seed)).program();
+            Ast.Source ast;
+            try {
+                ast = (Ast.Source) new Parser(new Lexer(input).lexBuffer()).parse("source");
+            } catch (LexException | ParseException e) {
+                throw new AssertionError("Seed " + seed + ":\n" + input, e);
+            }
+            var expected = evaluate(ast, (scope, source) -> new Evaluator(scope).visit(source));
+            for (var engine : ENGINES) {
+                var message = engine.getKey() + ", seed " + seed + ":\n" + input;
+                Assertions.assertEquals(expected, evaluate(ast, engine.getValue()), message);
+            }
+        }
+    }
+
+    /**
+     * The result of an evaluation, with the value or exception and the logged
+     * values as text. An exception's ast is compared by identity, since the
+     * engines must report the same node (not just an equal one).
+     */
+    private record Result(String result, List<String> log) {}
+
+    private static Result evaluate(Ast.Source ast, Engine engine) {
+        var scope = new Scope(Environment.scope());
+        var logged = new ArrayList<String>();
+        scope.define("log", new RuntimeValue.Function("log", arguments -> {
+            if (arguments.size() != 1) {
+                throw new EvaluateException("Expected log to be called with 1 argument.", Optional.empty());
+            }
+            logged.add(show(arguments.getFirst()));
+            return arguments.getFirst();
+        }));
+        try {
+            return new Result(show(engine.evaluate(scope, ast)), logged);
+        } catch (EvaluateException e) {
+            var node = e.getAst().map(a -> a.getClass().getSimpleName() + "@" + System.identityHashCode(a)).orElse("none");
+            return new Result("EvaluateException: " + e.getMessage() + " at " + node, logged);
+        } catch (StackOverflowError e) {
+            //engines overflow at different depths, so the log may differ
+            return new Result("StackOverflowError", List.of());
+        } catch (PatternSyntaxException e) {
+            //an overflow while compiling the pattern in RuntimeValue.print,
+            //when printing a cyclic object
+            Assertions.assertTrue(e.getDescription().startsWith("Stack overflow"), e::getMessage);
+            return new Result("StackOverflowError", List.of());
+        } catch (RuntimeException e) {
+            return new Result(e.getClass().getSimpleName(), logged);
+        }
+    }
+
+    private static String show(RuntimeValue value) {
+        return switch (value) {
+            case RuntimeValue.Primitive primitive when primitive.value() instanceof List<?> list ->
+                list.stream().map(element -> show((RuntimeValue) element)).toList().toString();
+            case RuntimeValue.Primitive primitive -> primitive.value() == null
+                ? "NIL"
+                : primitive.value() + ":" + primitive.value().getClass().getSimpleName();
+            case RuntimeValue.Function function -> "function " + function.name();
+            case RuntimeValue.ObjectValue object -> "object " + object.name().orElse("");
+        };
+    }
+
+    /**
+     * Generates random programs which are syntactically valid (but often
+     * fail at runtime), using only the names defined by {@link #PRELUDE}.
+     */
+    private static final class Generator {
+
+        private final Random random;
+
+        private Generator(Random random) {
+            this.random = random;
+        }
+
+        private String program() {
+            var body = statements(3, 2 + random.nextInt(6));
+            return PRELUDE + (random.nextBoolean()
+                ? "DEF main() DO " + body + "END LET result = main(); log(result); a = a + 1; log(main());"
+                : body);
+        }
+
+        private String statements(int depth, int count) {
+            var builder = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                builder.append(statement(depth));
+            }
+            return builder.toString();
+        }
+
+        private String statement(int depth) {
+            return switch (random.nextInt(depth > 0 ? 9 : 3)) {
+                case 0 -> "LET " + name() + (random.nextInt(4) == 0 ? "" : " = " + expression(2)) + "; ";
+                case 1 -> name() + " = " + expression(2) + "; ";
+                case 2 -> "log(" + expression(2) + "); ";
+                case 3 -> def(depth);
+                case 4 -> "IF " + expression(1) + " DO " + statements(depth - 1, 1 + random.nextInt(2))
+                    + (random.nextBoolean() ? "ELSE " + statements(depth - 1, 1 + random.nextInt(2)) : "") + "END ";
+                case 5 -> "FOR " + name() + " IN " + (random.nextBoolean() ? "range(0, " + random.nextInt(4) + ")" : expression(1))
+                    + " DO " + statements(depth - 1, 1 + random.nextInt(3)) + "END ";
+                case 6 -> "RETURN " + (random.nextBoolean() ? expression(2) : "") + "; ";
+                case 7 -> receiver() + "." + (random.nextInt(3) == 0 ? name() : "a") + " = " + expression(1) + "; ";
+                default -> expression(2) + "; ";
+            };
+        }
+
+        private String def(int depth) {
+            var builder = new StringBuilder("DEF " + name() + "(");
+            for (int i = random.nextInt(3); i > 0; i--) {
+                builder.append(name()).append(i > 1 ? ", " : "");
+            }
+            return builder + ") DO " + statements(depth - 1, 1 + random.nextInt(3)) + "END ";
+        }
+
+        private String expression(int depth) {
+            return switch (random.nextInt(depth > 0 ? 11 : 3)) {
+                case 0 -> List.of("0", "1", "2", "3", "1.5", "\"s\"", "TRUE", "NIL").get(random.nextInt(8));
+                case 1, 2 -> name();
+                case 3, 4 -> expression(depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " " + expression(depth - 1);
+                case 5 -> "(" + expression(depth - 1) + ")";
+                case 6 -> name() + "(" + arguments(depth, random.nextInt(3)) + ")";
+                case 7 -> receiver() + "." + (random.nextBoolean() ? "a" : "b");
+                case 8 -> random.nextBoolean()
+                    ? "o.g()"
+                    : receiver() + "." + (random.nextInt(4) == 0 ? name() : "f") + "(" + arguments(depth, random.nextInt(2)) + ")";
+                case 9 -> random.nextInt(3) == 0 ? object(depth) : "list(" + arguments(depth, 2) + ")";
+                default -> "range(0, " + random.nextInt(3) + ")";
+            };
+        }
+
+        private String object(int depth) {
+            var builder = new StringBuilder("OBJECT DO ");
+            for (int i = random.nextInt(3); i > 0; i--) {
+                builder.append("LET ").append(name()).append(" = ").append(expression(depth - 1)).append("; ");
+            }
+            if (random.nextBoolean()) {
+                builder.append(def(depth - 1));
+            }
+            return builder + "END";
+        }
+
+        private String arguments(int depth, int count) {
+            var builder = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                builder.append(i > 0 ? ", " : "").append(expression(depth - 1));
+            }
+            return builder.toString();
+        }
+
+        private String receiver() {
+            return random.nextInt(4) == 0 ? name() : "o";
+        }
+
+        private String name() {
+            return NAMES[random.nextInt(NAMES.length)];
+        }
+
+    }
+
+}
@@ -263,6 +263,44 @@ final class EvaluatorTests {
                 ))),
                 new Expected.Failure(Optional.of(Ast.Source.class)), //EvaluateException
                 List.of()
+            ),
+            Arguments.of("Inside If",
+                new Input.Program("""
+                    DEF name() DO
+                        RETURN "first" IF TRUE;
+                        log("unreachable");
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive("first")),
+                List.of()
+            ),
+            Arguments.of("Inside For",
+                new Input.Program("""
+                    DEF name() DO
+                        FOR i IN list(1, 2, 3) DO
+                            log(i);
+                            RETURN i IF i == 2;
+                        END
+                        log("unreachable");
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(new BigInteger("2"))),
+                List.of(
+                    new RuntimeValue.Primitive(new BigInteger("1")),
+                    new RuntimeValue.Primitive(new BigInteger("2"))
+                )
+            ),
+            Arguments.of("Outside Function Inside If",
+                new Input.Program("""
+                    IF TRUE DO
+                        RETURN;
+                    END
+                    log("unreachable");
+                    """),
+                new Expected.Failure(Optional.of(Ast.Source.class)), //EvaluateException
+                List.of()
             )
         );
     }
@@ -667,6 +705,238 @@ final class EvaluatorTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testScoping(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log);
+    }
+
+    /**
+     * Cases where the scopes of functions and blocks are observable, which
+     * the frames of {@link Resolver} must also reproduce (see testResolved).
+     */
+    private static Stream<Arguments> testScoping() {
+        return Stream.of(
+            Arguments.of("Shadowed Parameter",
+                new Input.Program("""
+                    DEF name(x) DO
+                        LET x = x + 1;
+                        RETURN x;
+                    END
+                    name(1);
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(new BigInteger("2"))),
+                List.of()
+            ),
+            Arguments.of("Outer Before Local",
+                new Input.Program("""
+                    LET x = 1;
+                    DEF name() DO
+                        log(x);
+                        LET x = 2;
+                        log(x);
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(null)),
+                List.of(
+                    new RuntimeValue.Primitive(new BigInteger("1")),
+                    new RuntimeValue.Primitive(new BigInteger("2"))
+                )
+            ),
+            Arguments.of("Forward Reference",
+                new Input.Program("""
+                    DEF name() DO
+                        DEF even(n) DO
+                            RETURN TRUE IF n == 0;
+                            RETURN odd(n - 1);
+                        END
+                        DEF odd(n) DO
+                            RETURN FALSE IF n == 0;
+                            RETURN even(n - 1);
+                        END
+                        RETURN even(4);
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(true)),
+                List.of()
+            ),
+            Arguments.of("Closure Per Iteration",
+                new Input.Program("""
+                    DEF name() DO
+                        LET first = NIL;
+                        FOR i IN list(1, 2) DO
+                            DEF get() DO
+                                RETURN i;
+                            END
+                            IF i == 1 DO
+                                first = get;
+                            END
+                        END
+                        RETURN first();
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(new BigInteger("1"))),
+                List.of()
+            ),
+            Arguments.of("Object Closure",
+                new Input.Program("""
+                    DEF object() DO
+                        LET x = 1;
+                        LET o = OBJECT DO
+                            LET y = x;
+                        END;
+                        RETURN o.y;
+                    END
+                    DEF name() DO
+                        LET x = 2;
+                        RETURN object();
+                    END
+                    name();
+                    """),
+                new Expected.Success(new RuntimeValue.Primitive(new BigInteger("1"))),
+                List.of()
+            ),
+            Arguments.of("Redefined Local",
+                new Input.Program("""
+                    DEF name() DO
+                        LET x = 1;
+                        LET x = 2;
+                    END
+                    name();
+                    """),
+                new Expected.Failure(Optional.of(Ast.Stmt.Let.class)), //EvaluateException
+                List.of()
+            ),
+            Arguments.of("Block Local",
+                new Input.Program("""
+                    DEF name() DO
+                        IF TRUE DO
+                            LET x = 1;
+                        END
+                        RETURN x;
+                    END
+                    name();
+                    """),
+                new Expected.Failure(Optional.of(Ast.Expr.Variable.class)), //EvaluateException
+                List.of()
+            )
+        );
+    }
+
+    /**
+     * Evaluates all source tests with a {@link Resolver}, which must behave
+     * the same as evaluating with scopes.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testResolved(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log, (scope, ast) -> new Evaluator(scope, new Resolver()).visit(ast));
+    }
+
+    private static Stream<Arguments> testResolved() {
+        return Stream.of(
+            testSource(),
+            testLetStmt(),
+            testDefStmt(),
+            testIfStmt(),
+            testForStmt(),
+            testReturnStmt(),
+            testExpressionStmt(),
+            testAssignmentStmt(),
+            testProgram(),
+            testScoping()
+        ).flatMap(arguments -> arguments);
+    }
+
+    /**
+     * Evaluates all tests with a {@link ClosureCompiler}, which must behave
+     * the same as the evaluator.
+     */
+    @ParameterizedTest
+    @MethodSource("testResolved")
+    void testCompiled(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log, (scope, ast) -> new ClosureCompiler().compile(ast).evaluate(scope));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCompiledExpr(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("expr", input, expected, log, (scope, ast) -> new ClosureCompiler().compile(ast).evaluate(scope));
+    }
+
+    private static Stream<Arguments> testCompiledExpr() {
+        return Stream.of(
+            testLiteralExpr(),
+            testGroupExpr(),
+            testBinaryExpr(),
+            testVariableExpr(),
+            testPropertyExpr(),
+            testFunctionExpr(),
+            testMethodExpr(),
+            testObjectExpr()
+        ).flatMap(arguments -> arguments);
+    }
+
+    /**
+     * Evaluates all tests with a {@link VirtualMachine}, which must behave
+     * the same as the evaluator.
+     */
+    @ParameterizedTest
+    @MethodSource("testResolved")
+    void testVirtualMachine(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log, (scope, ast) -> new VirtualMachine(scope).run(new BytecodeCompiler().compile(ast)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testCompiledExpr")
+    void testVirtualMachineExpr(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("expr", input, expected, log, (scope, ast) -> new VirtualMachine(scope).run(new BytecodeCompiler().compile(ast)));
+    }
+
+    /**
+     * Evaluates all tests with every supported function compiled by the
+     * {@link Jit} on its first call, with and without a resolver. Since the
+     * Jit falls back to interpreting a function that fails to compile, every
+     * supported function that was called must also have been compiled.
+     */
+    @ParameterizedTest
+    @MethodSource("testResolved")
+    void testJit(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log, jit(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testResolved")
+    void testJitResolved(String test, Input input, Expected expected, List<RuntimeValue> log) {
+        test("source", input, expected, log, jit(true));
+    }
+
+    private static Engine jit(boolean resolved) {
+        return (scope, ast) -> {
+            var jit = new Jit(0);
+            try {
+                return new Evaluator(scope, resolved ? new Resolver() : null, jit).visit(ast);
+            } finally {
+                for (var def : jit.called()) {
+                    if (Jit.isSupported(def)) {
+                        Assertions.assertTrue(jit.isCompiled(def), "Expected DEF " + def.name() + " to be compiled.");
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Evaluates an ast in a scope, i.e. with one of the evaluation engines.
+     */
+    @FunctionalInterface
+    private interface Engine {
+        RuntimeValue evaluate(Scope scope, Ast ast) throws EvaluateException;
+    }
+
     /**
      * Test function for the Evaluator. The {@link Input} behaves the same as
      * in parser tests, but will now rely on the parser behavior too. This
@@ -674,6 +944,10 @@ final class EvaluatorTests {
      * via the use of a custom log function that tracks invocations.
      */
     private static void test(String rule, Input input, Expected expected, List<RuntimeValue> log) {
+        test(rule, input, expected, log, (scope, ast) -> new Evaluator(scope).visit(ast));
+    }
+
+    private static void test(String rule, Input input, Expected expected, List<RuntimeValue> log, Engine engine) {
         //First, get/parse the input AST.
         var ast = switch (input) {
             case Input.Ast i -> i.ast();
@@ -692,10 +966,9 @@ final class EvaluatorTests {
             logged.add(arguments.getFirst());
             return arguments.getFirst();
         }));
-        Evaluator evaluator = new Evaluator(scope);
         //Then, evaluate the input and check the return value.
         try {
-            var value = evaluator.visit(ast);
+            var value = engine.evaluate(scope, ast);
             Assertions.assertInstanceOf(Expected.Success.class, expected, "Expected an exception to be thrown, received " + value + ".");
             Assertions.assertEquals(((Expected.Success) expected).value, value);
         } catch (EvaluateException e) {
@@ -5,7 +5,12 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public final class LexerTests {
@@ -202,6 +207,165 @@ public final class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testReader(String test, String input, List<Token> expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(new StringReader(input)).lex());
+        Assertions.assertEquals(expected, tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testBytes(String test, String input, List<Token> expected) {
+        var buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(buffer).lex());
+        Assertions.assertEquals(expected, tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testBytesOffset(String test, String input, List<Token> expected) {
+        //lexed from index 0 regardless of the position, with enough whitespace
+        //and comments for the vectorized scanning to be used
+        var padded = " ".repeat(100) + input + "\n//" + "-".repeat(100) + "\n" + " ".repeat(100);
+        var buffer = ByteBuffer.wrap(padded.getBytes(StandardCharsets.UTF_8), 50, padded.length() - 50);
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(buffer).lex());
+        Assertions.assertEquals(expected, tokens);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testBuffer(String test, String input, List<Token> expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        Assertions.assertEquals(expected, tokens.toList());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testParallel(String test, String input, List<Token> expected) {
+        var repeated = (input + "\n").repeat(100);
+        var source = new CharSource.OfString(repeated);
+        var tokens = Assertions.assertDoesNotThrow(() -> ParallelLexer.lex(source, repeated.length(), 16, ForkJoinPool.commonPool()));
+        Assertions.assertEquals(Collections.nCopies(100, expected).stream().flatMap(List::stream).toList(), tokens.toList());
+        Assertions.assertEquals(101, tokens.lines().lineCount());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted) {
+        var edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(edited).lex());
+        var previous = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var size = previous.size();
+        var result = Assertions.assertDoesNotThrow(() -> IncrementalLexer.relex(previous, offset, removed, inserted));
+        Assertions.assertEquals(expected, result.tokens().toList());
+        Assertions.assertEquals(size - result.oldEnd(), result.tokens().size() - result.newEnd());
+        assertLines(edited, result.tokens());
+    }
+
+    public static Stream<Arguments> testIncremental() {
+        return Stream.of(
+            Arguments.of("Extend Identifier", "LET x = 5;", 5, 0, "yz"),
+            Arguments.of("Integer To Decimal", "f(1.x);", 4, 1, "5"),
+            Arguments.of("Uncomment", "x; //y;\nz;", 3, 2, ""),
+            Arguments.of("Split Comment", "x; //y; z;\nw;", 7, 0, "\n"),
+            Arguments.of("Replace With String", "\"a\" b \"c\"", 4, 1, "\"\"")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncrementalSequence(String test, String input, List<Edit> edits) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var edited = input;
+        for (var edit : edits) {
+            edited = edited.substring(0, edit.offset) + edit.inserted + edited.substring(edit.offset + edit.removed);
+            var current = edited;
+            var expected = Assertions.assertDoesNotThrow(() -> new Lexer(current).lexBuffer());
+            Assertions.assertDoesNotThrow(() -> IncrementalLexer.relex(tokens, edit.offset, edit.removed, edit.inserted));
+            Assertions.assertEquals(expected.toList(), tokens.toList());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertEquals(expected.span(i), tokens.span(i));
+            }
+            assertLines(edited, tokens);
+        }
+    }
+
+    private record Edit(int offset, int removed, String inserted) {}
+
+    public static Stream<Arguments> testIncrementalSequence() {
+        //edits before, after, and at the previous edit, moving the gaps of
+        //the buffer, source, and lines both ways and growing them
+        var input = "LET x = 1;\nf(x);\n// comment\ng(\"s\", 'c');\nh();\n".repeat(5);
+        return Stream.of(
+            Arguments.of("Typing", input, List.of(
+                new Edit(20, 0, "y"),
+                new Edit(21, 0, "z"),
+                new Edit(22, 0, " + 1"),
+                new Edit(21, 1, "")
+            )),
+            Arguments.of("Far Apart", input, List.of(
+                new Edit(200, 3, "\n\n"),
+                new Edit(5, 0, "\r\n"),
+                new Edit(150, 10, ""),
+                new Edit(0, 0, "LET q;\n".repeat(50)),
+                new Edit(400, 0, "\n")
+            )),
+            Arguments.of("Split And Join", input, List.of(
+                new Edit(11, 1, ""),
+                new Edit(11, 0, "\n"),
+                new Edit(30, 0, "//"),
+                new Edit(30, 2, "")
+            ))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLines(String test, String input, int offset, int line, int column) {
+        var lexer = new Lexer(input);
+        Assertions.assertDoesNotThrow(lexer::lex);
+        Assertions.assertEquals(line, lexer.lines().line(offset));
+        Assertions.assertEquals(column, lexer.lines().column(offset));
+    }
+
+    public static Stream<Arguments> testLines() {
+        return Stream.of(
+            Arguments.of("Single Line", "LET x = 5;", 4, 1, 5),
+            Arguments.of("Newline", "x;\ny;", 3, 2, 1),
+            Arguments.of("Carriage Return Newline", "x;\r\ny;", 4, 2, 1),
+            Arguments.of("Carriage Return", "x;\r\ry;", 4, 3, 1),
+            Arguments.of("After Comment", "//comment\n  x;", 12, 2, 3)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testLines")
+    void testBytesLines(String test, String input, int offset, int line, int column) {
+        //enough whitespace to be scanned in bulk, with \r\n split across
+        //vectors (for any vector length) and ending right before the input
+        var padded = " \r\n\r\t\n".repeat(40) + "\r" + input;
+        var lexer = new Lexer(ByteBuffer.wrap(padded.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertDoesNotThrow(lexer::lex);
+        var expected = new Lexer(padded);
+        Assertions.assertDoesNotThrow(expected::lex);
+        Assertions.assertEquals(expected.lines().lineCount(), lexer.lines().lineCount());
+        for (int i = 1; i <= expected.lines().lineCount(); i++) {
+            Assertions.assertEquals(expected.lines().lineStart(i), lexer.lines().lineStart(i));
+        }
+    }
+
+    /**
+     * Asserts that the tokens' lines are those of lexing the input.
+     */
+    private static void assertLines(String input, TokenBuffer tokens) {
+        var lines = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer()).lines();
+        Assertions.assertEquals(lines.lineCount(), tokens.lines().lineCount());
+        for (int line = 1; line <= lines.lineCount(); line++) {
+            Assertions.assertEquals(lines.lineStart(line), tokens.lines().lineStart(line));
+        }
+    }
+
     private static void test(String input, List<Token> expected, boolean equals) {
         if (equals) {
             var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
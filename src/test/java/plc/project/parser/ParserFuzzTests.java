@@ -0,0 +1,417 @@
+package plc.project.parser;
+
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Randomized tests of the parser over generated and mutated programs, which
+ * are seeded so a failure reports the seed and program that reproduce it.
+ * These are tagged {@code fuzz} and run by {@code ./gradlew fuzz} rather
+ * than the default test task, with the number of programs per test given by
+ * {@code -Pfuzz.count} (the {@code plc.fuzz.count} system property).
+ */
+@Tag("fuzz")
+final class ParserFuzzTests {
+
+    private static final int COUNT = Integer.getInteger("plc.fuzz.count", 1000);
+
+    private static final String[] NAMES = {"x", "y", "f", "obj", "list", "a_b"};
+    private static final String[] TYPES = {"Integer", "String", "Any"};
+    private static final String[] OPERATORS = {"AND", "OR", "<", "<=", ">", ">=", "==", "!=", "+", "-", "*", "/"};
+    //tokens inserted or substituted by mutations, weighted towards structure
+    private static final String[] MUTATIONS = {"(", ")", ",", ".", ";", ":", "=", "+", "*", "AND", "DO", "END", "ELSE", "IF", "IN",
+        "LET", "DEF", "FOR", "RETURN", "OBJECT", "x", "1", "f (", "OBJECT DO", "IF x DO", "DO END"};
+
+    /**
+     * Parses the printed form of generated ASTs, which must give back the
+     * same AST.
+     */
+    @Test
+    void testGenerated() {
+        for (int seed = 0; seed < COUNT; seed++) {
+            var expected = new Generator(new Random(seed)).source();
+            var input = print(expected);
+            var message = "Seed " + seed + ":\n" + input;
+            var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer(), message);
+            Assertions.assertEquals(expected, parse(() -> new Parser(tokens).parse("source")).ast(), message);
+            Assertions.assertEquals(expected, parse(() -> new Parser(new Lexer(input)).parse("source")).ast(), message);
+        }
+    }
+
+    /**
+     * Parses mutated programs (which are mostly invalid) with each way of
+     * supplying tokens to the parser, which must all give the same AST or
+     * error, and never throw anything other than a {@link ParseException}.
+     */
+    @Test
+    void testMutated() {
+        for (int seed = 0; seed < COUNT; seed++) {
+            var input = mutated(seed);
+            var message = "Seed " + seed + ":\n" + input;
+            List<Token> list;
+            try {
+                list = new Lexer(input).lex();
+            } catch (LexException e) {
+                continue;
+            }
+            var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer(), message);
+            var expected = parse(() -> new Parser(list).parse("source"));
+            var buffered = new Parser(tokens);
+            Assertions.assertEquals(expected, parse(() -> buffered.parse("source")), message);
+            var fused = new Parser(new Lexer(input));
+            Assertions.assertEquals(expected, parse(() -> fused.parse("source")), message);
+            Assertions.assertEquals(buffered.offset(), fused.offset(), message);
+            Assertions.assertEquals(expected, parse(() -> ParallelParser.parse(tokens, ForkJoinPool.commonPool())), message);
+        }
+    }
+
+    /**
+     * Parses mutated programs with recovery, where a valid program must give
+     * the same AST without errors, and otherwise the first error must be the
+     * one thrown by {@link Parser#parse}.
+     */
+    @Test
+    void testRecovery() {
+        for (int seed = 0; seed < COUNT; seed++) {
+            var input = mutated(seed);
+            var message = "Seed " + seed + ":\n" + input;
+            TokenBuffer tokens;
+            try {
+                tokens = new Lexer(input).lexBuffer();
+            } catch (LexException e) {
+                continue;
+            }
+            var expected = parse(() -> new Parser(tokens).parse("source"));
+            var recovery = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parseWithRecovery(), message);
+            if (expected.ast() != null) {
+                Assertions.assertEquals(expected.ast(), recovery.source(), message);
+                Assertions.assertEquals(List.of(), recovery.errors(), message);
+            } else {
+                Assertions.assertFalse(recovery.errors().isEmpty(), message);
+                var first = recovery.errors().getFirst();
+                Assertions.assertEquals(expected, new Result(null, first.getMessage(), first.getToken()), message);
+            }
+        }
+    }
+
+    /**
+     * The AST or the error of a parse, where errors are compared by their
+     * message and token.
+     */
+    private record Result(@Nullable Ast ast, @Nullable String message, Optional<Token> token) {}
+
+    private interface Parse {
+        Ast parse() throws ParseException;
+    }
+
+    private static Result parse(Parse parse) {
+        try {
+            return new Result(parse.parse(), null, Optional.empty());
+        } catch (ParseException e) {
+            return new Result(null, e.getMessage(), e.getToken());
+        }
+    }
+
+    private static String mutated(int seed) {
+        var random = new Random(seed);
+        return mutate(random, print(new Generator(random).source()));
+    }
+
+    /**
+     * Deletes, inserts, or substitutes up to three tokens of a printed
+     * program, whose tokens are separated by spaces.
+     */
+    private static String mutate(Random random, String input) {
+        var tokens = new ArrayList<>(Arrays.asList(input.split(" ")));
+        var count = 1 + random.nextInt(3);
+        for (int i = 0; i < count && !tokens.isEmpty(); i++) {
+            var index = random.nextInt(tokens.size());
+            switch (random.nextInt(3)) {
+                case 0 -> tokens.remove(index);
+                case 1 -> tokens.add(index, MUTATIONS[random.nextInt(MUTATIONS.length)]);
+                default -> tokens.set(index, MUTATIONS[random.nextInt(MUTATIONS.length)]);
+            }
+        }
+        return String.join(" ", tokens);
+    }
+
+    private static int precedence(String operator) {
+        return switch (operator) {
+            case "AND", "OR" -> 1;
+            case "+", "-" -> 3;
+            case "*", "/" -> 4;
+            default -> 2;
+        };
+    }
+
+    /**
+     * Generates random ASTs that can be printed by {@link #print}, i.e. with
+     * groups wherever the grammar requires parentheses.
+     */
+    private static final class Generator {
+
+        private final Random random;
+
+        private Generator(Random random) {
+            this.random = random;
+        }
+
+        private Ast.Source source() {
+            return new Ast.Source(statements(3, 1 + random.nextInt(5)));
+        }
+
+        private List<Ast.Stmt> statements(int depth, int count) {
+            var statements = new ArrayList<Ast.Stmt>();
+            for (int i = 0; i < count; i++) {
+                statements.add(statement(depth));
+            }
+            return statements;
+        }
+
+        private Ast.Stmt statement(int depth) {
+            return switch (random.nextInt(depth > 0 ? 7 : 4)) {
+                case 0 -> let(depth);
+                case 1 -> new Ast.Stmt.Return(random.nextBoolean() ? Optional.of(expression(depth)) : Optional.empty());
+                case 2 -> new Ast.Stmt.Expression(expression(depth));
+                case 3 -> new Ast.Stmt.Assignment(expression(depth), expression(depth));
+                case 4 -> def(depth);
+                case 5 -> new Ast.Stmt.If(expression(depth - 1), statements(depth - 1, random.nextInt(3)), statements(depth - 1, random.nextInt(2)));
+                default -> new Ast.Stmt.For(name(), expression(depth - 1), statements(depth - 1, random.nextInt(3)));
+            };
+        }
+
+        private Ast.Stmt.Let let(int depth) {
+            return new Ast.Stmt.Let(name(), type(), random.nextBoolean() ? Optional.of(expression(depth)) : Optional.empty());
+        }
+
+        private Ast.Stmt.Def def(int depth) {
+            var count = random.nextInt(3);
+            var parameters = new ArrayList<String>();
+            var types = new ArrayList<Optional<String>>();
+            for (int i = 0; i < count; i++) {
+                parameters.add(name());
+                types.add(type());
+            }
+            return new Ast.Stmt.Def(name(), parameters, types, type(), statements(depth - 1, random.nextInt(3)));
+        }
+
+        private Ast.Expr expression(int depth) {
+            return switch (random.nextInt(depth > 0 ? 8 : 2)) {
+                case 0 -> literal();
+                case 1 -> new Ast.Expr.Variable(name());
+                case 2 -> new Ast.Expr.Group(expression(depth - 1));
+                case 3, 4 -> {
+                    var operator = OPERATORS[random.nextInt(OPERATORS.length)];
+                    var left = expression(depth - 1);
+                    var right = expression(depth - 1);
+                    //operators are left associative, so only an equal
+                    //precedence on the left can be left ungrouped
+                    if (left instanceof Ast.Expr.Binary binary && precedence(binary.operator()) < precedence(operator)) {
+                        left = new Ast.Expr.Group(left);
+                    }
+                    if (right instanceof Ast.Expr.Binary binary && precedence(binary.operator()) <= precedence(operator)) {
+                        right = new Ast.Expr.Group(right);
+                    }
+                    yield new Ast.Expr.Binary(operator, left, right);
+                }
+                case 5 -> new Ast.Expr.Function(name(), arguments(depth));
+                case 6 -> random.nextBoolean()
+                    ? new Ast.Expr.Property(receiver(depth), name())
+                    : new Ast.Expr.Method(receiver(depth), name(), arguments(depth));
+                default -> {
+                    var fields = new ArrayList<Ast.Stmt.Let>();
+                    for (int i = random.nextInt(3); i > 0; i--) {
+                        fields.add(let(depth - 1));
+                    }
+                    var methods = new ArrayList<Ast.Stmt.Def>();
+                    for (int i = random.nextInt(2); i > 0; i--) {
+                        methods.add(def(depth - 1));
+                    }
+                    yield new Ast.Expr.ObjectExpr(random.nextBoolean() ? Optional.of(name()) : Optional.empty(), fields, methods);
+                }
+            };
+        }
+
+        /**
+         * Generates the receiver of a property or method, where binaries and
+         * literals (e.g. {@code 1.f}) are grouped.
+         */
+        private Ast.Expr receiver(int depth) {
+            var receiver = expression(depth - 1);
+            return receiver instanceof Ast.Expr.Binary || receiver instanceof Ast.Expr.Literal ? new Ast.Expr.Group(receiver) : receiver;
+        }
+
+        private List<Ast.Expr> arguments(int depth) {
+            var arguments = new ArrayList<Ast.Expr>();
+            for (int i = random.nextInt(3); i > 0; i--) {
+                arguments.add(expression(depth - 1));
+            }
+            return arguments;
+        }
+
+        private Ast.Expr.Literal literal() {
+            return new Ast.Expr.Literal(switch (random.nextInt(7)) {
+                case 0 -> null;
+                case 1 -> random.nextBoolean();
+                case 2, 3 -> BigInteger.valueOf(random.nextInt(1000));
+                case 4 -> BigDecimal.valueOf(random.nextInt(1000), 1 + random.nextInt(2));
+                case 5 -> "a\n'\"\\".charAt(random.nextInt(5));
+                default -> List.of("", "abc", "a\tb", "q\"t", "\\").get(random.nextInt(5));
+            });
+        }
+
+        private String name() {
+            return NAMES[random.nextInt(NAMES.length)];
+        }
+
+        private Optional<String> type() {
+            return random.nextInt(3) == 0 ? Optional.of(TYPES[random.nextInt(TYPES.length)]) : Optional.empty();
+        }
+
+    }
+
+    /**
+     * Prints an AST as source with every token separated by a space (and
+     * statements by a newline), so it can be mutated by token.
+     */
+    private static String print(Ast ast) {
+        var builder = new StringBuilder();
+        print(builder, ast);
+        return builder.toString().strip();
+    }
+
+    private static void print(StringBuilder builder, Ast ast) {
+        switch (ast) {
+            case Ast.Source source -> {
+                for (var stmt : source.statements()) {
+                    print(builder, stmt);
+                    builder.append('\n');
+                }
+            }
+            case Ast.Stmt.Let stmt -> {
+                builder.append("LET ").append(stmt.name()).append(' ');
+                stmt.type().ifPresent(type -> builder.append(": ").append(type).append(' '));
+                stmt.value().ifPresent(value -> {
+                    builder.append("= ");
+                    print(builder, value);
+                });
+                builder.append("; ");
+            }
+            case Ast.Stmt.Def stmt -> {
+                builder.append("DEF ").append(stmt.name()).append(" ( ");
+                for (int i = 0; i < stmt.parameters().size(); i++) {
+                    builder.append(i == 0 ? "" : ", ").append(stmt.parameters().get(i)).append(' ');
+                    stmt.parameterTypes().get(i).ifPresent(type -> builder.append(": ").append(type).append(' '));
+                }
+                builder.append(") ");
+                stmt.returnType().ifPresent(type -> builder.append(": ").append(type).append(' '));
+                builder.append("DO ");
+                stmt.body().forEach(child -> print(builder, child));
+                builder.append("END ");
+            }
+            case Ast.Stmt.If stmt -> {
+                builder.append("IF ");
+                print(builder, stmt.condition());
+                builder.append("DO ");
+                stmt.thenBody().forEach(child -> print(builder, child));
+                if (!stmt.elseBody().isEmpty()) {
+                    builder.append("ELSE ");
+                    stmt.elseBody().forEach(child -> print(builder, child));
+                }
+                builder.append("END ");
+            }
+            case Ast.Stmt.For stmt -> {
+                builder.append("FOR ").append(stmt.name()).append(" IN ");
+                print(builder, stmt.expression());
+                builder.append("DO ");
+                stmt.body().forEach(child -> print(builder, child));
+                builder.append("END ");
+            }
+            case Ast.Stmt.Return stmt -> {
+                builder.append("RETURN ");
+                stmt.value().ifPresent(value -> print(builder, value));
+                builder.append("; ");
+            }
+            case Ast.Stmt.Expression stmt -> {
+                print(builder, stmt.expression());
+                builder.append("; ");
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                print(builder, stmt.expression());
+                builder.append("= ");
+                print(builder, stmt.value());
+                builder.append("; ");
+            }
+            case Ast.Expr.Literal expr -> builder.append(switch (expr.value()) {
+                case null -> "NIL";
+                case Boolean b -> b ? "TRUE" : "FALSE";
+                case Character c -> "'" + escape(String.valueOf(c)) + "'";
+                case String s -> "\"" + escape(s) + "\"";
+                default -> expr.value().toString();
+            }).append(' ');
+            case Ast.Expr.Group expr -> {
+                builder.append("( ");
+                print(builder, expr.expression());
+                builder.append(") ");
+            }
+            case Ast.Expr.Binary expr -> {
+                print(builder, expr.left());
+                builder.append(expr.operator()).append(' ');
+                print(builder, expr.right());
+            }
+            case Ast.Expr.Variable expr -> builder.append(expr.name()).append(' ');
+            case Ast.Expr.Property expr -> {
+                print(builder, expr.receiver());
+                builder.append(". ").append(expr.name()).append(' ');
+            }
+            case Ast.Expr.Function expr -> {
+                builder.append(expr.name()).append(' ');
+                arguments(builder, expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                print(builder, expr.receiver());
+                builder.append(". ").append(expr.name()).append(' ');
+                arguments(builder, expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                builder.append("OBJECT ");
+                expr.name().ifPresent(name -> builder.append(name).append(' '));
+                builder.append("DO ");
+                expr.fields().forEach(child -> print(builder, child));
+                expr.methods().forEach(child -> print(builder, child));
+                builder.append("END ");
+            }
+        }
+    }
+
+    private static void arguments(StringBuilder builder, List<Ast.Expr> arguments) {
+        builder.append("( ");
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            print(builder, arguments.get(i));
+        }
+        builder.append(") ");
+    }
+
+    private static String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t").replace("'", "\\'").replace("\"", "\\\"");
+    }
+
+}
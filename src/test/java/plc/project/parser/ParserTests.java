@@ -1,16 +1,27 @@
 package plc.project.parser;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.lexer.IncrementalLexer;
+import plc.project.lexer.LexException;
 import plc.project.lexer.Lexer;
+import plc.project.lexer.Span;
 import plc.project.lexer.Token;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 final class ParserTests {
@@ -318,6 +329,18 @@ final class ParserTests {
                         List.of(new Token(Token.Type.INTEGER, "1")),
                         new Ast.Expr.Literal(new BigInteger("1"))
                 ),
+                Arguments.of("Integer Sign",
+                        List.of(new Token(Token.Type.INTEGER, "-007")),
+                        new Ast.Expr.Literal(new BigInteger("-7"))
+                ),
+                Arguments.of("Integer Exponent",
+                        List.of(new Token(Token.Type.INTEGER, "1e3")),
+                        new Ast.Expr.Literal(new BigInteger("1000"))
+                ),
+                Arguments.of("Integer Large",
+                        List.of(new Token(Token.Type.INTEGER, "-9223372036854775809")),
+                        new Ast.Expr.Literal(new BigInteger("-9223372036854775809"))
+                ),
                 Arguments.of("Decimal",
                         List.of(new Token(Token.Type.DECIMAL, "1.0")),
                         new Ast.Expr.Literal(new BigDecimal("1.0"))
@@ -646,6 +669,324 @@ final class ParserTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testFused(String test, String input, Ast expected) {
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input)).parse("source"));
+        Assertions.assertEquals(expected, ast);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFusedException(String test, String input, int index) {
+        var e = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input)).parse("source"));
+        var cause = Assertions.assertInstanceOf(LexException.class, e.getCause());
+        Assertions.assertEquals(index, cause.getIndex());
+    }
+
+    public static Stream<Arguments> testFusedException() {
+        return Stream.of(
+            Arguments.of("Invalid String", "LET x = \"unterminated;", 22),
+            Arguments.of("Later Statement", "f();\ng('ab');", 9)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFusedRecovery(String test, String input, Ast.Source expected, int index) {
+        var recovery = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(input)).parseWithRecovery());
+        Assertions.assertEquals(expected, recovery.source());
+        Assertions.assertEquals(1, recovery.errors().size());
+        var cause = Assertions.assertInstanceOf(LexException.class, recovery.errors().getFirst().getCause());
+        Assertions.assertEquals(index, cause.getIndex());
+    }
+
+    public static Stream<Arguments> testFusedRecovery() {
+        return Stream.of(
+            Arguments.of("First Token", "'ab';\nf();", new Ast.Source(List.of()), 2),
+            Arguments.of("Later Statement", "f();\ng('ab');", new Ast.Source(List.of(
+                new Ast.Stmt.Expression(new Ast.Expr.Function("f", List.of()))
+            )), 9)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testParallel(String test, String input, Ast.Source expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer((input + "\n").repeat(100)).lexBuffer());
+        var ast = Assertions.assertDoesNotThrow(() -> ParallelParser.parse(tokens, 16, ForkJoinPool.commonPool()));
+        Assertions.assertEquals(Collections.nCopies(100, expected.statements()).stream().flatMap(List::stream).toList(), ast.statements());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallelException(String test, String input) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parse("source"));
+        var received = Assertions.assertThrows(ParseException.class, () -> ParallelParser.parse(tokens, 1, ForkJoinPool.commonPool()));
+        Assertions.assertEquals(expected.getToken(), received.getToken());
+    }
+
+    public static Stream<Arguments> testParallelException() {
+        return Stream.of(
+            Arguments.of("Later Statement", "f();\ng();\nLET x = ;\nh();"),
+            Arguments.of("Unbalanced End", "f();\nEND\nLET x;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted, int reused) {
+        var edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        var expected = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(edited).lexBuffer()).parse("source"));
+        var parser = new IncrementalParser();
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var previous = Assertions.assertDoesNotThrow(() -> parser.parse(tokens));
+        var edit = Assertions.assertDoesNotThrow(() -> IncrementalLexer.relex(tokens, offset, removed, inserted));
+        var ast = Assertions.assertDoesNotThrow(() -> parser.reparse(edit));
+        Assertions.assertEquals(expected, ast);
+        Assertions.assertEquals(reused, ast.statements().stream().filter(s -> previous.statements().stream().anyMatch(p -> p == s)).count());
+    }
+
+    public static Stream<Arguments> testIncremental() {
+        return Stream.of(
+            Arguments.of("Edit Statement", "f();\ng(1);\nh();", 7, 1, "2", 2),
+            Arguments.of("Insert Statement", "f();\nh();", 5, 0, "g();\n", 2),
+            Arguments.of("Remove Statement", "f();\ng();\nh();", 5, 5, "", 2),
+            Arguments.of("Edit Def Body", "DEF f() DO\n    x;\nEND\ny;", 15, 1, "z", 1),
+            Arguments.of("Join Statements", "LET x = 1;\ny;\nz;", 9, 1, " +", 1),
+            Arguments.of("Append", "f();", 4, 0, "\ng();", 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDepth(String test, String rule, String prefix, String inner, String suffix, Function<Ast, Ast> unwrap, Ast expected) {
+        var depth = 100_000;
+        var input = prefix.repeat(depth) + inner + suffix.repeat(depth);
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parse(rule));
+        //unwrapped iteratively, since Ast equality is itself recursive
+        for (int i = 0; i < depth; i++) {
+            ast = unwrap.apply(ast);
+        }
+        Assertions.assertEquals(expected, ast);
+    }
+
+    public static Stream<Arguments> testDepth() {
+        var x = new Ast.Expr.Variable("x");
+        return Stream.of(
+            Arguments.of("Group", "expr", "(", "x", ")",
+                (Function<Ast, Ast>) ast -> ((Ast.Expr.Group) ast).expression(),
+                x
+            ),
+            Arguments.of("Binary", "expr", "y + (", "x", ")",
+                (Function<Ast, Ast>) ast -> ((Ast.Expr.Group) ((Ast.Expr.Binary) ast).right()).expression(),
+                x
+            ),
+            Arguments.of("Function", "expr", "f(", "x", ")",
+                (Function<Ast, Ast>) ast -> ((Ast.Expr.Function) ast).arguments().getFirst(),
+                x
+            ),
+            Arguments.of("Object", "expr", "OBJECT DO LET y = ", "x", "; END",
+                (Function<Ast, Ast>) ast -> ((Ast.Expr.ObjectExpr) ast).fields().getFirst().value().orElseThrow(),
+                x
+            ),
+            Arguments.of("If", "stmt", "IF c DO ", "x;", " END",
+                (Function<Ast, Ast>) ast -> ((Ast.Stmt.If) ast).thenBody().getFirst(),
+                new Ast.Stmt.Expression(x)
+            ),
+            Arguments.of("Def", "stmt", "DEF f() DO ", "x;", " END",
+                (Function<Ast, Ast>) ast -> ((Ast.Stmt.Def) ast).body().getFirst(),
+                new Ast.Stmt.Expression(x)
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testDepth")
+    void testDepthSerialization(String test, String rule, String prefix, String inner, String suffix, Function<Ast, Ast> unwrap, Ast expected) {
+        var depth = 100_000;
+        var input = prefix.repeat(depth) + inner + suffix.repeat(depth);
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var parsed = Assertions.assertDoesNotThrow(() -> new Parser(tokens).parse(rule));
+        var stmt = parsed instanceof Ast.Expr expr ? new Ast.Stmt.Expression(expr) : (Ast.Stmt) parsed;
+        var decoded = AstCodec.decode(AstCodec.encode(new Ast.Source(List.of(stmt))));
+        Ast ast = decoded.statements().getFirst();
+        if (parsed instanceof Ast.Expr) {
+            ast = ((Ast.Stmt.Expression) ast).expression();
+        }
+        for (int i = 0; i < depth; i++) {
+            ast = unwrap.apply(ast);
+        }
+        Assertions.assertEquals(expected, ast);
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testInterned(String test, String input, Ast.Source expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var ast = Assertions.assertDoesNotThrow(() -> new Parser(tokens, new AstInterner()).parse("source"));
+        Assertions.assertEquals(expected, ast);
+    }
+
+    @Test
+    void testInternedSharing() {
+        var interner = new AstInterner();
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer("f(x + 1);\ng(x + 1);").lexBuffer());
+        var ast = (Ast.Source) Assertions.assertDoesNotThrow(() -> new Parser(tokens, interner).parse("source"));
+        var first = (Ast.Expr.Function) ((Ast.Stmt.Expression) ast.statements().get(0)).expression();
+        var second = (Ast.Expr.Function) ((Ast.Stmt.Expression) ast.statements().get(1)).expression();
+        Assertions.assertSame(first.arguments().getFirst(), second.arguments().getFirst());
+        //x, 1, and x + 1 are shared by both statements
+        Assertions.assertEquals(11, interner.count());
+        Assertions.assertEquals(8, interner.size());
+    }
+
+    @Test
+    void testConstantPool() {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer("f(5, 5, 123456789012345678901, 123456789012345678901, 1.5, 1.5, 'c', 'c', \"s\", \"s\");").lexBuffer());
+        var ast = (Ast.Source) Assertions.assertDoesNotThrow(() -> new Parser(tokens).parse("source"));
+        var arguments = ((Ast.Expr.Function) ((Ast.Stmt.Expression) ast.statements().getFirst()).expression()).arguments();
+        for (int i = 0; i < arguments.size(); i += 2) {
+            Assertions.assertSame(((Ast.Expr.Literal) arguments.get(i)).value(), ((Ast.Expr.Literal) arguments.get(i + 1)).value());
+        }
+        Assertions.assertSame(ConstantPool.integer(5), ((Ast.Expr.Literal) arguments.getFirst()).value());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testRecoveryValid(String test, String input, Ast.Source expected) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var recovery = new Parser(tokens).parseWithRecovery();
+        Assertions.assertEquals(expected, recovery.source());
+        Assertions.assertEquals(List.of(), recovery.errors());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecovery(String test, String input, Ast.Source expected, int errors) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var first = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parse("source"));
+        var recovery = new Parser(tokens).parseWithRecovery();
+        Assertions.assertEquals(expected, recovery.source());
+        Assertions.assertEquals(errors, recovery.errors().size());
+        Assertions.assertEquals(first.getToken(), recovery.errors().getFirst().getToken());
+    }
+
+    public static Stream<Arguments> testRecovery() {
+        return Stream.of(
+            Arguments.of("Statements", "f();\nLET = 1;\ng();\nLET x 2;\nh();",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("f", List.of())),
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("g", List.of())),
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("h", List.of()))
+                )),
+                2
+            ),
+            Arguments.of("Block", "DEF f() DO\n    x +;\n    y;\nEND\nz;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Def("f", List.of(), List.of(
+                        new Ast.Stmt.Expression(new Ast.Expr.Variable("y"))
+                    )),
+                    new Ast.Stmt.Expression(new Ast.Expr.Variable("z"))
+                )),
+                1
+            ),
+            Arguments.of("Else", "IF c DO\n    x +;\nELSE\n    y;\nEND",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.If(new Ast.Expr.Variable("c"), List.of(), List.of(
+                        new Ast.Stmt.Expression(new Ast.Expr.Variable("y"))
+                    ))
+                )),
+                1
+            ),
+            Arguments.of("Object", "LET x = OBJECT DO\n    LET a = ;\n    LET b = 1;\nEND;\ny;",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Variable("y"))
+                )),
+                1
+            ),
+            Arguments.of("Missing End", "f();\nDEF g() DO\n    IF c DO\n        x;\n",
+                new Ast.Source(List.of(
+                    new Ast.Stmt.Expression(new Ast.Expr.Function("f", List.of()))
+                )),
+                1
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSpan(String test, String input, int start, int end) {
+        var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lexBuffer());
+        var parser = new Parser(tokens).withSpans();
+        var ast = Assertions.assertDoesNotThrow(() -> parser.parse("stmt"));
+        Assertions.assertEquals(Optional.of(new Span(start, end)), parser.span(ast));
+        var fused = new Parser(new Lexer(input)).withSpans();
+        var fusedAst = Assertions.assertDoesNotThrow(() -> fused.parse("stmt"));
+        Assertions.assertEquals(Optional.of(new Span(start, end)), fused.span(fusedAst));
+        //spans are only recorded when enabled
+        var unrecorded = new Parser(tokens);
+        Assertions.assertEquals(Optional.empty(), unrecorded.span(Assertions.assertDoesNotThrow(() -> unrecorded.parse("stmt"))));
+    }
+
+    public static Stream<Arguments> testSpan() {
+        return Stream.of(
+            Arguments.of("Let", "LET x = 5;", 0, 10),
+            Arguments.of("Whitespace", "  f( 1 ) ; ", 2, 10),
+            Arguments.of("Multiline", "IF c DO\n    x;\nEND", 0, 18)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testProgram")
+    void testSerialization(String test, String input, Ast.Source expected) {
+        Assertions.assertEquals(expected, AstCodec.decode(AstCodec.encode(expected)));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSerializationLiteral(String test, Object value) {
+        var source = new Ast.Source(List.of(new Ast.Stmt.Expression(new Ast.Expr.Literal(value))));
+        Assertions.assertEquals(source, AstCodec.decode(AstCodec.encode(source)));
+    }
+
+    public static Stream<Arguments> testSerializationLiteral() {
+        return Stream.of(
+            Arguments.of("Nil", null),
+            Arguments.of("Boolean", true),
+            Arguments.of("Negative Integer", new BigInteger("-1")),
+            Arguments.of("Large Integer", new BigInteger("123456789012345678901234567890")),
+            Arguments.of("Decimal Scale", new BigDecimal("1.500")),
+            Arguments.of("Character", '\u00e9'),
+            Arguments.of("Unicode String", "\u03bb \uD83D\uDE00")
+        );
+    }
+
+    @Test
+    void testSerializationInvalid() {
+        var bytes = AstCodec.encode(new Ast.Source(List.of()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(new byte[] {'P', 'L', 'C'}));
+    }
+
+    @Test
+    void testCache(@TempDir Path directory) throws Exception {
+        var input = "LET x = 1;\nprint(x);";
+        var expected = new AstCache(directory).parse(input);
+        List<Path> entries;
+        try (var list = Files.list(directory)) {
+            entries = list.toList();
+        }
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals(expected, new AstCache(directory).parse(input));
+        //replaces the entry, so the source is only returned if it was loaded
+        var cached = new Ast.Source(List.of(new Ast.Stmt.Expression(new Ast.Expr.Variable("cached"))));
+        Files.write(entries.getFirst(), AstCodec.encode(cached));
+        Assertions.assertEquals(cached, new AstCache(directory).parse(input));
+    }
+
     interface ParserMethod<T extends Ast> {
         T invoke(Parser parser) throws ParseException;
     }